@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.commands.custom.v3;
+
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterContext;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running a custom command script the way it was done before (parse it, then walk the tree with
+ * {@link InterpreterVisitor}) against {@link CCv3#compile(String)}, which gets the compiled script from the cache.
+ * The scripts are the kind people actually write: greetings, answers picked with nested ifs, and hug commands.
+ * None of them need a Discord context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CCv3Benchmark {
+    private static final Map<String, String> SCRIPTS = Map.of(
+            "greeting",
+            "Hey $(event.author.name), welcome to **$(event.guild.name)**! @{upper;make sure to read the rules} " +
+                    "and say hi in #general. @{if;$(event.args);is-empty;Use the command with a question!;You asked: $(event.args)}",
+            "answers",
+            "@{if;@{lower;$(event.args)};equals;yes;Great!;@{if;@{lower;$(event.args)};equals;no;Too bad.;" +
+                    "@{if;$(event.args);ignorecase-contains;maybe;Make up your mind!;I don't know what $(event.args) means.}}}",
+            "hug",
+            "@{set;hugger;$(event.author.name)}@{if;@{and;@{test;is-not-empty;$(event.args)};@{test;usermention;$(event.args)}};" +
+                    "equals;true;$(hugger) hugs $(event.args)! @{lower;SO CUTE};$(hugger), mention someone to hug them.}"
+    );
+
+    @Param({ "greeting", "answers", "hug" })
+    public String script;
+
+    private String source;
+    private Map<String, String> vars;
+
+    @Setup
+    public void setup() {
+        source = SCRIPTS.get(script);
+        vars = new HashMap<>();
+        vars.put("event.author.name", "Kodehawa");
+        vars.put("event.guild.name", "Mantaro Hub");
+        vars.put("event.args", "<@155867458203287552> maybe");
+    }
+
+    @Benchmark
+    public String parseAndInterpret() {
+        var context = new InterpreterContext(new HashMap<>(vars), CCv3.defaultOperations(), null);
+        return new Parser(source).parse().accept(new InterpreterVisitor(), context);
+    }
+
+    @Benchmark
+    public String compiled() {
+        var context = new InterpreterContext(new HashMap<>(vars), CCv3.defaultOperations(), null);
+        return CCv3.compile(source).execute(context);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import net.dv8tion.jda.api.entities.Role;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.db.entities.MongoGuild;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The permission checks CommandRegistry runs before every command, for a member with 30 roles on a guild with
+ * a few hundred disable rules. legacy is what it did before {@link GuildCommandPolicy}: list lookups by string id
+ * and role streams over the guild's maps. Nothing matches, so every check runs, like on most commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GuildCommandPolicyBenchmark {
+    private static final String COMMAND = "profile";
+    private static final CommandCategory CATEGORY = CommandCategory.CURRENCY;
+    private static final long CHANNEL = 500_000_000_000_000_000L;
+    private static final long USER = 600_000_000_000_000_000L;
+
+    private MongoGuild guild;
+    private GuildCommandPolicy policy;
+    private List<Role> roles;
+
+    @Setup
+    public void setup() {
+        guild = new MongoGuild("100000000000000000");
+        for (int i = 0; i < 50; i++) {
+            guild.getDisabledCommands().add("command" + i);
+            guild.getDisabledUsers().add(String.valueOf(USER + 1 + i));
+            guild.getDisabledChannels().add(String.valueOf(CHANNEL + 1 + i));
+            guild.getChannelSpecificDisabledCommands().put(String.valueOf(CHANNEL + 1 + i), new ArrayList<>(List.of("command" + i)));
+            guild.getChannelSpecificDisabledCategories().put(String.valueOf(CHANNEL + 1 + i), new ArrayList<>(List.of(CommandCategory.MUSIC)));
+        }
+
+        // Rules on roles the member doesn't have, and none on the ones they do.
+        for (int i = 0; i < 200; i++) {
+            var role = String.valueOf(700_000_000_000_000_000L + i);
+            guild.getDisabledRoles().add(role);
+            guild.getRoleSpecificDisabledCommands().put(role, new ArrayList<>(List.of(COMMAND, "command" + i)));
+            guild.getRoleSpecificDisabledCategories().put(role, new ArrayList<>(List.of(CATEGORY)));
+        }
+
+        policy = GuildCommandPolicy.of(guild);
+        roles = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            roles.add(role(800_000_000_000_000_000L + i));
+        }
+    }
+
+    @Benchmark
+    public boolean legacy() {
+        var channel = Long.toUnsignedString(CHANNEL);
+        var user = Long.toUnsignedString(USER);
+        var channelCommands = guild.getChannelSpecificDisabledCommands().get(channel);
+
+        return guild.getDisabledCommands().contains(COMMAND)
+                || (channelCommands != null && channelCommands.contains(COMMAND))
+                || guild.getDisabledUsers().contains(user)
+                || guild.getDisabledChannels().contains(channel)
+                || guild.getDisabledCategories().contains(CATEGORY)
+                || guild.getChannelSpecificDisabledCategories().computeIfAbsent(channel, c -> new ArrayList<>()).contains(CATEGORY)
+                || (!guild.getDisabledRoles().isEmpty() && roles.stream().anyMatch(r -> guild.getDisabledRoles().contains(r.getId())))
+                || roles.stream().anyMatch(r -> guild.getRoleSpecificDisabledCommands()
+                        .computeIfAbsent(r.getId(), s -> new ArrayList<>()).contains(COMMAND))
+                || roles.stream().anyMatch(r -> guild.getRoleSpecificDisabledCategories()
+                        .computeIfAbsent(r.getId(), s -> new ArrayList<>()).contains(CATEGORY));
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return policy.isCommandDisabled(COMMAND)
+                || policy.isCommandDisabled(CHANNEL, COMMAND)
+                || policy.isUserDisabled(USER)
+                || policy.isChannelDisabled(CHANNEL)
+                || policy.isCategoryDisabled(CATEGORY)
+                || policy.isCategoryDisabled(CHANNEL, CATEGORY)
+                || policy.isAnyRoleDisabled(roles)
+                || policy.isCommandDisabledForAnyRole(roles, COMMAND)
+                || policy.isCategoryDisabledForAnyRole(roles, CATEGORY);
+    }
+
+    // Only the id is ever read from the roles, so there's no need for a whole guild behind them.
+    private static Role role(long id) {
+        return (Role) Proxy.newProxyInstance(Role.class.getClassLoader(), new Class<?>[] { Role.class }, (proxy, method, args) ->
+                switch (method.getName()) {
+                    case "getIdLong" -> id;
+                    case "getId" -> Long.toUnsignedString(id);
+                    case "hashCode" -> Long.hashCode(id);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "Role:" + id;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+}
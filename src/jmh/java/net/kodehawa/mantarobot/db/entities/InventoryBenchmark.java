@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db.entities;
+
+import net.kodehawa.mantarobot.commands.currency.item.Item;
+import net.kodehawa.mantarobot.commands.currency.item.ItemReference;
+import net.kodehawa.mantarobot.commands.currency.item.ItemStack;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * {@link Inventory} against how it was before ({@link Legacy}): a map of item slice to amount, turned into
+ * item stacks on every read. Both hold every item there is, which is as big as an inventory gets.
+ * mine is what a mining command does: check the pick, look at a couple of amounts, and add and take some items.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryBenchmark {
+    private Inventory inventory;
+    private Legacy legacy;
+
+    @Setup
+    public void setup() {
+        List<ItemStack> stacks = new ArrayList<>();
+        for (Item item : ItemReference.ALL) {
+            stacks.add(new ItemStack(item, 10));
+        }
+
+        inventory = new Inventory();
+        inventory.replaceWith(stacks);
+        legacy = new Legacy();
+        legacy.replaceWith(stacks);
+    }
+
+    @Benchmark
+    public int mine() {
+        var amount = 0;
+        if (inventory.containsItem(ItemReference.DIAMOND_PICKAXE)) {
+            amount += inventory.getAmount(ItemReference.DIAMOND) + inventory.getAmount(ItemReference.GEM_FRAGMENT);
+            inventory.process(new ItemStack(ItemReference.DIAMOND, 1), new ItemStack(ItemReference.GEM_FRAGMENT, 1));
+            inventory.process(new ItemStack(ItemReference.DIAMOND, -1), new ItemStack(ItemReference.GEM_FRAGMENT, -1));
+        }
+
+        return amount;
+    }
+
+    @Benchmark
+    public int mineLegacy() {
+        var amount = 0;
+        if (legacy.containsItem(ItemReference.DIAMOND_PICKAXE)) {
+            amount += legacy.getAmount(ItemReference.DIAMOND) + legacy.getAmount(ItemReference.GEM_FRAGMENT);
+            legacy.process(new ItemStack(ItemReference.DIAMOND, 1), new ItemStack(ItemReference.GEM_FRAGMENT, 1));
+            legacy.process(new ItemStack(ItemReference.DIAMOND, -1), new ItemStack(ItemReference.GEM_FRAGMENT, -1));
+        }
+
+        return amount;
+    }
+
+    @Benchmark
+    public Map<String, Integer> serialize() {
+        return inventory.serialize();
+    }
+
+    @Benchmark
+    public Map<String, Integer> serializeLegacy() {
+        return Legacy.serialize(legacy.asList());
+    }
+
+    // Inventory as it was before it kept an amount per item id.
+    static final class Legacy {
+        private Map<String, Integer> stored = new HashMap<>();
+
+        List<ItemStack> asList() {
+            return unserialize(stored);
+        }
+
+        Map<Item, ItemStack> asMap() {
+            return ItemStack.mapped(asList());
+        }
+
+        boolean containsItem(Item item) {
+            return asMap().containsKey(item);
+        }
+
+        int getAmount(Item item) {
+            return asMap().getOrDefault(item, new ItemStack(item, 0)).getAmount();
+        }
+
+        boolean merge(List<ItemStack> inv) {
+            Map<String, Integer> map = new HashMap<>(stored);
+            Map<String, Integer> toAdd = serialize(inv);
+            boolean[] hadOverflow = {false};
+            toAdd.forEach((id, amount) -> {
+                int currentAmount = map.getOrDefault(id, 0);
+                if (currentAmount + amount > ItemStack.MAX_STACK_SIZE) {
+                    currentAmount = ItemStack.MAX_STACK_SIZE;
+                    hadOverflow[0] = true;
+                } else {
+                    currentAmount += amount;
+                }
+                map.put(id, currentAmount);
+            });
+            replaceWith(unserialize(map));
+            return hadOverflow[0];
+        }
+
+        void process(ItemStack... stacks) {
+            merge(Arrays.asList(stacks));
+        }
+
+        void replaceWith(List<ItemStack> inv) {
+            stored = serialize(inv);
+        }
+
+        static Map<String, Integer> serialize(List<ItemStack> list) {
+            Map<String, Integer> collect = list.stream().filter(stack -> stack.getAmount() != 0)
+                    .collect(Collectors.toMap(stack -> stack.getItem().getTranslatedName().split("\\.")[1], ItemStack::getAmount, Integer::sum));
+            collect.values().remove(0);
+            return collect;
+        }
+
+        static List<ItemStack> unserialize(Map<String, Integer> map) {
+            //noinspection OptionalGetWithoutIsPresent
+            return map.entrySet().stream().filter(e -> e.getValue() != 0)
+                    .filter(e -> fromTranslationSlice(e.getKey()).isPresent())
+                    .map(entry -> new ItemStack(fromTranslationSlice(entry.getKey()).get(), Math.max(Math.min(entry.getValue(), ItemStack.MAX_STACK_SIZE), 0)))
+                    .collect(Collectors.toList());
+        }
+
+        // ItemHelper#fromTranslationSlice as it was, a scan over every item.
+        static Optional<Item> fromTranslationSlice(String slice) {
+            return Arrays.stream(ItemReference.ALL)
+                    .filter(item -> item.getTranslatedName().equals("items." + slice))
+                    .findFirst();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.utils.commands.ratelimit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link RateLimiter} against what it used to be ({@link Legacy}): a map of counters, with a task scheduled per
+ * allowed call to give the token back. With max = 1 most calls are denied, like the blacklist notice limiter.
+ * With a huge max every call is allowed, which is where the old one scheduled a task each time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RateLimiterBenchmark {
+    private static final int USERS = 10_000;
+
+    @Param({ "1", "1000000000" })
+    public int max;
+
+    private final AtomicInteger next = new AtomicInteger();
+    private long[] ids;
+    private String[] keys;
+    private RateLimiter limiter;
+    private Legacy legacy;
+
+    @Setup
+    public void setup() {
+        ids = new long[USERS];
+        keys = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            ids[i] = 155867458203287552L + i * 4096L;
+            keys[i] = String.valueOf(ids[i]);
+        }
+
+        limiter = new RateLimiter(TimeUnit.SECONDS, max, 5);
+        legacy = new Legacy(TimeUnit.SECONDS, max, 5);
+    }
+
+    @TearDown
+    public void tearDown() {
+        legacy.ses.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean tokenBucket() {
+        return limiter.process(ids[Math.floorMod(next.getAndIncrement(), USERS)], false);
+    }
+
+    @Benchmark
+    public boolean legacy() {
+        return legacy.process(keys[Math.floorMod(next.getAndIncrement(), USERS)]);
+    }
+
+    // RateLimiter as it was before the token bucket, without the premium lookup.
+    static final class Legacy {
+        private final ScheduledExecutorService ses = Executors.newScheduledThreadPool(1);
+        private final long max;
+        private final long timeout;
+        private final ConcurrentHashMap<String, Pair<AtomicInteger, Long>> usersRateLimited = new ConcurrentHashMap<>();
+
+        Legacy(TimeUnit timeUnit, int max, int timeout) {
+            this.max = max;
+            this.timeout = timeUnit.toMillis(timeout);
+        }
+
+        boolean process(String key) {
+            Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
+            if (p == null) {
+                usersRateLimited.put(key, p = new Pair<>());
+                p.first = new AtomicInteger();
+            }
+
+            AtomicInteger a = p.first;
+            long i = a.get();
+            if (i >= max) return false;
+
+            a.incrementAndGet();
+            long now = System.currentTimeMillis();
+
+            Long tryAgain = p.second;
+            if (tryAgain == null || tryAgain < now) {
+                p.second = now + timeout;
+            }
+
+            ses.schedule(a::decrementAndGet, timeout, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        static final class Pair<F, S> {
+            F first;
+            S second;
+        }
+    }
+}
@@ -33,7 +33,8 @@ import net.kodehawa.mantarobot.commands.music.MantaroAudioManager;
 import net.kodehawa.mantarobot.commands.utils.birthday.BirthdayCacher;
 import net.kodehawa.mantarobot.commands.utils.birthday.BirthdayTask;
 import net.kodehawa.mantarobot.commands.utils.polls.PollTask;
-import net.kodehawa.mantarobot.commands.utils.reminders.ReminderTask;
+import net.kodehawa.mantarobot.commands.utils.premium.PremiumKeyTask;
+import net.kodehawa.mantarobot.commands.utils.reminders.ReminderScheduler;
 import net.kodehawa.mantarobot.core.MantaroCore;
 import net.kodehawa.mantarobot.core.MantaroEventManager;
 import net.kodehawa.mantarobot.data.Config;
@@ -270,7 +271,31 @@ public class MantaroBot {
             ScheduledExecutorService reminderExecutor = Executors.newSingleThreadScheduledExecutor(
                     new ThreadFactoryBuilder().setNameFormat("Mantaro Reminder Handler").build()
             );
-            reminderExecutor.scheduleAtFixedRate(ReminderTask::handle, 0, 30, TimeUnit.SECONDS);
+            new ReminderScheduler(reminderExecutor).start();
+
+            // Seed the leaderboards, and fix whatever incremental updates missed once a day after that.
+            ScheduledExecutorService leaderboardExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Mantaro Leaderboard Rebuilder").build()
+            );
+            leaderboardExecutor.scheduleAtFixedRate(() -> MantaroData.db().getLeaderboards().rebuildAll(), 5, 24 * 60, TimeUnit.MINUTES);
+
+            // Retry the transfer refunds that failed, and report the transfers that stopped halfway.
+            ScheduledExecutorService transferExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Mantaro Transfer Settler").build()
+            );
+            transferExecutor.scheduleAtFixedRate(() -> {
+                try {
+                    MantaroData.db().settleTransfers();
+                } catch (Exception e) {
+                    log.error("Error settling transfers", e);
+                }
+            }, 1, 10, TimeUnit.MINUTES);
+
+            // Renew the premium keys about to expire (and warn whoever can't). The window is days long, so a few times a day is plenty.
+            ScheduledExecutorService premiumExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Mantaro Premium Key Handler").build()
+            );
+            premiumExecutor.scheduleAtFixedRate(PremiumKeyTask::handle, 1, 6 * 60, TimeUnit.MINUTES);
         }
 
         // Handle the finished polls
@@ -290,6 +315,9 @@ public class MantaroBot {
                 new ThreadFactoryBuilder().setNameFormat("Mantaro Statistics Posting").build()
         );
         postExecutor.scheduleAtFixedRate(() -> postStats(getShardManager()), 10, 10, TimeUnit.MINUTES);
+
+        // Keep the blacklist snapshot up to date.
+        MantaroData.db().startMantaroDataRefresh(executorService);
     }
 
     public void startCheckingBirthdays() {
@@ -326,7 +354,8 @@ public class MantaroBot {
             );
         }
 
-        // Start the birthday cacher.
+        // Birthday changes are pushed to every node as they happen, this only picks up anything that was missed
+        // (Redis being down, changes done straight on the database) before the birthday task runs.
         executorService.scheduleAtFixedRate(birthdayCacher::cache,
                 Math.max(0, (millisecondsUntilTomorrow - TimeUnit.MINUTES.toMillis(30))),
                 TimeUnit.HOURS.toMillis(23), TimeUnit.MILLISECONDS
@@ -17,8 +17,6 @@
 
 package net.kodehawa.mantarobot.commands;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import com.google.common.eventbus.Subscribe;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
@@ -53,20 +51,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Module
 public class BirthdayCmd {
     private static final Logger log = LoggerFactory.getLogger(BirthdayCmd.class);
 
-    // This will get invalidated as a whole every 23 hours, we don't really *need* to expire entries here
-    // because BirthdayCacher will make it so it refreshes at the same period as the BirthdayCacher gets refreshed.
-    // Therefore the birthday list here can be kept up-to-date.
-    private static final Cache<Long, ConcurrentHashMap<Long, BirthdayCacher.BirthdayData>> guildBirthdayCache = CacheBuilder.newBuilder()
-            .maximumSize(2500)
-            .build();
-
     @Subscribe
     public void register(CommandRegistry cr) {
         cr.registerSlash(Birthday.class);
@@ -138,6 +128,7 @@ public class BirthdayCmd {
                 MongoUser dbUser = ctx.getDBUser();
                 dbUser.birthday(birthdayFormat);
                 dbUser.updateAllChanged();
+                updateCachedBirthday(ctx, birthdayFormat);
 
                 ctx.replyEphemeral("commands.birthday.added_birthdate", EmoteReference.CORRECT, display, extra);
             }
@@ -159,12 +150,6 @@ public class BirthdayCmd {
                 dbGuild.addAllowedBirthdays(author.getId());
                 dbGuild.updateAllChanged();
 
-                var cached = guildBirthdayCache.getIfPresent(ctx.getGuild().getIdLong());
-                var cachedBirthday = ctx.getBot().getBirthdayCacher().getCachedBirthdays().get(author.getIdLong());
-                if (cached != null && cachedBirthday != null) {
-                    cached.put(author.getIdLong(), cachedBirthday);
-                }
-
                 ctx.replyEphemeral("commands.birthday.allowed_server", EmoteReference.CORRECT);
             }
         }
@@ -185,11 +170,6 @@ public class BirthdayCmd {
                 dbGuild.removeAllowedBirthday(author.getId());
                 dbGuild.updateAllChanged();
 
-                var cached = guildBirthdayCache.getIfPresent(ctx.getGuild().getIdLong());
-                if (cached != null) {
-                    cached.remove(author.getIdLong());
-                }
-
                 ctx.replyEphemeral("commands.birthday.denied", EmoteReference.CORRECT);
             }
         }
@@ -203,6 +183,7 @@ public class BirthdayCmd {
                 var user = ctx.getDBUser();
                 user.birthday(null);
                 user.updateAllChanged();
+                updateCachedBirthday(ctx, null);
 
                 ctx.replyEphemeral("commands.birthday.reset", EmoteReference.CORRECT);
             }
@@ -218,8 +199,7 @@ public class BirthdayCmd {
                 BirthdayCacher cacher = MantaroBot.getInstance().getBirthdayCacher();
                 try {
                     if (cacher != null) {
-                        var globalBirthdays = cacher.getCachedBirthdays();
-                        if (globalBirthdays.isEmpty()) {
+                        if (cacher.isEmpty()) {
                             ctx.reply("commands.birthday.no_global_birthdays", EmoteReference.SAD);
                             return;
                         }
@@ -233,7 +213,7 @@ public class BirthdayCmd {
                             return;
                         }
 
-                        var guildCurrentBirthdays = getBirthdayMap(ctx.getGuild().getIdLong(), ids);
+                        var guildCurrentBirthdays = cacher.getBirthdays(ids);
                         if (guildCurrentBirthdays.isEmpty()) {
                             ctx.reply("commands.birthday.no_guild_birthdays", EmoteReference.ERROR);
                             return;
@@ -281,15 +261,14 @@ public class BirthdayCmd {
                 calendar.set(calendar.get(Calendar.YEAR), (int) month, Calendar.MONDAY);
                 try {
                     if (cacher != null) {
-                        final var cachedBirthdays = cacher.getCachedBirthdays();
-                        if (cachedBirthdays.isEmpty()) {
+                        if (cacher.isEmpty()) {
                             ctx.reply("commands.birthday.no_global_birthdays", EmoteReference.SAD);
                             return;
                         }
 
                         var data = ctx.getDBGuild();
                         var ids = data.getAllowedBirthdays().stream().map(Long::parseUnsignedLong).collect(Collectors.toList());
-                        var guildCurrentBirthdays = getBirthdayMap(ctx.getGuild().getIdLong(), ids);
+                        var guildCurrentBirthdays = cacher.getBirthdays(ids);
 
                         if (ids.isEmpty()) {
                             ctx.reply("commands.birthday.no_guild_birthdays", EmoteReference.ERROR);
@@ -369,30 +348,10 @@ public class BirthdayCmd {
         DiscordUtils.listButtons(ctx.getUtilsContext(), 45, messages);
     }
 
-    public static Cache<Long, ConcurrentHashMap<Long, BirthdayCacher.BirthdayData>> getGuildBirthdayCache() {
-        return guildBirthdayCache;
-    }
-
-    private static ConcurrentHashMap<Long, BirthdayCacher.BirthdayData> getBirthdayMap(long guildId, List<Long> allowed) {
-        ConcurrentHashMap<Long, BirthdayCacher.BirthdayData> guildCurrentBirthdays = new ConcurrentHashMap<>();
-        final var cachedBirthdays = MantaroBot.getInstance().getBirthdayCacher().getCachedBirthdays();
-
-        var cached = guildBirthdayCache.getIfPresent(guildId);
-        if (cached != null && !cached.isEmpty()) {
-            guildCurrentBirthdays = cached;
-        } else {
-            for (var birthdays : cachedBirthdays.entrySet()) {
-                if (allowed.contains(birthdays.getKey())) {
-                    guildCurrentBirthdays.put(birthdays.getKey(), birthdays.getValue());
-                }
-            }
-
-            // Populate guild cache
-            if (!guildCurrentBirthdays.isEmpty()) {
-                guildBirthdayCache.put(guildId, guildCurrentBirthdays);
-            }
+    private static void updateCachedBirthday(SlashContext ctx, String birthday) {
+        var cacher = ctx.getBot().getBirthdayCacher();
+        if (cacher != null) {
+            cacher.update(ctx.getAuthor().getIdLong(), birthday);
         }
-
-        return guildCurrentBirthdays;
     }
 }
@@ -420,7 +420,7 @@ public class CurrencyActionCmds {
             bonus = money / 2;
         }
 
-        if (dbUser.isPremium() && money > 0 && bonus > 0) {
+        if (ctx.db().isUserPremium(dbUser.getId()) && money > 0 && bonus > 0) {
             money += random.nextInt(bonus);
         }
 
@@ -442,7 +442,7 @@ public class CurrencyActionCmds {
         }
 
         if (random.nextInt(400) >= 392) {
-            var crate = dbUser.isPremium() ? ItemReference.MINE_PREMIUM_CRATE : ItemReference.MINE_CRATE;
+            var crate = ctx.db().isUserPremium(dbUser.getId()) ? ItemReference.MINE_PREMIUM_CRATE : ItemReference.MINE_CRATE;
 
             if (!player.canFitItem(crate)) {
                 message += "\n" + languageContext.get("commands.mine.crate.overflow");
@@ -454,7 +454,7 @@ public class CurrencyActionCmds {
         }
 
         if (player.shouldSeeCampaign()) {
-            message += Campaign.PREMIUM.getStringFromCampaign(languageContext, dbUser.isPremium());
+            message += Campaign.PREMIUM.getStringFromCampaign(languageContext, ctx.db().isUserPremium(dbUser.getId()));
             player.markCampaignAsSeen();
         }
 
@@ -592,7 +592,7 @@ public class CurrencyActionCmds {
 
             // START OF FISH LOOT CRATE HANDLING
             if (random.nextInt(400) > 380) {
-                var crate = dbUser.isPremium() ? ItemReference.FISH_PREMIUM_CRATE : ItemReference.FISH_CRATE;
+                var crate = ctx.db().isUserPremium(dbUser.getId()) ? ItemReference.FISH_PREMIUM_CRATE : ItemReference.FISH_CRATE;
                 if (!player.canFitItem(crate)) {
                     extraMessage += "\n" + languageContext.get("commands.fish.crate.overflow");
                 } else {
@@ -663,12 +663,12 @@ public class CurrencyActionCmds {
                 bonus = money / 2;
             }
 
-            if (dbUser.isPremium() && money > 0 && bonus > 0) {
+            if (ctx.db().isUserPremium(dbUser.getId()) && money > 0 && bonus > 0) {
                 money += random.nextInt(bonus);
             }
 
             if (player.shouldSeeCampaign()) {
-                extraMessage += Campaign.PREMIUM.getStringFromCampaign(languageContext, dbUser.isPremium());
+                extraMessage += Campaign.PREMIUM.getStringFromCampaign(languageContext, ctx.db().isUserPremium(dbUser.getId()));
                 player.markCampaignAsSeen();
             }
 
@@ -823,7 +823,7 @@ public class CurrencyActionCmds {
                 bonus = money / 2;
             }
 
-            if (dbUser.isPremium() && money > 0 && bonus > 0) {
+            if (ctx.db().isUserPremium(dbUser.getId()) && money > 0 && bonus > 0) {
                 money += random.nextInt(bonus);
             }
 
@@ -832,7 +832,7 @@ public class CurrencyActionCmds {
             }
 
             if (random.nextInt(400) > 380) {
-                var crate = dbUser.isPremium() ? ItemReference.CHOP_PREMIUM_CRATE : ItemReference.CHOP_CRATE;
+                var crate = ctx.db().isUserPremium(dbUser.getId()) ? ItemReference.CHOP_PREMIUM_CRATE : ItemReference.CHOP_CRATE;
                 if (!player.canFitItem(crate)) {
                     extraMessage += "\n" + languageContext.get("commands.chop.crate.overflow");
                 } else {
@@ -849,7 +849,7 @@ public class CurrencyActionCmds {
             handlePetBadges(player, marriage, pet);
 
             if (player.shouldSeeCampaign()) {
-                extraMessage += Campaign.PREMIUM.getStringFromCampaign(languageContext, dbUser.isPremium());
+                extraMessage += Campaign.PREMIUM.getStringFromCampaign(languageContext, ctx.db().isUserPremium(dbUser.getId()));
                 player.markCampaignAsSeen();
             }
 
@@ -249,7 +249,7 @@ public class CurrencyCmds {
     public static class DailyCrate extends SlashCommand {
         @Override
         protected void process(SlashContext ctx) {
-            if (!ctx.getDBUser().isPremium()) {
+            if (!ctx.db().isUserPremium(ctx.getAuthor().getId())) {
                 ctx.reply("commands.dailycrate.not_premium", EmoteReference.ERROR);
                 return;
             }
@@ -458,7 +458,7 @@ public class CurrencyCmds {
         cr.register("dailycrate", new SimpleCommand(CommandCategory.CURRENCY) {
             @Override
             protected void call(Context ctx, String content, String[] args) {
-                if (!ctx.getDBUser().isPremium()) {
+                if (!ctx.db().isUserPremium(ctx.getAuthor().getId())) {
                     ctx.sendLocalized("commands.dailycrate.not_premium", EmoteReference.ERROR);
                     return;
                 }
@@ -777,7 +777,7 @@ public class CurrencyCmds {
                     });
         }
 
-        var toShow = random.nextInt(3) == 0 && !dbUser.isPremium() ? lang.get("general.sellout") : "";
+        var toShow = random.nextInt(3) == 0 && !ctx.db().isUserPremium(dbUser.getId()) ? lang.get("general.sellout") : "";
         DiscordUtils.sendPaginatedEmbed(ctx.getUtilsContext(), builder, DiscordUtils.divideFields(7, fields), toShow);
     }
 
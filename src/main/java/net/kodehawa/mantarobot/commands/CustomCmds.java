@@ -31,6 +31,7 @@ import net.dv8tion.jda.api.interactions.modals.Modal;
 import net.kodehawa.mantarobot.commands.currency.TextChannelGround;
 import net.kodehawa.mantarobot.commands.custom.CustomCommandHandler;
 import net.kodehawa.mantarobot.commands.custom.v3.Parser;
+import net.kodehawa.mantarobot.commands.custom.v3.ExecutionLimitException;
 import net.kodehawa.mantarobot.commands.custom.v3.SyntaxException;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.core.command.meta.Category;
@@ -56,8 +57,8 @@ import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.core.modules.commands.help.HelpContent;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.GuildCommandPolicy;
 import net.kodehawa.mantarobot.db.entities.CustomCommand;
-import net.kodehawa.mantarobot.db.entities.MongoGuild;
 import net.kodehawa.mantarobot.utils.StringUtils;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.DiscordUtils;
@@ -71,8 +72,6 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
@@ -86,7 +85,6 @@ public class CustomCmds {
     public static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]+");
     public static final Pattern INVALID_CHARACTERS_PATTERN = Pattern.compile("[^a-zA-Z0-9_]");
 
-    private static final Map<String, CustomCommand> customCommands = new ConcurrentHashMap<>();
     private static final Logger log = LoggerFactory.getLogger(CustomCmds.class);
     private static final SecureRandom random = new SecureRandom();
     //People spamming crap... we cant have nice things owo
@@ -110,31 +108,29 @@ public class CustomCmds {
         return true;
     };
 
-    public static void handle(String prefix, String cmdName, Context ctx, MongoGuild guildData, String args) {
+    public static void handle(String prefix, String cmdName, Context ctx, GuildCommandPolicy policy, String args) {
         CustomCommand customCommand = getCustomCommand(ctx.getGuild().getId(), cmdName);
         if (customCommand == null) {
             return;
         }
 
         // !! CCS disable check start.
-        if (guildData.getDisabledCommands().contains(cmdName)) {
+        if (policy.isCommandDisabled(cmdName)) {
             return;
         }
 
-        List<String> channelDisabledCommands = guildData.getChannelSpecificDisabledCommands().get(ctx.getChannel().getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(cmdName)) {
+        if (policy.isCommandDisabled(ctx.getChannel().getIdLong(), cmdName)) {
             return;
         }
 
-        Map<String, List<String>> roleSpecificDisabledCommands = guildData.getRoleSpecificDisabledCommands();
-        if (ctx.getMember().getRoles().stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(r.getId(), s -> new ArrayList<>()).contains(cmdName)) && !CommandPermission.ADMIN.test(ctx.getMember())) {
+        if (policy.isCommandDisabledForAnyRole(ctx.getMember().getRoles(), cmdName) && !CommandPermission.ADMIN.test(ctx.getMember())) {
             return;
         }
         // !! CCS disable check end.
 
         // Create a new language context only if the command goes through.
         // This avoids getting a user everytime a command is ran, even if the command is not valid.
-        ctx.setLanguageContext(new I18nContext(guildData, db().getUser(ctx.getAuthor())));
+        ctx.setLanguageContext(new I18nContext(db().getGuild(ctx.getGuild()), db().getUser(ctx.getAuthor())));
 
         // Run the actual custom command.
         List<String> values = customCommand.getValues();
@@ -152,7 +148,7 @@ public class CustomCmds {
         String response = values.get(random.nextInt(values.size()));
         try {
             new CustomCommandHandler(prefix, ctx, response, args).handle();
-        } catch (SyntaxException e) {
+        } catch (SyntaxException | ExecutionLimitException e) {
             ctx.sendStrippedLocalized("commands.custom.error_running_new", EmoteReference.ERROR, e.getMessage());
         } catch (Exception e) {
             ctx.sendLocalized("commands.custom.error_running", EmoteReference.ERROR);
@@ -160,16 +156,12 @@ public class CustomCmds {
         }
     }
 
-    //Lazy-load custom commands into cache.
+    // Cached (including misses) in ManagedDatabase, and dropped there whenever a custom command is saved or deleted.
     public static CustomCommand getCustomCommand(String id, String name) {
         if (CommandProcessor.REGISTRY.commands().containsKey(name)) {
             return null;
         }
 
-        if (customCommands.containsKey(id + ":" + name)) {
-            return customCommands.get(id + ":" + name);
-        }
-
         CustomCommand custom = db().getCustomCommand(id, name);
         if (custom == null)
             return null;
@@ -189,9 +181,6 @@ public class CustomCmds {
             custom.insertOrReplace();
         }
 
-        //add to registry
-        customCommands.put(custom.getId(), custom);
-
         return custom;
     }
 
@@ -507,8 +496,6 @@ public class CustomCmds {
 
                         // save at DB
                         custom.insertOrReplace();
-                        // reflect at local
-                        customCommands.put(custom.getId(), custom);
 
                         event.reply(lang.get("commands.custom.add.success").formatted(EmoteReference.CORRECT, name))
                                 .queue();
@@ -662,7 +649,6 @@ public class CustomCmds {
 
                         custom.getValues().set(where - 1, commandContent);
                         custom.insertOrReplace();
-                        customCommands.put(custom.getId(), custom);
                         event.reply(lang.get("commands.custom.edit.success").formatted(EmoteReference.CORRECT, where, custom.getName())).queue();
                         return Operation.COMPLETED;
                     }
@@ -807,7 +793,7 @@ public class CustomCmds {
                     // TODO: CANNOT PORT TO SLASH: somehow requires event from the old Context to function.
                     // THIS HAS TO CHANGE.
                     new CustomCommandHandler("", ctx, ctn).handle(true);
-                } catch (SyntaxException e) {
+                } catch (SyntaxException | ExecutionLimitException e) {
                     ctx.sendStrippedLocalized("commands.custom.eval.new_error", EmoteReference.ERROR, e.getMessage());
                 } catch (Exception e) {
                     ctx.sendStrippedLocalized("commands.custom.eval.error",
@@ -1144,7 +1130,6 @@ public class CustomCmds {
                 int size = customCommands.size();
 
                 customCommands.stream().filter(cmd -> !cmd.isLocked()).forEach(CustomCommand::delete);
-                customCommands.forEach(c -> CustomCmds.customCommands.remove(c.getId()));
 
                 message.editMessageFormat(languageContext.get("commands.custom.clear.success"), EmoteReference.PENCIL, size)
                         .queue();
@@ -1193,14 +1178,6 @@ public class CustomCmds {
         oldCustom.delete();
         newCustom.insertOrReplace();
 
-        //reflect at local
-        customCommands.remove(oldCustom.getId());
-        customCommands.put(newCustom.getId(), newCustom);
-
-        //clear commands if none
-        if (customCommands.keySet().stream().noneMatch(s -> s.endsWith(":" + cmd)))
-            customCommands.remove(cmd);
-
         ctx.sendLocalized("commands.custom.rename.success", EmoteReference.CORRECT, cmd, value);
 
         //easter egg :D
@@ -1297,7 +1274,6 @@ public class CustomCmds {
         }
 
         custom.insertOrReplace();
-        customCommands.put(custom.getId(), custom);
         ctx.sendLocalized("commands.custom.deleteresponse.success", EmoteReference.CORRECT, where, custom.getName());
     }
 
@@ -1331,14 +1307,6 @@ public class CustomCmds {
         //delete at DB
         custom.delete();
 
-        //reflect at local
-        customCommands.remove(custom.getId());
-
-        //clear commands if none
-        if (customCommands.keySet().stream().noneMatch(s -> s.endsWith(":" + content))) {
-            customCommands.remove(content);
-        }
-
         ctx.sendLocalized("commands.custom.remove.success", EmoteReference.PENCIL, content);
     }
 
@@ -1413,8 +1381,6 @@ public class CustomCmds {
 
         //save at DB
         custom.insertOrReplace();
-        //reflect at local
-        customCommands.put(custom.getId(), custom);
         ctx.sendLocalized("commands.custom.add.success", EmoteReference.CORRECT, name);
 
         //easter egg :D
@@ -1459,7 +1425,6 @@ public class CustomCmds {
 
         custom.getValues().set(where - 1, commandContent);
         custom.insertOrReplace();
-        customCommands.put(custom.getId(), custom);
         ctx.sendLocalized("commands.custom.edit.success", EmoteReference.CORRECT, where, custom.getName());
     }
 }
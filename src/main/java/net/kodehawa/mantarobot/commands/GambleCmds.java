@@ -407,8 +407,8 @@ public class GambleCmds {
                 player.addBadgeIfAbsent(Badge.SENSELESS_HOARDING);
             }
 
-            player.addMoney(gains);
             player.updateAllChanged();
+            player.addMoneyAtomically(gains);
         } else {
             stats.incrementSlotsLose();
             stats.updateAllChanged();
@@ -416,12 +416,12 @@ public class GambleCmds {
                     languageContext.withRoot("commands", "slots.lose").formatted(EmoteReference.SAD)
             );
 
-            if (!coinSelect) { // We already substracted the gained amount, in slot tickets.
-                player.removeMoney(money);
-            }
-
             // We need to save anyway.
             player.updateAllChanged();
+            if (!coinSelect) { // We already substracted the gained amount, in slot tickets.
+                // Same as gamble: if they spent part of it while the slots ran, they lose what's left.
+                player.removeMoneyUpTo(money);
+            }
         }
 
         message.append("\n");
@@ -518,7 +518,7 @@ public class GambleCmds {
         final SecureRandom random = new SecureRandom();
 
         if (luck > random.nextInt(140)) {
-            if (player.addMoney(gains)) {
+            if (player.addMoneyAtomically(gains)) {
                 if (gains >= 4_950L && (!player.hasBadge(Badge.GAMBLER))) {
                     player.addBadgeIfAbsent(Badge.GAMBLER);
                 }
@@ -540,13 +540,13 @@ public class GambleCmds {
                 player.addBadgeIfAbsent(Badge.RISKY_ORDEAL);
             }
 
-            var oldMoney = player.getCurrentMoney();
-            player.currentMoney(Math.max(0, player.getCurrentMoney() - i));
+            // If they have less than the bet now (spent somewhere else meanwhile), they lose what's left.
+            var lost = player.removeMoneyUpTo(i);
 
             stats.incrementGambleLose();
             stats.updateAllChanged();
             ctx.sendLocalized("commands.gamble.lose", EmoteReference.DICE,
-                    (player.getCurrentMoney() == 0 ? ctx.getLanguageContext().get("commands.gamble.lose_all") + " " + oldMoney : i),
+                    (player.getCurrentMoney() == 0 ? ctx.getLanguageContext().get("commands.gamble.lose_all") + " " + lost : i),
                     EmoteReference.SAD
             );
         }
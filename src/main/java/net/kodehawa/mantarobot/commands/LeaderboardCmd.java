@@ -19,13 +19,16 @@ package net.kodehawa.mantarobot.commands;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.eventbus.Subscribe;
-import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Sorts;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import net.dv8tion.jda.api.requests.ErrorResponse;
 import net.kodehawa.mantarobot.commands.currency.profile.Badge;
 import net.kodehawa.mantarobot.commands.utils.leaderboards.CachedLeaderboardMember;
 import net.kodehawa.mantarobot.core.CommandRegistry;
@@ -39,22 +42,26 @@ import net.kodehawa.mantarobot.core.modules.Module;
 import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.db.entities.MongoUser;
-import net.kodehawa.mantarobot.db.entities.Player;
-import net.kodehawa.mantarobot.db.entities.PlayerStats;
+import net.kodehawa.mantarobot.db.Leaderboards;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
-import org.bson.conversions.Bson;
 import redis.clients.jedis.Jedis;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -62,6 +69,8 @@ import java.util.stream.StreamSupport;
 @Module
 public class LeaderboardCmd {
     private static final Config config = MantaroData.config().get();
+    // How long to wait for Discord when resolving users that aren't cached.
+    private static final long RESOLVE_TIMEOUT_SECONDS = 5;
     private static final IncreasingRateLimiter rateLimiter = new IncreasingRateLimiter.Builder()
             .spamTolerance(3)
             .limit(1)
@@ -93,29 +102,19 @@ public class LeaderboardCmd {
             @Override
             protected void process(SlashContext ctx) {
                 if (config.premiumBot) {
-                    var tableName = "players";
-                    var moneyLeaderboard = getLeaderboard(tableName, Player.class, Sorts.descending("oldMoney"));
                     send(ctx,
                             generateLeaderboardEmbed(ctx,
                                     ctx.getLanguageContext().get("commands.leaderboard.inner.money_old").formatted(EmoteReference.MONEY),
-                                    "commands.leaderboard.money", moneyLeaderboard,
-                                    player -> Pair.of(getMember(ctx, player.getId()),
-                                            String.valueOf(player.getOldMoney())), "%s**%s** - $%,d"
+                                    "commands.leaderboard.money", Leaderboards.Board.OLD_MONEY, "%s**%s** - $%,d"
                             ).build()
                     );
                     return;
                 }
 
-                var tableName = "players";
-                var moneyLeaderboard = getLeaderboard(tableName, Player.class, Sorts.descending("newMoney"));
                 send(ctx,
-                        generateLeaderboardEmbed(
-                                ctx, ctx.getLanguageContext().get("commands.leaderboard.inner.money").formatted(EmoteReference.MONEY),
-                                "commands.leaderboard.money", moneyLeaderboard,
-                                player -> {
-                                    var money = player.getNewMoney();
-                                    return Pair.of(getMember(ctx, player.getId()), String.valueOf(money));
-                                }, "%s**%s** - $%,d"
+                        generateLeaderboardEmbed(ctx,
+                                ctx.getLanguageContext().get("commands.leaderboard.inner.money").formatted(EmoteReference.MONEY),
+                                "commands.leaderboard.money", Leaderboards.Board.MONEY, "%s**%s** - $%,d"
                         ).build()
                 );
             }
@@ -126,12 +125,10 @@ public class LeaderboardCmd {
         public static class Gamble extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var gambleLeaderboard = getLeaderboard("playerstats", PlayerStats.class, Sorts.descending("gambleWins"));
                 send(ctx,
                         generateLeaderboardEmbed(ctx,
                                 ctx.getLanguageContext().get("commands.leaderboard.inner.gamble").formatted(EmoteReference.MONEY),
-                                "commands.leaderboard.gamble", gambleLeaderboard,
-                                stats -> Pair.of(getMember(ctx, stats.getId()), String.valueOf(stats.getGambleWins())), "%s**%s** - %,d"
+                                "commands.leaderboard.gamble", Leaderboards.Board.GAMBLE, "%s**%s** - %,d"
                         ).build()
                 );
             }
@@ -142,13 +139,10 @@ public class LeaderboardCmd {
         public static class Slots extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var slotsLeaderboard = getLeaderboard("playerstats", PlayerStats.class, Sorts.descending("slotsWins"));
                 send(ctx,
                         generateLeaderboardEmbed(ctx,
                                 ctx.getLanguageContext().get("commands.leaderboard.inner.slots").formatted(EmoteReference.MONEY),
-                                "commands.leaderboard.slots", slotsLeaderboard,
-                                stats -> Pair.of(getMember(ctx, stats.getId()),
-                                        String.valueOf(stats.getSlotsWins())), "%s**%s** - %,d"
+                                "commands.leaderboard.slots", Leaderboards.Board.SLOTS, "%s**%s** - %,d"
                         ).build()
                 );
             }
@@ -159,14 +153,11 @@ public class LeaderboardCmd {
         public static class Reputation extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var tableName = "players";
-                var reputationLeaderboard = getLeaderboard(tableName, Player.class, Sorts.descending("reputation"));
                 send(ctx,
                         generateLeaderboardEmbed(ctx,
                                 ctx.getLanguageContext().get("commands.leaderboard.inner.rep").formatted(EmoteReference.REP),
-                                "commands.leaderboard.reputation", reputationLeaderboard,
-                                player -> Pair.of(getMember(ctx, player.getId()), String.valueOf(player.getReputation())), "%s**%s** - %,d")
-                                .build()
+                                "commands.leaderboard.reputation", Leaderboards.Board.REPUTATION, "%s**%s** - %,d"
+                        ).build()
                 );
             }
         }
@@ -176,16 +167,11 @@ public class LeaderboardCmd {
         public static class Daily extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var dailyLeaderboard = getLeaderboard("players", Player.class, Sorts.descending("dailyStreak"));
                 send(ctx,
                         generateLeaderboardEmbed(ctx,
-                                ctx.getLanguageContext().get("commands.leaderboard.inner.streak")
-                                        .formatted(EmoteReference.POPPER), "commands.leaderboard.daily", dailyLeaderboard,
-                                player -> {
-                                    var streak = player.getDailyStreak();
-                                    return Pair.of(getMember(ctx, player.getId()), String.valueOf(streak));
-                                }, "%s**%s** - %sx")
-                                .build()
+                                ctx.getLanguageContext().get("commands.leaderboard.inner.streak").formatted(EmoteReference.POPPER),
+                                "commands.leaderboard.daily", Leaderboards.Board.DAILY, "%s**%s** - %sx"
+                        ).build()
                 );
             }
         }
@@ -195,16 +181,11 @@ public class LeaderboardCmd {
         public static class Claim extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var claimLeaderboard = getLeaderboard("users", MongoUser.class, Sorts.descending("timesClaimed"));
                 send(ctx,
                         generateLeaderboardEmbed(ctx,
                                 ctx.getLanguageContext().get("commands.leaderboard.inner.claim").formatted(EmoteReference.HEART),
-                                "commands.leaderboard.claim", claimLeaderboard,
-                                user -> {
-                                    var timesClaimed = user.getTimesClaimed();
-                                    return Pair.of(getMember(ctx, user.getId()), String.valueOf(timesClaimed));
-                                }, "%s**%s** - %,d")
-                                .build()
+                                "commands.leaderboard.claim", Leaderboards.Board.CLAIM, "%s**%s** - %,d"
+                        ).build()
                 );
             }
         }
@@ -214,36 +195,51 @@ public class LeaderboardCmd {
         public static class Games extends SlashCommand {
             @Override
             protected void process(SlashContext ctx) {
-                var tableName = "players";
-                var gameLeaderboard = getLeaderboard(tableName, Player.class, Sorts.descending("gamesWon"));
                 send(ctx,
                         generateLeaderboardEmbed(ctx,
                                 ctx.getLanguageContext().get("commands.leaderboard.inner.game").formatted(EmoteReference.ZAP),
-                                "commands.leaderboard.game", gameLeaderboard,
-                                player -> {
-                                    var gamesWon = player.getGamesWon();
-                                    return Pair.of(getMember(ctx, player.getId()), String.valueOf(gamesWon));
-                                }, "%s**%s** - %,d")
-                                .build()
+                                "commands.leaderboard.game", Leaderboards.Board.GAMES, "%s**%s** - %,d"
+                        ).build()
                 );
             }
         }
     }
 
-    private static <T> AggregateIterable<T> getLeaderboard(String table, Class<T> deserialize, Bson sortFunction) {
-        // Somehow using an index is automatic?
-        return MantaroData.db().dbMantaro().getCollection(table, deserialize)
+    private static List<Leaderboards.Entry> getLeaderboard(Leaderboards.Board board) {
+        var entries = MantaroData.db().getLeaderboards().top(board, 15);
+        if (!entries.isEmpty()) {
+            return entries;
+        }
+
+        // Not built yet (or Redis is having a bad day), so sort on the database like we used to.
+        // We only show the one field, so there's no need to pull (and decode) whole inventories for every entry.
+        var field = board.getField();
+        var documents = MantaroData.db().dbMantaro().getCollection(board.getTable())
                 .aggregate(List.of(
-                        Aggregates.sort(sortFunction),
-                        Aggregates.limit(15))
+                        Aggregates.sort(Sorts.descending(field)),
+                        Aggregates.limit(15),
+                        Aggregates.project(Projections.include(field)))
                 );
+
+        return StreamSupport.stream(documents.spliterator(), false)
+                .map(document -> {
+                    var value = document.get(field, Number.class);
+                    return new Leaderboards.Entry(String.valueOf(document.get("_id")), value == null ? 0 : value.longValue());
+                })
+                .collect(Collectors.toList());
     }
 
-    private static <T> EmbedBuilder generateLeaderboardEmbed(IContext ctx, String description, String leaderboardKey,
-                                                             AggregateIterable<T> lbObject,
-                                                             Function<T, Pair<CachedLeaderboardMember, String>> mapFunction,
-                                                             String format) {
+    private static EmbedBuilder generateLeaderboardEmbed(IContext ctx, String description, String leaderboardKey,
+                                                         Leaderboards.Board board, String format) {
         var languageContext = ctx.getLanguageContext();
+        var footer = languageContext.get("general.requested_by").formatted(ctx.getAuthor().getName());
+        var rank = MantaroData.db().getLeaderboards().rank(board, ctx.getAuthor().getId());
+        if (rank.isPresent()) {
+            footer += " | " + languageContext.get("commands.leaderboard.rank").formatted(rank.getAsLong());
+        }
+
+        var entries = getLeaderboard(board);
+        var members = getMembers(ctx, entries.stream().map(Leaderboards.Entry::id).collect(Collectors.toList()));
         return new EmbedBuilder()
                 .setAuthor(languageContext.get("commands.leaderboard.header"),
                         null,
@@ -251,8 +247,8 @@ public class LeaderboardCmd {
                 ).setDescription(description)
                 .addField(
                         languageContext.get(leaderboardKey),
-                        StreamSupport.stream(lbObject.spliterator(), false)
-                                .map(mapFunction)
+                        entries.stream()
+                                .map(entry -> Pair.of(members.get(entry.id()), entry.score()))
                                 .filter(p -> Objects.nonNull(p.getKey()))
                                 .map(p -> {
                                     final var lbMember = p.getKey();
@@ -266,71 +262,144 @@ public class LeaderboardCmd {
                                     return format.formatted(
                                             EmoteReference.BLUE_SMALL_MARKER,
                                             lbMember.getTagOrDisplay() + (config.isOwner(ctx.getAuthor()) ? "(" + lbMember.getId() + ")" : ""),
-                                            StringUtils.isNumeric(p.getValue()) ? Long.parseLong(p.getValue()) : p.getValue()
+                                            p.getValue()
                                     );
                                 })
                                 .collect(Collectors.joining("\n")),
                         false
-                ).setFooter(
-                        languageContext.get("general.requested_by").formatted(ctx.getAuthor().getName()),
-                        null)
+                ).setFooter(footer, null)
                 .setThumbnail(ctx.getAuthor().getEffectiveAvatarUrl());
     }
 
     /**
-     * Caches a user in redis if they're in the leaderboard. This speeds up User lookup times tenfold.
-     * The key will expire after 48 hours in the set, then we will just re-cache it as needed.
-     * This should also take care of username changes.
+     * Resolves the members shown on a leaderboard. Users are cached in Redis for 48 hours, and users that couldn't be found
+     * are remembered for 12 hours, so we don't call Discord every single time a leaderboard is shown
+     * (that could be hundreds of API requests in a few seconds, causing some nice 429s).
      * <p>
-     * This value is saved in Redis, so it can be used cross-node.
-     * This also fixes leaderboards being incomplete in some nodes.
+     * This value is saved in Redis, so it can be used cross-node. This also fixes leaderboards being incomplete in some nodes,
+     * and takes care of username changes once the entry expires.
      * <p>
-     * This method is necessary to avoid calling Discord every single time we call a leaderboard,
-     * since this might create hundreds of API requests in a few seconds, causing some nice 429s.
+     * Everything is looked up with a single MGET. Whoever isn't cached is requested from Discord all at once, waiting up to
+     * {@link #RESOLVE_TIMEOUT_SECONDS} for them, and the results are written back in a single pipeline.
      *
-     * @param id The id of the user.
-     * @return A instance of CachedLeaderboardMember.
-     * This can either be retrieved from Redis or cached on the spot if the cache didn't exist for it.
+     * @param ctx The context, to get the shard manager from.
+     * @param ids The ids of the users.
+     * @return A map of id to member. Users that couldn't be found (or didn't resolve in time) aren't in it.
      */
-    private static CachedLeaderboardMember getMember(IContext ctx, String id) {
-        try(Jedis jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            var savedTo = "cachedlbuser:" + id;
-            var missed = "lbmiss:" + id;
-
-            var json = jedis.get(savedTo);
-            if (json == null) {
-                // No need to keep trying missed entries for a while. Entry should have a TTL of 12 hours.
-                if (jedis.get(missed) != null) {
-                    return null;
+    private static Map<String, CachedLeaderboardMember> getMembers(IContext ctx, List<String> ids) {
+        Map<String, CachedLeaderboardMember> members = new HashMap<>();
+        if (ids.isEmpty()) {
+            return members;
+        }
+
+        var keys = new String[ids.size() * 2];
+        for (int i = 0; i < ids.size(); i++) {
+            keys[i * 2] = "cachedlbuser:" + ids.get(i);
+            keys[i * 2 + 1] = "lbmiss:" + ids.get(i);
+        }
+
+        // The connection goes back to the pool right away: waiting on Discord with it would starve everything else using Redis.
+        List<String> values;
+        try (Jedis jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            values = jedis.mget(keys);
+        }
+
+        Map<String, CompletableFuture<User>> pending = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            var id = ids.get(i);
+            var json = values.get(i * 2);
+            if (json != null) {
+                try {
+                    members.put(id, JsonDataManager.fromJson(json, CachedLeaderboardMember.class));
+                    continue;
+                } catch (JsonProcessingException e) { // This would be odd, really.
+                    e.printStackTrace();
                 }
+            }
+
+            // No need to keep trying missed entries for a while.
+            if (values.get(i * 2 + 1) != null || pending.containsKey(id)) {
+                continue;
+            }
+
+            // Sadly retrieving a User won't fill the internal cache, as JDA has no way to TTL it, so we keep our own in Redis.
+            pending.put(id, ctx.getShardManager().retrieveUserById(id).submit());
+        }
 
-                // Sadly a .complete() call for a User won't fill the internal cache, as JDA has no way to TTL it, instead, we will add it
-                // to our own cache in Redis, and expire it in 48 hours to avoid it filling up endlessly.
-                // This is to avoid having to do calls to discord all the time a leaderboard is retrieved, and only do the calls whenever
-                // it's absolutely needed, or when we need to re-populate the cache.
-                var user = ctx.getShardManager().retrieveUserById(id).complete();
-
-                // If no user was found, we need to return null. This is later handled on generateLeaderboardEmbed.
-                if (user == null) {
-                    jedis.set(missed, "1");
-                    jedis.expire(missed, TimeUnit.HOURS.toSeconds(12));
-                    return null;
+        if (pending.isEmpty()) {
+            return members;
+        }
+
+        try {
+            CompletableFuture.allOf(pending.values().toArray(CompletableFuture[]::new))
+                    .get(RESOLVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException | ExecutionException ignored) {
+            // Handled per user below: failed ones are misses, and the ones that didn't finish are just skipped this time.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<String> misses = new ArrayList<>();
+        Map<String, String> resolved = new HashMap<>();
+        for (var entry : pending.entrySet()) {
+            var id = entry.getKey();
+            var future = entry.getValue();
+            if (!future.isDone()) {
+                future.cancel(false);
+                continue;
+            }
+
+            // If no user was found, we need to skip it. This is later handled on generateLeaderboardEmbed.
+            // Only users that don't exist are remembered as misses: anything else (rate limits, Discord having
+            // a bad time) is just skipped, like the ones that didn't finish in time.
+            if (future.isCompletedExceptionally()) {
+                if (isUnknownUser(future)) {
+                    misses.add(id);
                 }
 
-                CachedLeaderboardMember cached = new CachedLeaderboardMember(
-                        user.getIdLong(), user.getName(), user.getDiscriminator(), System.currentTimeMillis()
-                );
-                jedis.set(savedTo, JsonDataManager.toJson(cached));
+                continue;
+            }
+
+            var user = future.getNow(null);
+            if (user == null) {
+                continue;
+            }
 
-                // Set the value to expire in 48 hours.
-                jedis.expire(savedTo, TimeUnit.HOURS.toSeconds(48));
-                return cached;
-            } else {
-                return JsonDataManager.fromJson(json, CachedLeaderboardMember.class);
+            var cached = new CachedLeaderboardMember(
+                    user.getIdLong(), user.getName(), user.getDiscriminator(), System.currentTimeMillis()
+            );
+
+            try {
+                resolved.put(id, JsonDataManager.toJson(cached));
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
             }
-        } catch (JsonProcessingException e) { // This would be odd, really.
-            e.printStackTrace();
-            return null;
+
+            members.put(id, cached);
+        }
+
+        if (misses.isEmpty() && resolved.isEmpty()) {
+            return members;
+        }
+
+        try (Jedis jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var pipeline = jedis.pipelined();
+            misses.forEach(id -> pipeline.setex("lbmiss:" + id, TimeUnit.HOURS.toSeconds(12), "1"));
+            resolved.forEach((id, json) -> pipeline.setex("cachedlbuser:" + id, TimeUnit.HOURS.toSeconds(48), json));
+            pipeline.sync();
+        }
+
+        return members;
+    }
+
+    private static boolean isUnknownUser(CompletableFuture<User> future) {
+        try {
+            future.join();
+            return false;
+        } catch (CompletionException e) {
+            return e.getCause() instanceof ErrorResponseException error && error.getErrorResponse() == ErrorResponse.UNKNOWN_USER;
+        } catch (CancellationException e) {
+            return false;
         }
     }
 
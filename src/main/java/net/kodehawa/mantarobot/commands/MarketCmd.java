@@ -693,9 +693,13 @@ public class MarketCmd {
 
             var many = amount * -1;
             var money = Math.round((toSell.getValue() * 0.9)) * Math.abs(many);
-            player.processItem(toSell, many);
+            if (!player.processItemAtomically(toSell, many)) {
+                // Sold or used somewhere else between the check above and now.
+                ctx.sendLocalized("commands.market.sell.more_items_than_player", EmoteReference.ERROR);
+                return;
+            }
 
-            player.addMoney(money);
+            player.addMoneyAtomically(money);
             player.marketUsed(player.getMarketUsed() + 1);
             player.updateAllChanged();
             ctx.sendLocalized("commands.market.sell.success", EmoteReference.CORRECT, Math.abs(many), toSell.getName(), money);
@@ -749,9 +753,15 @@ public class MarketCmd {
             }
 
             var value = price * itemNumber;
-            var removedMoney = player.removeMoney(value);
+            var removedMoney = player.removeMoneyAtomically(value);
             if (removedMoney) {
-                player.processItem(itemToBuy, itemNumber);
+                if (!player.processItemAtomically(itemToBuy, itemNumber)) {
+                    // Got more of it somewhere else between the check above and now, give the money back.
+                    player.addMoneyAtomically(value);
+                    ctx.sendLocalized("commands.market.buy.item_limit_reached", EmoteReference.ERROR);
+                    return;
+                }
+
                 player.addBadgeIfAbsent(Badge.BUYER);
                 player.marketUsed(player.getMarketUsed() + 1);
                 player.updateAllChanged();
@@ -831,7 +841,7 @@ public class MarketCmd {
         embed.setColor(Color.MAGENTA).setAuthor("Mantaro's Market", null, ctx.getAuthor().getEffectiveAvatarUrl())
                 .setDescription(String.format(languageContext.get("general.buy_sell_paged_react"),
                         String.format(languageContext.get("general.reaction_timeout"), 200) + "\n")
-                        + (user.isPremium() ? "" : languageContext.get("general.sellout")) + languageContext.get("commands.market.reference")
+                        + (ctx.db().isUserPremium(user.getId()) ? "" : languageContext.get("general.sellout")) + languageContext.get("commands.market.reference")
         );
 
         DiscordUtils.listButtons(ctx.getUtilsContext(), 200, embed, splitFields);
@@ -46,6 +46,9 @@ import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -96,8 +99,9 @@ public class MarryCmd {
                 }
 
                 // This is just for checking purposes, so we don't need the DBUser itself.
-                var proposingUserData = ctx.getDBUser(proposingUser);
-                var proposedToUserData = ctx.getDBUser(proposedToUser);
+                var users = ctx.db().getUsers(List.of(proposingUser.getId(), proposedToUser.getId()));
+                var proposingUserData = users.get(proposingUser.getId());
+                var proposedToUserData = users.get(proposedToUser.getId());
 
                 // Again just for checking, and no need to change.
                 final var proposingPlayer = ctx.getPlayer(proposingUser);
@@ -108,8 +112,10 @@ public class MarryCmd {
                     return;
                 }
 
-                final var proposingMarriage = proposingUserData.getMarriage();
-                final var proposedToMarriage = proposedToUserData.getMarriage();
+                // Both marriages in one go, as most people checked here won't have one anyway.
+                final var marriages = ctx.db().getMarriages(Arrays.asList(proposingUserData.getMarriageId(), proposedToUserData.getMarriageId()));
+                final var proposingMarriage = marriageOf(marriages, proposingUserData.getMarriageId());
+                final var proposedToMarriage = marriageOf(marriages, proposedToUserData.getMarriageId());
 
                 // We need to conduct a bunch of checks here.
                 // You CANNOT marry bots, yourself, people already married, or engage on another marriage if you're married.
@@ -125,7 +131,7 @@ public class MarryCmd {
 
                 // Already married to the same person you're proposing to.
                 if ((proposingMarriage != null && proposedToMarriage != null) &&
-                        proposedToUserData.getMarriage().getId().equals(proposingMarriage.getId())) {
+                        proposedToMarriage.getId().equals(proposingMarriage.getId())) {
                     ctx.reply("commands.marry.already_married_receipt", EmoteReference.ERROR);
                     return;
                 }
@@ -177,13 +183,17 @@ public class MarryCmd {
                         // to avoid race conditions or changes on those that might have happened on the 120 seconds that this lasted for.
                         // We need to check if the marriage is empty once again before continuing, also if we have enough rings!
                         // Else we end up with really annoying to debug bugs, lol.
-                        var proposingPlayerFinal = ctx.getPlayer(proposingUser);
-                        var proposedToPlayer = ctx.getPlayer(proposedToUser);
-                        var proposingUserDB = ctx.getDBUser(proposingUser);
-                        var proposedToUserDB = ctx.getDBUser(proposedToUser);
-
-                        final var proposingMarriageFinal = proposingUserDB.getMarriage();
-                        final var proposedToMarriageFinal = proposedToUserDB.getMarriage();
+                        var ids = List.of(proposingUser.getId(), proposedToUser.getId());
+                        var players = ctx.db().getPlayers(ids);
+                        var usersFinal = ctx.db().getUsers(ids);
+                        var proposingPlayerFinal = players.get(proposingUser.getId());
+                        var proposedToPlayer = players.get(proposedToUser.getId());
+                        var proposingUserDB = usersFinal.get(proposingUser.getId());
+                        var proposedToUserDB = usersFinal.get(proposedToUser.getId());
+
+                        final var marriagesFinal = ctx.db().getMarriages(Arrays.asList(proposingUserDB.getMarriageId(), proposedToUserDB.getMarriageId()));
+                        final var proposingMarriageFinal = marriageOf(marriagesFinal, proposingUserDB.getMarriageId());
+                        final var proposedToMarriageFinal = marriageOf(marriagesFinal, proposedToUserDB.getMarriageId());
 
                         if (proposingMarriageFinal != null) {
                             hook.editOriginal(languageContext.get("commands.marry.already_married").formatted(EmoteReference.ERROR))
@@ -304,8 +314,9 @@ public class MarryCmd {
                 final var daysMarried = TimeUnit.of(ChronoUnit.MILLIS).toDays(System.currentTimeMillis() - currentMarriage.getMarriageCreationMillis());
 
                 if (daysMarried > 356) { // we assume non leap years for our own sanity
-                    Player authorPlayer = ctx.getPlayer();
-                    Player marriedToPlayer = ctx.getPlayer(marriedTo);
+                    var players = ctx.db().getPlayers(List.of(author.getId(), marriedTo.getId()));
+                    Player authorPlayer = players.get(author.getId());
+                    Player marriedToPlayer = players.get(marriedTo.getId());
                     if (authorPlayer.addBadgeIfAbsent(Badge.LASTING_MARRIAGE)) {
                         authorPlayer.updateAllChanged();
                     }
@@ -757,4 +768,8 @@ public class MarryCmd {
             }, Button.danger("yes", languageContext.get("buttons.yes")), Button.primary("no", languageContext.get("buttons.no")));
         }
     }
+
+    private static Marriage marriageOf(Map<String, Marriage> marriages, String marriageId) {
+        return marriageId == null ? null : marriages.get(marriageId);
+    }
 }
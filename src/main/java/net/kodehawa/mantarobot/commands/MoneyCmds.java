@@ -283,7 +283,7 @@ public class MoneyCmds {
                 return;
             }
 
-            if (ctx.getMantaroData().getBlackListedUsers().contains(otherUser.getId())) {
+            if (ctx.db().getMantaroDataSnapshot().isBlackListedUser(otherUser.getIdLong())) {
                 ctx.sendLocalized("commands.transfer.blacklisted_transfer", EmoteReference.ERROR);
                 return;
             }
@@ -398,7 +398,7 @@ public class MoneyCmds {
         }
 
         // If the author is premium, make daily double.
-        if (authorDBUser.isPremium()) {
+        if (ctx.db().isUserPremium(authorDBUser.getId())) {
             dailyMoney *=2;
         }
 
@@ -406,7 +406,7 @@ public class MoneyCmds {
         if (random.nextBoolean()) {
             returnMessage.add(Campaign.TWITTER.getStringFromCampaign(languageContext, true));
         } else {
-            returnMessage.add(Campaign.PREMIUM_DAILY.getStringFromCampaign(languageContext, authorDBUser.isPremium()));
+            returnMessage.add(Campaign.PREMIUM_DAILY.getStringFromCampaign(languageContext, ctx.db().isUserPremium(authorDBUser.getId())));
         }
 
         // Careful not to overwrite yourself ;P
@@ -420,8 +420,8 @@ public class MoneyCmds {
             authorPlayer.updateAllChanged();
         }
 
-        toAddMoneyTo.addMoney(dailyMoney);
         toAddMoneyTo.updateAllChanged();
+        toAddMoneyTo.addMoneyAtomically(dailyMoney);
 
         // Build Message
         var toSend = new StringBuilder();
@@ -479,7 +479,7 @@ public class MoneyCmds {
             moneyFound = Math.max(10, moneyFound);
         }
 
-        if (dbUser.isPremium() && moneyFound > 0) {
+        if (ctx.db().isUserPremium(dbUser.getId()) && moneyFound > 0) {
             int extra = (int) (moneyFound * 1.5);
             moneyFound += random.nextInt(extra);
         }
@@ -488,7 +488,7 @@ public class MoneyCmds {
 
         // Sellout
         if (player.shouldSeeCampaign()){
-            extraMessage += Campaign.PREMIUM.getStringFromCampaign(languageContext, dbUser.isPremium());
+            extraMessage += Campaign.PREMIUM.getStringFromCampaign(languageContext, ctx.db().isUserPremium(dbUser.getId()));
             player.markCampaignAsSeen();
         }
 
@@ -501,7 +501,7 @@ public class MoneyCmds {
             }
 
             if (moneyFound != 0) {
-                if (player.addMoney(moneyFound)) {
+                if (player.addMoneyAtomically(moneyFound)) {
                     ctx.sendLocalized("commands.loot.with_item.found", EmoteReference.POPPER, stack, moneyFound, extraMessage);
                 } else {
                     ctx.sendLocalized("commands.loot.with_item.found_but_overflow", EmoteReference.POPPER, stack, moneyFound, extraMessage);
@@ -512,7 +512,7 @@ public class MoneyCmds {
 
         } else {
             if (moneyFound != 0) {
-                if (player.addMoney(moneyFound)) {
+                if (player.addMoneyAtomically(moneyFound)) {
                     ctx.sendLocalized("commands.loot.without_item.found", EmoteReference.POPPER, moneyFound, extraMessage);
                 } else {
                     ctx.sendLocalized("commands.loot.without_item.found_but_overflow", EmoteReference.POPPER, moneyFound);
@@ -18,7 +18,6 @@
 package net.kodehawa.mantarobot.commands;
 
 import com.google.common.eventbus.Subscribe;
-import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import net.dv8tion.jda.api.entities.channel.ChannelType;
 import net.dv8tion.jda.api.entities.channel.concrete.VoiceChannel;
 import net.dv8tion.jda.api.exceptions.PermissionException;
@@ -43,7 +42,6 @@ import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.RatelimitUtils;
 
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
@@ -299,7 +297,7 @@ public class MusicUtilCmds {
                 return;
             }
 
-            var queue = trackScheduler.getQueueAsList();
+            var queue = trackScheduler.getQueue();
             HashSet<Integer> selected = new HashSet<>();
             var last = Integer.toString(queue.size());
             var param = ctx.getOptionAsString("range");
@@ -353,30 +351,10 @@ public class MusicUtilCmds {
             }
 
 
-            // Iterators have no concept of index so just make it ourselves.
-            int itv = 0;
-            var initialSize = selected.size();
+            // Removed all at once, so removing one track doesn't shift the positions of the others.
+            var removed = queue.removeAll(selected);
 
-            // Removing an element by index on a List causes the next element to be
-            // shifted by one, just use an iterator instead.
-            for (Iterator<AudioTrack> it = queue.iterator(); it.hasNext();) {
-                // No need to loop if empty.
-                if (selected.isEmpty()) {
-                    break;
-                }
-
-                if (selected.contains(itv)) {
-                    it.remove();
-                    selected.remove(itv);
-                }
-
-                itv++;
-            }
-
-            // Accept the changed queue instead of the old one.
-            trackScheduler.acceptNewQueue(queue);
-
-            ctx.reply("commands.removetrack.success", EmoteReference.CORRECT, initialSize);
+            ctx.reply("commands.removetrack.success", EmoteReference.CORRECT, removed);
             TextChannelGround.of(ctx.getChannel()).dropItemWithChance(0, 10);
         }
     }
@@ -32,6 +32,7 @@ import net.kodehawa.mantarobot.core.command.slash.SlashContext;
 import net.kodehawa.mantarobot.core.modules.Module;
 import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.commands.ratelimit.IncreasingRateLimiter;
@@ -179,15 +180,14 @@ public class TransferCmds {
             }
 
             var amountTransfer = Math.round(toSend * 0.92);
-            if (toTransfer.addMoney(amountTransfer)) {
-                transferPlayer.removeMoney(toSend);
-                transferPlayer.updateAllChanged();
-
-                toTransfer.updateAllChanged();
-                transferRatelimiter.limit(toTransfer.getId());
-                ctx.reply("commands.transfer.success", EmoteReference.CORRECT, toSend, amountTransfer, giveTo.getAsMention());
-            } else {
-                ctx.reply("commands.transfer.receipt_overflow_notice", EmoteReference.ERROR);
+            switch (Player.transferMoney(transferPlayer, toTransfer, toSend, amountTransfer)) {
+                case SUCCESS -> {
+                    transferRatelimiter.limit(toTransfer.getId());
+                    ctx.reply("commands.transfer.success", EmoteReference.CORRECT, toSend, amountTransfer, giveTo.getAsMention());
+                }
+                // Spent somewhere else between the check above and now.
+                case INSUFFICIENT -> ctx.reply("commands.transfer.no_money_notice", EmoteReference.ERROR);
+                case OVERFLOW -> ctx.reply("commands.transfer.receipt_overflow_notice", EmoteReference.ERROR);
             }
         }
     }
@@ -292,14 +292,13 @@ public class TransferCmds {
                     return;
                 }
 
-                player.processItem(item, amount * -1);
-                giveToPlayer.processItem(item, amount);
-
-                player.updateAllChanged();
-                giveToPlayer.updateAllChanged();
-                ctx.reply("commands.itemtransfer.success", EmoteReference.OK,
-                        ctx.getMember().getEffectiveName(), amount, item.getName(), giveTo.getAsMention()
-                );
+                switch (Player.transferItem(player, giveToPlayer, item, amount)) {
+                    case SUCCESS -> ctx.reply("commands.itemtransfer.success", EmoteReference.OK,
+                            ctx.getMember().getEffectiveName(), amount, item.getName(), giveTo.getAsMention()
+                    );
+                    case INSUFFICIENT -> ctx.reply("commands.itemtransfer.error", EmoteReference.ERROR);
+                    case OVERFLOW -> ctx.reply("commands.itemtransfer.overflow_after", EmoteReference.ERROR);
+                }
             } else {
                 ctx.reply("commands.itemtransfer.error", EmoteReference.ERROR);
             }
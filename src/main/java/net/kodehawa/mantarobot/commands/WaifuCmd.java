@@ -18,6 +18,7 @@
 package net.kodehawa.mantarobot.commands;
 
 import com.google.common.eventbus.Subscribe;
+import com.mongodb.client.model.Projections;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.User;
@@ -157,6 +158,8 @@ public class WaifuCmd {
                 final var id = ctx.getOptionAsBoolean("id");
                 List<String> toRemove = new ArrayList<>();
                 List<MessageEmbed.Field> fields = new LinkedList<>();
+                // Only need these two to render the list, and it's one query for every waifu instead of one each.
+                final var waifuPlayers = ctx.db().getPlayers(dbUser.waifuKeys(), Projections.include("waifuout", "waifuCachedValue"));
 
                 for (String waifu : dbUser.waifuKeys()) {
                     //This fixes the issue of cross-node waifus not appearing.
@@ -169,7 +172,7 @@ public class WaifuCmd {
                                         lang.get("commands.waifu.credits_format"), false)
                         );
                     } else {
-                        Player waifuClaimed = ctx.getPlayer(user);
+                        Player waifuClaimed = waifuPlayers.get(waifu);
                         if (waifuClaimed.isWaifuout()) {
                             toRemove.add(waifu);
                             continue;
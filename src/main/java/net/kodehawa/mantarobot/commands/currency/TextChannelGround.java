@@ -37,9 +37,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import static net.kodehawa.mantarobot.db.entities.Inventory.serialize;
-import static net.kodehawa.mantarobot.db.entities.Inventory.unserialize;
-
 public class TextChannelGround {
     private static final SecureRandom random = new SecureRandom();
 
@@ -88,12 +85,12 @@ public class TextChannelGround {
         public Ground(Map<String, Integer> inventory, int money, String channel) {
             this.money = money;
             this.channel = channel;
-            this.groundItems.replaceWith(unserialize(inventory));
+            this.groundItems.load(inventory);
         }
 
         @JsonProperty("groundItems")
         public Map<String, Integer> rawGround() {
-            return serialize(groundItems.asList());
+            return groundItems.serialize();
         }
 
         @JsonIgnore
@@ -49,7 +49,10 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
@@ -64,6 +67,7 @@ public class ItemHelper {
     private static Broken[] salvageableItems;
     private static Item[] usableItems;
     private static Food[] petFoodItems;
+    private static volatile ItemLookup lookup;
     private static final Logger log = LoggerFactory.getLogger(ItemHelper.class);
     private static final SecureRandom random = new SecureRandom();
     private static final IncreasingRateLimiter lootCrateRatelimiter = new IncreasingRateLimiter.Builder()
@@ -129,6 +133,9 @@ public class ItemHelper {
         ItemReference.MINE_PREMIUM_CRATE.registerItemAlias("premium mine lootbox");
         ItemReference.FISH_PREMIUM_CRATE.registerItemAlias("premium fish lootbox");
         ItemReference.CHOP_PREMIUM_CRATE.registerItemAlias("premium chop lootbox");
+
+        // Rebuilt with the aliases above.
+        lookup = ItemLookup.build();
     }
 
     @SuppressWarnings("unused")
@@ -145,36 +152,11 @@ public class ItemHelper {
     }
 
     public static Optional<Item> fromAnyNoId(String any, I18nContext languageContext) {
-        Optional<Item> itemOptional;
-
-        itemOptional = fromEmoji(any);
-        if (itemOptional.isPresent()) {
-            return itemOptional;
-        }
-
-        itemOptional = fromAlias(any);
-        if (itemOptional.isPresent()) {
-            return itemOptional;
-        }
-
-        itemOptional = fromAliasList(any);
-        if (itemOptional.isPresent()) {
-            return itemOptional;
-        }
-
-        itemOptional = fromName(any, languageContext);
-        if (itemOptional.isPresent()) {
-            return itemOptional;
-        }
-
-        itemOptional = fromPartialName(any, languageContext);
-        return itemOptional;
+        return lookup().find(any, languageContext.getContextLanguage());
     }
 
     public static Optional<Item> fromEmoji(String emoji) {
-        return Stream.of(ItemReference.ALL)
-                .filter(item -> isMatchingEmoji(item, emoji))
-                .findFirst();
+        return lookup().fromEmoji(emoji);
     }
 
     public static Item fromId(int id) {
@@ -182,34 +164,37 @@ public class ItemHelper {
     }
 
     public static Optional<Item> fromName(String name, I18nContext languageContext) {
-        return Arrays.stream(ItemReference.ALL)
-                .filter(item -> isMatchingItemName(item, name, languageContext))
-                .findFirst();
+        return lookup().fromName(name, languageContext.getContextLanguage());
     }
 
     public static Optional<Item> fromTranslationSlice(String slice) {
-        return Arrays.stream(ItemReference.ALL)
-                .filter(item -> item.getTranslatedName().equals("items." + slice))
-                .findFirst();
+        var id = Index.BY_SLICE.get(slice);
+        return id == null ? Optional.empty() : Optional.of(ItemReference.ALL[id]);
+    }
+
+    /**
+     * The slice of an item's translated name that identifies it (what's after "items."), which is also the key
+     * it's stored under in inventories.
+     */
+    public static String sliceOf(Item item) {
+        var id = idOf(item);
+        return id == -1 ? item.getTranslatedName().split("\\.")[1] : Index.SLICES[id];
     }
 
     public static Optional<Item> fromAlias(String name) {
-        return Arrays.stream(ItemReference.ALL).filter(item -> isMatchingAlias(item, name)).findFirst();
+        return lookup().fromAlias(name);
     }
 
     public static Optional<Item> fromAliasList(String name) {
-        return Arrays.stream(ItemReference.ALL).filter(item -> hasMatchingAlias(item, name)).findFirst();
+        return lookup().fromAliasList(name);
     }
 
     public static Optional<Item> fromPartialName(String name, I18nContext languageContext) {
-        return Arrays.stream(ItemReference.ALL)
-                .filter(item -> isPartialNameMatch(item, name, languageContext))
-                .findFirst();
+        return lookup().fromPartialName(name, languageContext.getContextLanguage());
     }
 
     public static int idOf(Item item) {
-        return Arrays.asList(ItemReference.ALL)
-                .indexOf(item);
+        return Index.BY_ITEM.getOrDefault(item, -1);
     }
 
     static boolean openLootCrate(IContext ctx, ItemType.LootboxType type, int item, EmoteReference typeEmote, int bound) {
@@ -582,64 +567,9 @@ public class ItemHelper {
         }
     }
 
-    private static boolean isMatchingItemName(Item item, String name, I18nContext languageContext) {
-        final var itemName = item.getName().toLowerCase().trim();
-        final var lookup = name.toLowerCase().trim();
-        final var translatedName = item.getTranslatedName();
-
-        // Either name or translated name
-        return itemName.equals(lookup) || (
-                !translatedName.isEmpty() && !languageContext.getContextLanguage().equals("en_US") &&
-                        languageContext.get(translatedName).toLowerCase().trim().equals(lookup)
-        );
-    }
-
-    private static boolean isMatchingEmoji(Item item, String emoji) {
-        return item.getEmoji().equals(emoji.replace("\ufe0f", ""));
-    }
-
-    private static boolean isMatchingAlias(Item item, String name) {
-        if (item.getAlias() == null) {
-            return false;
-        }
-        return item.getAlias()
-                .toLowerCase()
-                .trim()
-                .equals(name.toLowerCase().trim());
-    }
-
-    private static boolean hasMatchingAlias(Item item, String name) {
-        if (item.getAliases().isEmpty()) {
-            return false;
-        }
-
-        final var lookup = name.toLowerCase().trim();
-        return item.getAliases().stream().anyMatch(lookup::equals);
-    }
-
-    private static boolean isPartialNameMatch(Item item, String name, I18nContext languageContext) {
-        final var itemName = item.getName().toLowerCase().trim();
-        final var lookup = name.toLowerCase().trim();
-        final var translatedName = item.getTranslatedName();
-
-        return itemName.contains(lookup) || (
-                !translatedName.isEmpty() && !languageContext.getContextLanguage().equals("en_US") &&
-                        languageContext.get(translatedName).toLowerCase().trim().contains(lookup)
-        );
-    }
-
+    // Best matches first, see ItemLookup#search.
     public static List<Item> findFrom(Item[] items, String search, I18nContext langContext) {
-        return Stream.of(items)
-                .filter(item -> {
-                    // each item should only traverse as many helper funcs as needed
-                    // so, we return as early as we can
-                    if (isMatchingEmoji(item, search)) return true;
-                    if (isMatchingAlias(item, search)) return true;
-                    if (hasMatchingAlias(item, search)) return true;
-                    if (isMatchingItemName(item, search, langContext)) return true;
-                    return isPartialNameMatch(item, search, langContext);
-                }).toList();
-
+        return lookup().search(items, search, langContext.getContextLanguage(), Integer.MAX_VALUE);
     }
 
     private static void handleAutoComplete(Item[] items, AutocompleteContext event) {
@@ -653,10 +583,11 @@ public class ItemHelper {
                 return;
             }
 
-            final List<Item> matches = findFrom(items, search, event.getI18n());
+            // Discord takes 25 choices at most, so only the best ones are sent.
+            final List<Item> matches = lookup().search(items, search, event.getI18n().getContextLanguage(), OptionData.MAX_CHOICES);
             final List<Command.Choice> choices = new ArrayList<>();
+            var isEnglish = event.getI18n().getContextLanguage().equalsIgnoreCase("en_us");
             for (Item item : matches) {
-                var isEnglish = event.getI18n().getContextLanguage().equalsIgnoreCase("en_us");
                 var fullChoice = event.getI18n().get(item.getTranslatedName()) + " (" + item.getName() + ")";
                 // we fall back to english if the choice would be too long
                 // because we want to avoid confusion
@@ -693,6 +624,16 @@ public class ItemHelper {
         handleAutoComplete(getPetFoodItems(), event);
     }
 
+    private static ItemLookup lookup() {
+        var current = lookup;
+        if (current == null) {
+            // Only before setItemActions runs, which is before commands do.
+            current = lookup = ItemLookup.build();
+        }
+
+        return current;
+    }
+
     public static Item[] getEquipableItems() {
         return Objects.requireNonNullElseGet(equipableItems, () -> equipableItems = Stream.of(ItemReference.ALL)
                 .filter(i -> i instanceof Pickaxe || i instanceof Axe || i instanceof FishRod || i instanceof Wrench)
@@ -736,4 +677,27 @@ public class ItemHelper {
                 .map(Food.class::cast)
                 .toArray(Food[]::new));
     }
+
+    // Lookup tables over ItemReference.ALL, built the first time they're needed (so after ItemReference is loaded).
+    // Items are looked up by slice and id all the time (every inventory read and write), so this saves going
+    // through every item each time.
+    private static final class Index {
+        private static final Map<String, Integer> BY_SLICE = new HashMap<>();
+        private static final Map<Item, Integer> BY_ITEM = new IdentityHashMap<>();
+        private static final String[] SLICES = new String[ItemReference.ALL.length];
+
+        static {
+            for (int i = 0; i < ItemReference.ALL.length; i++) {
+                var item = ItemReference.ALL[i];
+                var name = item.getTranslatedName();
+                // The first item with a name wins, like the lookups this replaced.
+                if (name.startsWith("items.")) {
+                    BY_SLICE.putIfAbsent(name.substring("items.".length()), i);
+                }
+
+                BY_ITEM.putIfAbsent(item, i);
+                SLICES[i] = name.split("\\.")[1];
+            }
+        }
+    }
 }
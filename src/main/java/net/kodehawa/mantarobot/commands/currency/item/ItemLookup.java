@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.commands.currency.item;
+
+import net.kodehawa.mantarobot.data.I18n;
+import net.kodehawa.mantarobot.utils.LanguageKeyNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Finds items by what users type: their emoji, aliases, or name (in English or the language they use).
+ * <p>
+ * Everything is worked out once, when this is built: exact matches are a map lookup, and partial name matches
+ * go through the items that share a trigram with the search, instead of every item. This gets called on every
+ * keystroke by the item autocompletes, so it doesn't look up any translations or allocate anything per item.
+ * <p>
+ * Item aliases are read when this is built, so it has to be rebuilt if they change (see
+ * {@link ItemHelper#setItemActions()}).
+ */
+final class ItemLookup {
+    private static final int GRAM = 3;
+    // How close a match is, best first. Results are ranked by this, and then by the order they were given in.
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int WORD_PREFIX = 2;
+    private static final int CONTAINS = 3;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private final Map<String, int[]> emoji;
+    private final Map<String, int[]> alias;
+    private final Map<String, int[]> aliases;
+    private final Map<String, Names> languages;
+
+    private ItemLookup(Map<String, int[]> emoji, Map<String, int[]> alias, Map<String, int[]> aliases,
+                       Map<String, Names> languages) {
+        this.emoji = emoji;
+        this.alias = alias;
+        this.aliases = aliases;
+        this.languages = languages;
+    }
+
+    static ItemLookup build() {
+        var emoji = new HashMap<String, List<Integer>>();
+        var alias = new HashMap<String, List<Integer>>();
+        var aliases = new HashMap<String, List<Integer>>();
+        for (int id = 0; id < ItemReference.ALL.length; id++) {
+            var item = ItemReference.ALL[id];
+            add(emoji, item.getEmoji(), id);
+            if (item.getAlias() != null) {
+                add(alias, normalize(item.getAlias()), id);
+            }
+
+            // These were never normalized, only what's looked up.
+            for (var a : item.getAliases()) {
+                add(aliases, a, id);
+            }
+        }
+
+        var languages = new HashMap<String, Names>();
+        for (var file : I18n.LANGUAGES) {
+            var language = file.replace(".json", "");
+            languages.put(language, Names.build(language));
+        }
+
+        return new ItemLookup(freeze(emoji), freeze(alias), freeze(aliases), Map.copyOf(languages));
+    }
+
+    Optional<Item> fromEmoji(String emoji) {
+        return first(this.emoji.get(emoji.replace("\ufe0f", "")));
+    }
+
+    Optional<Item> fromAlias(String name) {
+        return first(alias.get(normalize(name)));
+    }
+
+    Optional<Item> fromAliasList(String name) {
+        return first(aliases.get(normalize(name)));
+    }
+
+    Optional<Item> fromName(String name, String language) {
+        return first(names(language).exact.get(normalize(name)));
+    }
+
+    Optional<Item> fromPartialName(String name, String language) {
+        var names = names(language);
+        var lookup = normalize(name);
+        var candidates = names.candidates(lookup);
+        var count = candidates == null ? ItemReference.ALL.length : candidates.length;
+        // Candidates are in id order, so the first match is the same one going through every item would find.
+        for (int i = 0; i < count; i++) {
+            var id = candidates == null ? i : candidates[i];
+            if (names.rank(id, lookup) != NO_MATCH) {
+                return Optional.of(ItemReference.ALL[id]);
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Looks up an item the way text commands do: by emoji, alias, name, and then partial name, in that order.
+     */
+    Optional<Item> find(String any, String language) {
+        var item = fromEmoji(any);
+        if (item.isEmpty()) {
+            item = fromAlias(any);
+        }
+
+        if (item.isEmpty()) {
+            item = fromAliasList(any);
+        }
+
+        if (item.isEmpty()) {
+            item = fromName(any, language);
+        }
+
+        if (item.isEmpty()) {
+            item = fromPartialName(any, language);
+        }
+
+        return item;
+    }
+
+    /**
+     * Searches the given items for the ones matching a search, best matches first: exact matches (by emoji, alias
+     * or name), then names starting with it, then names with a word starting with it, then names containing it.
+     *
+     * @param items The items to search, in the order to list them in when they match equally well.
+     * @param search What to look for.
+     * @param language The language to match names in, on top of English.
+     * @param limit How many items to return, at most.
+     * @return The matching items, best first.
+     */
+    List<Item> search(Item[] items, String search, String language, int limit) {
+        var names = names(language);
+        var lookup = normalize(search);
+        var ranks = new int[ItemReference.ALL.length];
+        Arrays.fill(ranks, NO_MATCH);
+
+        rank(ranks, emoji.get(search.replace("\ufe0f", "")), EXACT);
+        rank(ranks, alias.get(lookup), EXACT);
+        rank(ranks, aliases.get(lookup), EXACT);
+        rank(ranks, names.exact.get(lookup), EXACT);
+
+        var candidates = names.candidates(lookup);
+        var count = candidates == null ? ranks.length : candidates.length;
+        for (int i = 0; i < count; i++) {
+            var id = candidates == null ? i : candidates[i];
+            ranks[id] = Math.min(ranks[id], names.rank(id, lookup));
+        }
+
+        // Rank in the upper half, position in the lower one, so sorting these sorts the matches.
+        var matches = new long[items.length];
+        var found = 0;
+        for (int position = 0; position < items.length; position++) {
+            var id = ItemHelper.idOf(items[position]);
+            if (id != -1 && ranks[id] != NO_MATCH) {
+                matches[found++] = ((long) ranks[id] << 32) | position;
+            }
+        }
+
+        Arrays.sort(matches, 0, found);
+        var results = new ArrayList<Item>(Math.min(found, limit));
+        for (int i = 0; i < found && i < limit; i++) {
+            results.add(items[(int) matches[i]]);
+        }
+
+        return results;
+    }
+
+    // Unknown languages end up in English, like I18n does.
+    private Names names(String language) {
+        var names = languages.get(language);
+        return names == null ? languages.get(I18n.getForLanguage(language).getLanguage()) : names;
+    }
+
+    private static void rank(int[] ranks, int[] ids, int rank) {
+        if (ids == null) {
+            return;
+        }
+
+        for (var id : ids) {
+            ranks[id] = Math.min(ranks[id], rank);
+        }
+    }
+
+    private static Optional<Item> first(int[] ids) {
+        return ids == null ? Optional.empty() : Optional.of(ItemReference.ALL[ids[0]]);
+    }
+
+    private static String normalize(String s) {
+        return s.toLowerCase().trim();
+    }
+
+    // Ids are added in order, so skipping the last one added is enough to keep them unique.
+    private static <K> void add(Map<K, List<Integer>> map, K key, int id) {
+        var ids = map.computeIfAbsent(key, k -> new ArrayList<>());
+        if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+            ids.add(id);
+        }
+    }
+
+    private static <K> Map<K, int[]> freeze(Map<K, List<Integer>> map) {
+        var frozen = new HashMap<K, int[]>(map.size() * 2);
+        map.forEach((key, ids) -> frozen.put(key, ids.stream().mapToInt(Integer::intValue).toArray()));
+        return Map.copyOf(frozen);
+    }
+
+    private static long gram(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+
+    // Item names in a language, normalized, and the trigrams in them.
+    private static final class Names {
+        private final String[] names;
+        // Only for languages other than English, where the item names are already English.
+        private final String[] translated;
+        private final Map<String, int[]> exact;
+        private final Map<Long, int[]> grams;
+
+        private Names(String[] names, String[] translated, Map<String, int[]> exact, Map<Long, int[]> grams) {
+            this.names = names;
+            this.translated = translated;
+            this.exact = exact;
+            this.grams = grams;
+        }
+
+        private static Names build(String language) {
+            var i18n = I18n.getForLanguage(language);
+            var english = language.equals("en_US");
+            var names = new String[ItemReference.ALL.length];
+            var translated = new String[ItemReference.ALL.length];
+            var exact = new HashMap<String, List<Integer>>();
+            var grams = new HashMap<Long, List<Integer>>();
+
+            for (int id = 0; id < ItemReference.ALL.length; id++) {
+                var item = ItemReference.ALL[id];
+                names[id] = normalize(item.getName());
+                if (!english && !item.getTranslatedName().isEmpty()) {
+                    try {
+                        translated[id] = normalize(i18n.get(item.getTranslatedName()));
+                    } catch (LanguageKeyNotFoundException ignored) { }
+                }
+
+                for (var name : new String[] { names[id], translated[id] }) {
+                    if (name == null) {
+                        continue;
+                    }
+
+                    add(exact, name, id);
+                    for (int i = 0; i + GRAM <= name.length(); i++) {
+                        add(grams, gram(name, i), id);
+                    }
+                }
+            }
+
+            return new Names(names, translated, freeze(exact), freeze(grams));
+        }
+
+        /**
+         * @return The ids of the items that could have a name containing the search, in order, or null if it's
+         *         too short to tell (any item could).
+         */
+        private int[] candidates(String lookup) {
+            if (lookup.length() < GRAM) {
+                return null;
+            }
+
+            // Every match has every trigram of the search, so the rarest one has all of them.
+            int[] rarest = null;
+            for (int i = 0; i + GRAM <= lookup.length(); i++) {
+                var ids = grams.get(gram(lookup, i));
+                if (ids == null) {
+                    return new int[0];
+                }
+
+                if (rarest == null || ids.length < rarest.length) {
+                    rarest = ids;
+                }
+            }
+
+            return rarest;
+        }
+
+        private int rank(int id, String lookup) {
+            var rank = rank(names[id], lookup);
+            return translated[id] == null ? rank : Math.min(rank, rank(translated[id], lookup));
+        }
+
+        private static int rank(String name, String lookup) {
+            if (name.equals(lookup)) {
+                return EXACT;
+            }
+
+            var index = name.indexOf(lookup);
+            if (index == -1) {
+                return NO_MATCH;
+            }
+
+            if (index == 0) {
+                return PREFIX;
+            }
+
+            while (index != -1) {
+                if (name.charAt(index - 1) == ' ') {
+                    return WORD_PREFIX;
+                }
+
+                index = name.indexOf(lookup, index + 1);
+            }
+
+            return CONTAINS;
+        }
+    }
+}
@@ -184,6 +184,7 @@ public class PlayerEquipment {
     @BsonIgnore
     public void updateAllChanged(MongoUser database) {
         MantaroData.db().updateFieldValues(database, fieldTracker);
+        fieldTracker.clear();
     }
 
     public enum EquipmentType {
@@ -415,6 +415,7 @@ public class HousePet {
     @BsonIgnore
     public void updateAllChanged(ManagedMongoObject database) {
         MantaroData.db().updateFieldValues(database, fieldTracker);
+        fieldTracker.clear();
     }
 
     @BsonIgnore
@@ -26,7 +26,6 @@ import net.kodehawa.mantarobot.commands.MiscCmds;
 import net.kodehawa.mantarobot.commands.custom.legacy.ConditionalCustoms;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
 import net.kodehawa.mantarobot.commands.custom.v3.CCv3;
-import net.kodehawa.mantarobot.commands.custom.v3.Parser;
 import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.utils.StringUtils;
 import net.kodehawa.mantarobot.utils.Utils;
@@ -130,7 +129,7 @@ public class CustomCommandHandler {
             return;
 
         if (response.startsWith("v3:")) {
-            CCv3.process(prefixUsed, ctx, new Parser(response.substring(3)).parse(), preview);
+            CCv3.process(prefixUsed, ctx, CCv3.compile(response.substring(3)), preview);
             return;
         }
 
@@ -17,6 +17,7 @@
 
 package net.kodehawa.mantarobot.commands.custom.legacy;
 
+import com.google.common.base.Suppliers;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
@@ -30,23 +31,55 @@ import net.kodehawa.mantarobot.utils.Utils;
 
 import java.io.Serial;
 import java.time.OffsetDateTime;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static net.kodehawa.mantarobot.utils.Utils.iterate;
 
+/**
+ * Variables for custom commands, welcome/leave messages, birthday messages and logs.
+ * Values are computed the first time they're read and kept after that, as most scripts only use a couple of them.
+ * Anything that needs a request to Discord (like the guild owner) is only fetched if a variable that needs it is read.
+ */
 public class DynamicModifiers extends LinkedHashMap<String, String> {
     @Serial
     private static final long serialVersionUID = 1;
     private static final Pattern GETTER_MODIFIER = Pattern.compile("\\$\\([A-Za-z0-9.]+?\\)");
 
+    // Variables that haven't been read yet. Moved to the map itself the first time they're read.
+    private final transient Map<String, Supplier<String>> pending = new HashMap<>();
+
     private static String k(String... parts) {
         return String.join(".", parts);
     }
 
+    @Override
+    public String get(Object key) {
+        var value = super.get(key);
+        if (value == null && key instanceof String name) {
+            var supplier = pending.remove(name);
+            if (supplier != null) {
+                value = supplier.get();
+                if (value != null) {
+                    put(name, value);
+                }
+            }
+        }
+
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return super.containsKey(key) || pending.containsKey(key);
+    }
+
     public String resolve(String string) {
         if (!string.contains("$("))
             return string;
@@ -75,39 +108,49 @@ public class DynamicModifiers extends LinkedHashMap<String, String> {
     public DynamicModifiers mapGuild(String prefix, Guild guild) {
         return this.set(prefix, guild.getName())
                 .set(prefix, "name", guild.getName())
-                .mapMember(k(prefix, "owner"), guild.retrieveOwner().useCache(true).complete())
-                .set(prefix, "totalusers", String.valueOf(guild.getMemberCount()))
-                .set(prefix, "icon", guild.getIconUrl() == null ? "https://apiv2.mantaro.site/image/common/help-icon.png" : guild.getIconUrl());
+                .mapMember(k(prefix, "owner"), Suppliers.memoize(() -> guild.retrieveOwner().useCache(true).complete()))
+                .set(prefix, "totalusers", () -> String.valueOf(guild.getMemberCount()))
+                .set(prefix, "icon", () -> guild.getIconUrl() == null ? "https://apiv2.mantaro.site/image/common/help-icon.png" : guild.getIconUrl());
     }
 
     public DynamicModifiers mapUser(String prefix, User member) {
-        return this.set(prefix, member.getAsMention())
-                .set(prefix, "global_username", member.getGlobalName())
-                .set(prefix, "tag", Utils.getTagOrDisplay(member)) // legacy support, discrims are technically gone
-                .set(prefix, "username", member.getName())
-                .set(prefix, "discriminator", member.getDiscriminator()) // legacy support, discrims are technically gone
-                .set(prefix, "name", member.getName())
-                .set(prefix, "mention", member.getAsMention())
-                .set(prefix, "avatar", member.getEffectiveAvatarUrl())
-                .set(prefix, "id", member.getId());
+        return mapUser(prefix, () -> member);
+    }
+
+    private DynamicModifiers mapUser(String prefix, Supplier<User> member) {
+        return this.set(prefix, () -> member.get().getAsMention())
+                .set(prefix, "global_username", () -> member.get().getGlobalName())
+                .set(prefix, "tag", () -> Utils.getTagOrDisplay(member.get())) // legacy support, discrims are technically gone
+                .set(prefix, "username", () -> member.get().getName())
+                .set(prefix, "discriminator", () -> member.get().getDiscriminator()) // legacy support, discrims are technically gone
+                .set(prefix, "name", () -> member.get().getName())
+                .set(prefix, "mention", () -> member.get().getAsMention())
+                .set(prefix, "avatar", () -> member.get().getEffectiveAvatarUrl())
+                .set(prefix, "id", () -> member.get().getId());
     }
 
     public DynamicModifiers mapMember(String prefix, Member member) {
-        return this.mapUser(prefix, member.getUser())
-                .set(prefix, "name", member.getEffectiveName())
-                .set(prefix, "nickname", member.getEffectiveName());
+        return mapMember(prefix, () -> member);
+    }
+
+    private DynamicModifiers mapMember(String prefix, Supplier<Member> member) {
+        return this.mapUser(prefix, () -> member.get().getUser())
+                .set(prefix, "name", () -> member.get().getEffectiveName())
+                .set(prefix, "nickname", () -> member.get().getEffectiveName());
     }
 
     public DynamicModifiers mapEvent(String prefix, Context ctx) {
         return this.mapEvent(prefix, ctx.getEvent())
-                .set(prefix, ctx.getMember().getAsMention() + "@" + ctx.getChannel().getAsMention())
+                .set(prefix, () -> ctx.getMember().getAsMention() + "@" + ctx.getChannel().getAsMention())
                 .mapMember(k(prefix, "author"), ctx.getMember())
                 // This gets processed later on
-                .mapMessage(k(prefix, "message"), new CustomMessage(ctx.getContent(), ctx.getMessage().getMentions().getMembers(), ctx.isMentionPrefix()));
+                .mapMessage(k(prefix, "message"), Suppliers.memoize(() ->
+                        new CustomMessage(ctx.getContent(), ctx.getMessage().getMentions().getMembers(), ctx.isMentionPrefix())
+                ));
     }
 
     public DynamicModifiers mapEvent(String prefix, GenericMessageEvent event) {
-        return this.set(prefix, "timestamp", Utils.formatDate(OffsetDateTime.now()))
+        return this.set(prefix, "timestamp", () -> Utils.formatDate(OffsetDateTime.now()))
                 .mapChannel(k(prefix, "channel"), event.getChannel())
                 .mapGuild(k(prefix, "guild"), event.getGuild())
                 .mapMember(k(prefix, "me"), event.getGuild().getSelfMember());
@@ -115,7 +158,7 @@ public class DynamicModifiers extends LinkedHashMap<String, String> {
 
     @SuppressWarnings("unused")
     public DynamicModifiers mapEvent(String prefix, GenericGuildMemberEvent event) {
-        return this.set(prefix, event.getMember().getAsMention() + "@" + event.getGuild().getName())
+        return this.set(prefix, () -> event.getMember().getAsMention() + "@" + event.getGuild().getName())
                 .mapGuild(k(prefix, "guild"), event.getGuild())
                 .mapMember(k(prefix, "me"), event.getGuild().getSelfMember())
                 .mapMember(k(prefix, "user"), event.getMember());
@@ -128,29 +171,35 @@ public class DynamicModifiers extends LinkedHashMap<String, String> {
     }
 
     public DynamicModifiers mapMessage(String prefix, Message message, boolean isMentionPrefix) {
-        return mapMessage(prefix, new CustomMessage(message.getContentRaw(), message.getMentions().getMembers(), isMentionPrefix));
+        return mapMessage(prefix, Suppliers.memoize(() ->
+                new CustomMessage(message.getContentRaw(), message.getMentions().getMembers(), isMentionPrefix)
+        ));
     }
 
     public DynamicModifiers mapMessage(String prefix, CustomMessage message) {
-        return this.set(prefix, message.getContentRaw())
-                .set(prefix, "raw", message.getContentRaw())
+        return mapMessage(prefix, () -> message);
+    }
+
+    private DynamicModifiers mapMessage(String prefix, Supplier<CustomMessage> message) {
+        return this.set(prefix, () -> message.get().getContentRaw())
+                .set(prefix, "raw", () -> message.get().getContentRaw())
                 // textual and stripped are deprecated!
-                .set(prefix, "textual", message.getContentRaw())
-                .set(prefix, "stripped", message.getContentRaw())
-                .set(prefix, "mentionnames", message.getMentionedUsers().stream().map(Member::getEffectiveName).collect(Collectors.joining(", ")))
-                .set(prefix, "mentionids", message.getMentionedUsers().stream().map(Member::getId).collect(Collectors.joining(", ")))
-                .set(prefix, "firstmentionid", message.getMentionedUsers().isEmpty() ? "" : message.getMentionedUsers().get(0).getId());
+                .set(prefix, "textual", () -> message.get().getContentRaw())
+                .set(prefix, "stripped", () -> message.get().getContentRaw())
+                .set(prefix, "mentionnames", () -> message.get().getMentionedUsers().stream().map(Member::getEffectiveName).collect(Collectors.joining(", ")))
+                .set(prefix, "mentionids", () -> message.get().getMentionedUsers().stream().map(Member::getId).collect(Collectors.joining(", ")))
+                .set(prefix, "firstmentionid", () -> message.get().getMentionedUsers().isEmpty() ? "" : message.get().getMentionedUsers().get(0).getId());
     }
 
     public DynamicModifiers mapChannel(String prefix, MessageChannel channel) {
-        return this.set(prefix, channel.getAsMention())
-                .set(prefix, "name", channel.getName())
-                .set(prefix, "id", channel.getId())
-                .set(prefix, "mention", channel.getAsMention());
+        return this.set(prefix, channel::getAsMention)
+                .set(prefix, "name", channel::getName)
+                .set(prefix, "id", channel::getId)
+                .set(prefix, "mention", channel::getAsMention);
     }
 
     public DynamicModifiers mapFromJoinLeave(String prefix, MessageChannel channel, User user, Guild guild) {
-        return this.set(prefix, user.getName() + "@" + guild.getName())
+        return this.set(prefix, () -> user.getName() + "@" + guild.getName())
                 .mapGuild(k(prefix, "guild"), guild)
                 .mapMember(k(prefix, "me"), guild.getSelfMember())
                 .mapUser(k(prefix, "user"), user)
@@ -158,7 +207,7 @@ public class DynamicModifiers extends LinkedHashMap<String, String> {
     }
 
     public DynamicModifiers mapFromBirthday(String prefix, MessageChannel channel, Member user, Guild guild) {
-        return this.set(prefix, user.getEffectiveName() + "@" + guild.getName())
+        return this.set(prefix, () -> user.getEffectiveName() + "@" + guild.getName())
                 .mapGuild(k(prefix, "guild"), guild)
                 .mapMember(k(prefix, "me"), guild.getSelfMember())
                 .mapMember(k(prefix, "user"), user)
@@ -175,4 +224,18 @@ public class DynamicModifiers extends LinkedHashMap<String, String> {
     public DynamicModifiers set(String prefix, String key, String value) {
         return set(k(prefix, key), value);
     }
+
+    /**
+     * Same as {@link #set(String, String)}, but the value is only computed if something reads it.
+     */
+    public DynamicModifiers set(String key, Supplier<String> value) {
+        if (!containsKey(key))
+            pending.put(key, value);
+
+        return this;
+    }
+
+    public DynamicModifiers set(String prefix, String key, Supplier<String> value) {
+        return set(k(prefix, key), value);
+    }
 }
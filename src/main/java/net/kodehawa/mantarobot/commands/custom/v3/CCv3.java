@@ -17,6 +17,8 @@
 
 package net.kodehawa.mantarobot.commands.custom.v3;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.interactions.components.ActionRow;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
@@ -24,14 +26,15 @@ import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
 import net.kodehawa.mantarobot.commands.MiscCmds;
 import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
-import net.kodehawa.mantarobot.commands.custom.v3.ast.Node;
+import net.kodehawa.mantarobot.commands.custom.v3.compiler.CompiledNode;
+import net.kodehawa.mantarobot.commands.custom.v3.compiler.CompilerVisitor;
 import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterContext;
-import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterVisitor;
 import net.kodehawa.mantarobot.commands.custom.v3.interpreter.Operation;
 import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 import net.kodehawa.mantarobot.utils.data.JsonDataManager;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 
 import java.time.DateTimeException;
 import java.time.OffsetDateTime;
@@ -41,6 +44,8 @@ import java.time.format.DateTimeFormatterBuilder;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
@@ -52,6 +57,16 @@ import static java.time.format.DateTimeFormatter.ISO_LOCAL_TIME;
 public class CCv3 {
     private static final Pattern USER_MENTION_PATTERN = Pattern.compile("<@!?(\\d{17,20})>");
     private static final Map<String, Operation> DEFAULT_OPERATIONS = new HashMap<>();
+    // Operations that only look at their arguments. Calls to these with literal arguments are folded when compiling.
+    private static final Set<String> PURE_OPERATIONS = Set.of(
+            "if", "compare", "test", "and", "or", "not", "not-empty", "not-empty-strict", "lower", "upper", "replace"
+    );
+    // Keyed by the script itself, so editing a command never runs the old version: the new text is just another key.
+    private static final Cache<String, CompiledNode> COMPILED = CacheBuilder.newBuilder()
+            .concurrencyLevel(10)
+            .maximumSize(5000)
+            .expireAfterAccess(30, TimeUnit.MINUTES)
+            .build();
     private static final Pattern FILTER = Pattern.compile("([a-zA-Z0-9]{24}\\.[a-zA-Z0-9]{6}\\.[a-zA-Z0-9_\\-])\\w+");
     private static final Pattern ESCAPE = Pattern.compile("\\\\");
     private static final DateTimeFormatter DEFAULT_TIMESTAMP_FORMATTER = new DateTimeFormatterBuilder()
@@ -342,12 +357,41 @@ public class CCv3 {
         });
     }
 
+    /**
+     * Parses and compiles a script, or gets it from the cache if it ran recently.
+     *
+     * @param source The script, without the v3: prefix.
+     * @return The compiled script.
+     * @throws SyntaxException If the script doesn't parse. Those aren't cached.
+     */
+    public static CompiledNode compile(String source) {
+        var compiled = COMPILED.getIfPresent(source);
+        if (compiled == null) {
+            compiled = new Parser(source).parse().accept(new CompilerVisitor(DEFAULT_OPERATIONS, PURE_OPERATIONS), null);
+            COMPILED.put(source, compiled);
+        }
+
+        return compiled;
+    }
+
+    // Used by the benchmarks, to interpret scripts the way it was done before compiling them.
+    static Map<String, Operation> defaultOperations() {
+        return DEFAULT_OPERATIONS;
+    }
+
     @SuppressWarnings("unused") // not sure why prefix is unused here but oh well
-    public static void process(String prefix, Context ctx, Node ast, boolean preview) {
+    public static void process(String prefix, Context ctx, CompiledNode program, boolean preview) {
         InterpreterContext context = new InterpreterContext(new DynamicModifiers()
                 .mapEvent("event", ctx), DEFAULT_OPERATIONS, ctx);
 
-        String result = ast.accept(new InterpreterVisitor(), context);
+        String result;
+        try {
+            result = program.execute(context);
+        } catch (ExecutionLimitException e) {
+            Metrics.CCV3_ABORTS.labels(e.getReason()).inc();
+            throw e;
+        }
+
         EmbedJSON embed = context.get("embed");
 
         // Sending a message here breaks iam and others, lol
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.custom.v3;
+
+import java.io.Serial;
+
+/**
+ * Thrown when a script goes over its execution budget. The script stops where it is, and nothing it built is sent.
+ */
+public class ExecutionLimitException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1;
+
+    private final String reason;
+
+    public ExecutionLimitException(String reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * @return Which limit was hit (steps/output/time), for metrics.
+     */
+    public String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.custom.v3.compiler;
+
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterContext;
+
+import javax.annotation.Nullable;
+
+/**
+ * A custom command script after compilation. Running it gives the same output {@link
+ * net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterVisitor} would give for the source tree.
+ */
+public interface CompiledNode {
+    String execute(InterpreterContext context);
+
+    /**
+     * @return The value of this node if it doesn't depend on the context, null otherwise.
+     */
+    @Nullable
+    default String constantValue() {
+        return null;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.custom.v3.compiler;
+
+import net.kodehawa.mantarobot.commands.custom.v3.ast.LiteralNode;
+import net.kodehawa.mantarobot.commands.custom.v3.ast.MultiNode;
+import net.kodehawa.mantarobot.commands.custom.v3.ast.NodeVisitor;
+import net.kodehawa.mantarobot.commands.custom.v3.ast.OperationNode;
+import net.kodehawa.mantarobot.commands.custom.v3.ast.VariableNode;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.InterpreterContext;
+import net.kodehawa.mantarobot.commands.custom.v3.interpreter.Operation;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns a parsed script into a {@link CompiledNode}. Operation names that are known when compiling are resolved
+ * to their {@link Operation} once, literals next to each other are merged, and calls to pure operations whose
+ * arguments are all literals are replaced by their result.
+ */
+public class CompilerVisitor implements NodeVisitor<CompiledNode, Void> {
+    private final Map<String, Operation> operations;
+    private final Set<String> pureOperations;
+
+    /**
+     * @param operations The operations scripts can call. Must be the same ones the context has when running.
+     * @param pureOperations Names of the operations that only depend on their arguments, and can be folded.
+     */
+    public CompilerVisitor(Map<String, Operation> operations, Set<String> pureOperations) {
+        this.operations = operations;
+        this.pureOperations = pureOperations;
+    }
+
+    @Override
+    public CompiledNode visitLiteral(LiteralNode node, Void context) {
+        return new Constant(node.value());
+    }
+
+    @Override
+    public CompiledNode visitVariable(VariableNode node, Void context) {
+        var name = node.name().accept(this, null);
+        var constant = name.constantValue();
+        if (constant != null) {
+            return new Variable(constant.strip());
+        }
+
+        return ctx -> lookup(ctx, name.execute(ctx).strip());
+    }
+
+    @Override
+    public CompiledNode visitOperation(OperationNode node, Void context) {
+        var args = new CompiledNode[node.args().size()];
+        var constantArgs = true;
+        for (int i = 0; i < args.length; i++) {
+            args[i] = node.args().get(i).accept(this, null);
+            constantArgs &= args[i].constantValue() != null;
+        }
+
+        var name = node.name().accept(this, null);
+        var constantName = name.constantValue();
+        if (constantName == null) {
+            return ctx -> {
+                var type = name.execute(ctx).strip();
+                var op = ctx.operations().get(type);
+                if (op == null) {
+                    return "{Unknown operation " + type + "}";
+                }
+
+                return call(ctx, type, op, arguments(ctx, args));
+            };
+        }
+
+        var type = constantName.strip();
+        var op = operations.get(type);
+        if (op == null) {
+            return new Constant("{Unknown operation " + type + "}");
+        }
+
+        if (!constantArgs) {
+            return ctx -> call(ctx, type, op, arguments(ctx, args));
+        }
+
+        // Literal arguments don't need the context, so the list is built once.
+        List<Operation.Argument> fixed = List.of(Arrays.stream(args)
+                .map(arg -> (Operation.Argument) arg::constantValue)
+                .toArray(Operation.Argument[]::new));
+        if (pureOperations.contains(type)) {
+            try {
+                return new Constant(op.apply(null, fixed));
+            } catch (RuntimeException ignored) {
+                // Leave it for runtime, so it fails (or not) the same way it always did.
+            }
+        }
+
+        return ctx -> call(ctx, type, op, fixed);
+    }
+
+    @Override
+    public CompiledNode visitMulti(MultiNode node, Void context) {
+        List<CompiledNode> parts = new ArrayList<>(node.children().size());
+        StringBuilder pending = null;
+        for (var child : node.children()) {
+            var compiled = child.accept(this, null);
+            var constant = compiled.constantValue();
+            if (constant != null) {
+                if (pending == null) {
+                    pending = new StringBuilder();
+                }
+
+                pending.append(constant);
+                continue;
+            }
+
+            if (pending != null) {
+                parts.add(new Constant(pending.toString()));
+                pending = null;
+            }
+
+            parts.add(compiled);
+        }
+
+        if (pending != null) {
+            parts.add(new Constant(pending.toString()));
+        }
+
+        return switch (parts.size()) {
+            case 0 -> new Constant("");
+            case 1 -> parts.get(0);
+            default -> new Concat(parts.toArray(CompiledNode[]::new));
+        };
+    }
+
+    private static String lookup(InterpreterContext context, String key) {
+        var value = context.vars().get(key);
+        if (value == null) {
+            return "{Unresolved variable " + key + "}";
+        }
+
+        return value;
+    }
+
+    // Latency includes evaluating the arguments the operation asked for, as those run inside it.
+    private static String call(InterpreterContext context, String type, Operation op, List<Operation.Argument> args) {
+        context.step();
+        var timer = Metrics.CCV3_OPERATION_LATENCY.labels(type).startTimer();
+        String result;
+        try {
+            result = op.apply(context, args);
+        } finally {
+            timer.observeDuration();
+        }
+
+        if (result != null) {
+            context.checkOutput(result.length());
+        }
+
+        return result;
+    }
+
+    // Arguments are still evaluated lazily: operations like if only run the branch they pick.
+    private static List<Operation.Argument> arguments(InterpreterContext context, CompiledNode[] args) {
+        var arguments = new Operation.Argument[args.length];
+        for (int i = 0; i < args.length; i++) {
+            var arg = args[i];
+            arguments[i] = () -> arg.execute(context);
+        }
+
+        return Arrays.asList(arguments);
+    }
+
+    private record Constant(String value) implements CompiledNode {
+        @Override
+        public String execute(InterpreterContext context) {
+            return value;
+        }
+
+        @Override
+        public String constantValue() {
+            return value;
+        }
+    }
+
+    private record Variable(String key) implements CompiledNode {
+        @Override
+        public String execute(InterpreterContext context) {
+            return lookup(context, key);
+        }
+    }
+
+    private record Concat(CompiledNode[] parts) implements CompiledNode {
+        @Override
+        public String execute(InterpreterContext context) {
+            var sb = new StringBuilder();
+            for (var part : parts) {
+                sb.append(part.execute(context));
+                context.checkOutput(sb.length());
+            }
+
+            return sb.toString();
+        }
+    }
+}
@@ -18,21 +18,58 @@
 package net.kodehawa.mantarobot.commands.custom.v3.interpreter;
 
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.kodehawa.mantarobot.commands.custom.v3.ExecutionLimitException;
 import net.kodehawa.mantarobot.core.modules.commands.base.Context;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class InterpreterContext {
+    // Execution budget. Scripts run on the command pool, so one that's too heavy stops instead of holding a thread.
+    public static final int MAX_STEPS = 10_000;
+    public static final int MAX_OUTPUT_LENGTH = 64 * 1024;
+    public static final long TIMEOUT_MILLIS = 2_000;
+
     private final Map<String, Object> custom = new HashMap<>();
     private final Map<String, String> vars;
     private final Map<String, Operation> operations;
     private final Context commandContext;
+    private final long deadline;
+    private int steps;
 
     public InterpreterContext(Map<String, String> vars, Map<String, Operation> operations, Context ctx) {
         this.vars = vars;
         this.operations = operations;
         this.commandContext = ctx;
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Counts one operation call against the budget.
+     *
+     * @throws ExecutionLimitException If the script ran too many operations, or for too long.
+     */
+    public void step() {
+        if (++steps > MAX_STEPS) {
+            throw new ExecutionLimitException("steps", "Script ran more than " + MAX_STEPS + " operations.");
+        }
+
+        if (System.nanoTime() - deadline > 0) {
+            throw new ExecutionLimitException("time", "Script ran for longer than " + TIMEOUT_MILLIS + "ms.");
+        }
+    }
+
+    /**
+     * Checks the length of something the script built (its output so far, or the result of an operation).
+     *
+     * @param length The length of it.
+     * @throws ExecutionLimitException If it's over the limit.
+     */
+    public void checkOutput(int length) {
+        if (length > MAX_OUTPUT_LENGTH) {
+            throw new ExecutionLimitException("output", "Script output is longer than " + MAX_OUTPUT_LENGTH + " characters.");
+        }
     }
 
     public Map<String, String> vars() {
@@ -41,10 +41,6 @@ public class Character extends ImageGame {
     private String characterName;
     private List<String> characterNameL;
 
-    public Character() {
-        super(10);
-    }
-
     @Override
     public void call(GameLobby lobby, List<String> players) {
         InteractiveOperations.create(lobby.getChannel(), Long.parseLong(lobby.getPlayers().get(0)), 60, new InteractiveOperation() {
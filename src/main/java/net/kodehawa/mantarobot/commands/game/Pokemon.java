@@ -36,10 +36,6 @@ public class Pokemon extends ImageGame {
     private static final int maxAttempts = 5;
     private List<String> expectedAnswer;
 
-    public Pokemon() {
-        super(10);
-    }
-
     @Override
     public void call(GameLobby lobby, List<String> players) {
         InteractiveOperations.create(lobby.getChannel(), Long.parseLong(lobby.getPlayers().get(0)), 60, new InteractiveOperation() {
@@ -27,11 +27,8 @@ import java.awt.Color;
 import java.util.function.Consumer;
 
 public abstract class ImageGame extends Game<String> {
-    private final URLCache cache;
-
-    public ImageGame(int cacheSize) {
-        cache = new URLCache(cacheSize);
-    }
+    // Shared by every game, as there's a new one of these for each round.
+    private static final URLCache cache = new URLCache("games");
 
     protected void sendEmbedImage(SlashContext ctx, String url, Consumer<EmbedBuilder> embedConfigurator) {
         var eb = new EmbedBuilder();
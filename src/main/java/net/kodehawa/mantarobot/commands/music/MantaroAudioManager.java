@@ -52,10 +52,12 @@ public class MantaroAudioManager {
 
     private final Map<String, GuildMusicManager> musicManagers;
     private final AudioPlayerManager playerManager;
+    private final TrackCache trackCache;
 
     public MantaroAudioManager() {
         this.musicManagers = new ConcurrentHashMap<>();
         this.playerManager = new DefaultAudioPlayerManager();
+        this.trackCache = new TrackCache(playerManager);
 
         Config config = MantaroData.config().get();
         if (config.musicEnable()) {
@@ -107,7 +109,7 @@ public class MantaroAudioManager {
                 }
 
                 var loader = new AudioLoader(musicManager, ctx, skipSelection, addFirst);
-                playerManager.loadItemOrdered(musicManager, trackUrl, loader);
+                trackCache.load(musicManager, trackUrl, loader);
             }
         }, LOAD_EXECUTOR.get());
     }
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.commands.music;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers what identifiers (links and searches) loaded to for a while, so playing the same thing again, on any
+ * guild, doesn't go to the source again. Identical loads that happen at the same time share the same request.
+ * <p>
+ * Tracks are kept encoded, and decoded again for every load, as a track can only be played once and gets the
+ * user who asked for it attached. Failed loads and searches that found nothing aren't kept.
+ */
+final class TrackCache {
+    private static final Logger log = LoggerFactory.getLogger(TrackCache.class);
+    // In encoded characters, which a track takes a couple hundred of.
+    private static final long MAX_WEIGHT = 32 * 1024 * 1024;
+
+    private final AudioPlayerManager playerManager;
+    private final Cache<String, Result> results = CacheBuilder.newBuilder()
+            .concurrencyLevel(10)
+            .maximumWeight(MAX_WEIGHT)
+            .weigher((String key, Result result) -> result.weight())
+            .expireAfterWrite(30, TimeUnit.MINUTES)
+            .build();
+    private final ConcurrentHashMap<String, CompletableFuture<Result>> loads = new ConcurrentHashMap<>();
+    // Ordering key -> the last load with it, which the next one waits for. Removed once it's done, if nothing came after.
+    private final ConcurrentHashMap<Object, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    TrackCache(AudioPlayerManager playerManager) {
+        this.playerManager = playerManager;
+    }
+
+    /**
+     * Loads an identifier, from the cache if it's there, and hands the result to the handler.
+     * Loads with the same ordering key are handed to their handlers in the order they were asked for, cached or not,
+     * like {@link AudioPlayerManager#loadItemOrdered(Object, String, AudioLoadResultHandler)} does.
+     *
+     * @param orderingKey What to keep the order by, usually the guild's music manager.
+     */
+    void load(Object orderingKey, String identifier, AudioLoadResultHandler handler) {
+        var start = System.nanoTime();
+        var done = new CompletableFuture<Void>();
+        var previous = tails.put(orderingKey, done);
+        done.whenComplete((ignored, error) -> tails.remove(orderingKey, done));
+
+        if (previous == null) {
+            load(identifier, handler, start, done);
+        } else {
+            previous.whenComplete((ignored, error) -> load(identifier, handler, start, done));
+        }
+    }
+
+    // Completes done once the handler got the result, so the next load with the same ordering key can go.
+    private void load(String identifier, AudioLoadResultHandler handler, long start, CompletableFuture<Void> done) {
+        var key = keyOf(identifier);
+        var cached = results.getIfPresent(key);
+        if (cached != null) {
+            try {
+                record("hit", start);
+                deliver(cached, handler);
+            } finally {
+                done.complete(null);
+            }
+
+            return;
+        }
+
+        var created = new CompletableFuture<Result>();
+        var load = loads.putIfAbsent(key, created);
+        if (load == null) {
+            load = created;
+            try {
+                playerManager.loadItem(identifier, new Loader(key, created));
+            } catch (RuntimeException e) {
+                loads.remove(key, created);
+                created.completeExceptionally(e);
+            }
+        }
+
+        var type = load == created ? "miss" : "shared";
+        load.whenComplete((result, error) -> {
+            try {
+                record(type, start);
+                if (error == null) {
+                    deliver(result, handler);
+                } else if (error instanceof FriendlyException e) {
+                    handler.loadFailed(e);
+                } else {
+                    handler.loadFailed(new FriendlyException("Something broke when loading the track.",
+                            FriendlyException.Severity.FAULT, error));
+                }
+            } finally {
+                done.complete(null);
+            }
+        });
+    }
+
+    // Searches are the same no matter the case or spacing. Links aren't.
+    private static String keyOf(String identifier) {
+        var key = identifier.trim();
+        return key.contains("://") ? key : key.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    private static void record(String type, long start) {
+        Metrics.TRACK_CACHE_REQUESTS.labels(type).inc();
+        Metrics.TRACK_LOAD_LATENCY.labels(type).observe((System.nanoTime() - start) / 1e9);
+    }
+
+    private void deliver(Result result, AudioLoadResultHandler handler) {
+        List<AudioTrack> tracks;
+        try {
+            tracks = new ArrayList<>(result.tracks().size());
+            for (var track : result.tracks()) {
+                tracks.add(decode(track));
+            }
+        } catch (IOException e) {
+            // Shouldn't happen, unless a source changed how it encodes tracks.
+            log.warn("Unable to decode cached tracks", e);
+            handler.loadFailed(new FriendlyException("Unable to load the track.", FriendlyException.Severity.FAULT, e));
+            return;
+        }
+
+        if (tracks.isEmpty()) {
+            handler.noMatches();
+        } else if (result.playlistName() == null) {
+            handler.trackLoaded(tracks.get(0));
+        } else {
+            var selected = result.selected() == -1 ? null : tracks.get(result.selected());
+            handler.playlistLoaded(new BasicAudioPlaylist(result.playlistName(), tracks, selected, result.search()));
+        }
+    }
+
+    private String encode(AudioTrack track) throws IOException {
+        var output = new ByteArrayOutputStream();
+        playerManager.encodeTrack(new MessageOutput(output), track);
+        return Base64.getEncoder().encodeToString(output.toByteArray());
+    }
+
+    private AudioTrack decode(String track) throws IOException {
+        var input = new ByteArrayInputStream(Base64.getDecoder().decode(track));
+        var holder = playerManager.decodeTrack(new MessageInput(input));
+        if (holder == null || holder.decodedTrack == null) {
+            throw new IOException("Track source is no longer available");
+        }
+
+        return holder.decodedTrack;
+    }
+
+    /**
+     * What an identifier loaded to: nothing (no tracks), a single track (no playlist name), or a playlist.
+     *
+     * @param selected The index of the selected track of the playlist, or -1 if there's none.
+     */
+    private record Result(List<String> tracks, String playlistName, int selected, boolean search) {
+        private static final Result NO_MATCHES = new Result(List.of(), null, -1, false);
+
+        private int weight() {
+            var weight = playlistName == null ? 0 : playlistName.length();
+            for (var track : tracks) {
+                weight += track.length();
+            }
+
+            return weight;
+        }
+    }
+
+    // Turns what a load found into a Result, caching it, and completes the shared load with it.
+    private final class Loader implements AudioLoadResultHandler {
+        private final String key;
+        private final CompletableFuture<Result> load;
+
+        private Loader(String key, CompletableFuture<Result> load) {
+            this.key = key;
+            this.load = load;
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack track) {
+            complete(() -> new Result(List.of(encode(track)), null, -1, false));
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist playlist) {
+            complete(() -> {
+                var tracks = new ArrayList<String>(playlist.getTracks().size());
+                for (var track : playlist.getTracks()) {
+                    tracks.add(encode(track));
+                }
+
+                var selected = playlist.getSelectedTrack() == null ? -1 : playlist.getTracks().indexOf(playlist.getSelectedTrack());
+                return new Result(List.copyOf(tracks), playlist.getName(), selected, playlist.isSearchResult());
+            });
+        }
+
+        @Override
+        public void noMatches() {
+            // Not cached, it could be the source having a bad moment.
+            loads.remove(key, load);
+            load.complete(Result.NO_MATCHES);
+        }
+
+        @Override
+        public void loadFailed(FriendlyException exception) {
+            loads.remove(key, load);
+            load.completeExceptionally(exception);
+        }
+
+        private void complete(ResultSupplier supplier) {
+            Result result;
+            try {
+                result = supplier.get();
+            } catch (Exception e) {
+                loadFailed(new FriendlyException("Unable to load the track.", FriendlyException.Severity.FAULT, e));
+                return;
+            }
+
+            results.put(key, result);
+            loads.remove(key, load);
+            load.complete(result);
+        }
+    }
+
+    private interface ResultSupplier {
+        Result get() throws IOException;
+    }
+}
@@ -44,7 +44,6 @@ import net.kodehawa.mantarobot.utils.exporters.Metrics;
 
 import java.awt.Color;
 import java.util.EnumSet;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
 
 public class AudioLoader implements AudioLoadResultHandler {
@@ -99,7 +98,7 @@ public class AudioLoader implements AudioLoadResultHandler {
                         break;
                     }
                 } else {
-                    if (count >= MAX_QUEUE_LENGTH && (!dbGuild.isPremium() && !user.isPremium())) {
+                    if (count >= MAX_QUEUE_LENGTH && !isPremium(dbGuild, user)) {
                         ctx.edit("commands.music_general.loader.over_limit", EmoteReference.WARNING, MAX_QUEUE_LENGTH);
                         break; //stop adding songs
                     } else {
@@ -161,16 +160,16 @@ public class AudioLoader implements AudioLoadResultHandler {
         }
 
         var fqSize = dbGuild.getMaxFairQueue();
-        ConcurrentLinkedDeque<AudioTrack> queue = trackScheduler.getQueue();
+        var queue = trackScheduler.getQueue();
 
-        if (queue.size() > queueLimit && !dbUser.isPremium() && !dbGuild.isPremium()) {
+        if (queue.size() > queueLimit && !isPremium(dbGuild, dbUser)) {
             if (!silent) {
                 ctx.edit("commands.music_general.loader.over_queue_limit", EmoteReference.WARNING, title, queueLimit);
             }
             return;
         }
 
-        if (trackInfo.length > MAX_SONG_LENGTH && (!dbUser.isPremium() && !dbGuild.isPremium())) {
+        if (trackInfo.length > MAX_SONG_LENGTH && !isPremium(dbGuild, dbUser)) {
             ctx.edit("commands.music_general.loader.over_32_minutes",
                     EmoteReference.WARNING, title,
                     Utils.formatDuration(i18nContext, MAX_SONG_LENGTH),
@@ -180,7 +179,7 @@ public class AudioLoader implements AudioLoadResultHandler {
         }
 
         // Comparing if the URLs are the same to be 100% sure they're just not spamming the same url over and over again.
-        if (queue.stream().filter(track -> trackInfo.uri.equals(track.getInfo().uri)).count() > fqSize && !silent) {
+        if (queue.countUri(trackInfo.uri) > fqSize && !silent) {
             ctx.edit("commands.music_general.loader.fair_queue_limit_reached", EmoteReference.ERROR, fqSize + 1);
             return;
         }
@@ -225,9 +224,9 @@ public class AudioLoader implements AudioLoadResultHandler {
         }
 
         var fqSize = dbGuild.getMaxFairQueue();
-        ConcurrentLinkedDeque<AudioTrack> queue = trackScheduler.getQueue();
+        var queue = trackScheduler.getQueue();
 
-        if (queue.size() > queueLimit && !dbUser.isPremium() && !dbGuild.isPremium()) {
+        if (queue.size() > queueLimit && !isPremium(dbGuild, dbUser)) {
             if (!silent) {
                 hook.editOriginal(i18nContext.get("commands.music_general.loader.over_queue_limit").formatted(EmoteReference.WARNING, title, queueLimit))
                         .setEmbeds()
@@ -237,7 +236,7 @@ public class AudioLoader implements AudioLoadResultHandler {
             return;
         }
 
-        if (trackInfo.length > MAX_SONG_LENGTH && (!dbUser.isPremium() && !dbGuild.isPremium())) {
+        if (trackInfo.length > MAX_SONG_LENGTH && !isPremium(dbGuild, dbUser)) {
             hook.editOriginal(i18nContext.get("commands.music_general.loader.over_32_minutes").formatted(
                     EmoteReference.WARNING, title,
                     Utils.formatDuration(i18nContext, MAX_SONG_LENGTH),
@@ -247,7 +246,7 @@ public class AudioLoader implements AudioLoadResultHandler {
         }
 
         // Comparing if the URLs are the same to be 100% sure they're just not spamming the same url over and over again.
-        if (queue.stream().filter(track -> trackInfo.uri.equals(track.getInfo().uri)).count() > fqSize && !silent) {
+        if (queue.countUri(trackInfo.uri) > fqSize && !silent) {
             hook.editOriginal(i18nContext.get("commands.music_general.loader.fair_queue_limit_reached").formatted(EmoteReference.ERROR, fqSize + 1))
                     .setEmbeds()
                     .setComponents()
@@ -324,4 +323,9 @@ public class AudioLoader implements AudioLoadResultHandler {
 
         Metrics.TRACK_EVENTS.labels("tracks_search").inc();
     }
+
+    // Cached, as this runs for every track of a playlist.
+    private static boolean isPremium(MongoGuild dbGuild, MongoUser dbUser) {
+        return db.isGuildPremium(dbGuild.getId()) || db.isUserPremium(dbUser.getId());
+    }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.commands.music.requester;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The queue of tracks of a guild. Tracks are kept in a ring buffer, so pages of it can be copied by position, and
+ * it keeps count of what's on it as it changes (how many tracks, how many of them are each URI, and how long they are),
+ * so none of that needs to go through the queue.
+ * <p>
+ * Every method is synchronized, as the queue is used from both commands and player events. Don't hold on to
+ * anything that reads it as it changes: {@link #toList()} and {@link #page(int, int)} return copies.
+ */
+public class MusicQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> uris = new HashMap<>();
+    private AudioTrack[] tracks = new AudioTrack[INITIAL_CAPACITY];
+    private int head;
+    private int size;
+    private long length;
+
+    public synchronized void addFirst(AudioTrack track) {
+        grow();
+        head = index(-1);
+        tracks[head] = track;
+        size++;
+        count(track, 1);
+    }
+
+    public synchronized void addLast(AudioTrack track) {
+        grow();
+        tracks[index(size)] = track;
+        size++;
+        count(track, 1);
+    }
+
+    /**
+     * @return The first track on the queue, which is removed from it, or null if it's empty.
+     */
+    public synchronized AudioTrack poll() {
+        if (size == 0) {
+            return null;
+        }
+
+        var track = tracks[head];
+        tracks[head] = null;
+        head = index(1);
+        size--;
+        count(track, -1);
+        return track;
+    }
+
+    /**
+     * Removes the tracks on the given positions, all in one go (so removing one doesn't move the others).
+     *
+     * @return How many tracks were removed. Positions that aren't on the queue are skipped.
+     */
+    public synchronized int removeAll(Collection<Integer> positions) {
+        var remove = new boolean[size];
+        for (var position : positions) {
+            if (position >= 0 && position < size) {
+                remove[position] = true;
+            }
+        }
+
+        var kept = 0;
+        for (int i = 0; i < size; i++) {
+            var track = tracks[index(i)];
+            if (remove[i]) {
+                count(track, -1);
+            } else {
+                tracks[index(kept++)] = track;
+            }
+        }
+
+        for (int i = kept; i < size; i++) {
+            tracks[index(i)] = null;
+        }
+
+        var removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    public synchronized void shuffle(Random random) {
+        for (int i = size - 1; i > 0; i--) {
+            var j = random.nextInt(i + 1);
+            var a = index(i);
+            var b = index(j);
+            var track = tracks[a];
+            tracks[a] = tracks[b];
+            tracks[b] = track;
+        }
+    }
+
+    public synchronized void replaceWith(List<AudioTrack> queue) {
+        clear();
+        for (var track : queue) {
+            addLast(track);
+        }
+    }
+
+    public synchronized void clear() {
+        tracks = new AudioTrack[INITIAL_CAPACITY];
+        head = 0;
+        size = 0;
+        length = 0;
+        uris.clear();
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return How many tracks on the queue have the given URI.
+     */
+    public synchronized int countUri(String uri) {
+        return uris.getOrDefault(uri, 0);
+    }
+
+    /**
+     * @return The length of every track on the queue, in milliseconds, leaving streams out.
+     */
+    public synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * @return A copy of the tracks from the given position on, at most count of them.
+     */
+    public synchronized List<AudioTrack> page(int from, int count) {
+        var end = (int) Math.min(size, Math.max(from, 0) + (long) count);
+        var page = new ArrayList<AudioTrack>(Math.max(end - from, 0));
+        for (int i = Math.max(from, 0); i < end; i++) {
+            page.add(tracks[index(i)]);
+        }
+
+        return page;
+    }
+
+    /**
+     * @return A copy of the queue.
+     */
+    public synchronized List<AudioTrack> toList() {
+        return page(0, size);
+    }
+
+    private void count(AudioTrack track, int delta) {
+        var info = track.getInfo();
+        if (info.uri != null) {
+            uris.merge(info.uri, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+
+        if (track.getDuration() != Long.MAX_VALUE) {
+            length += delta * info.length;
+        }
+    }
+
+    private void grow() {
+        if (size < tracks.length) {
+            return;
+        }
+
+        var grown = new AudioTrack[tracks.length * 2];
+        for (int i = 0; i < size; i++) {
+            grown[i] = tracks[index(i)];
+        }
+
+        tracks = grown;
+        head = 0;
+    }
+
+    private int index(int position) {
+        return Math.floorMod(head + position, tracks.length);
+    }
+}
@@ -33,11 +33,8 @@ import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -46,7 +43,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
     private static final Random random = new Random();
     private static final ScheduledExecutorService scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
     private final String guildId;
-    private final ConcurrentLinkedDeque<AudioTrack> queue;
+    private final MusicQueue queue;
     private final List<String> voteSkips;
     private final List<String> voteStop;
     private final I18n language;
@@ -62,7 +59,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
 
     public TrackScheduler(Link player, String guildId) {
         this.audioPlayer = player;
-        this.queue = new ConcurrentLinkedDeque<>();
+        this.queue = new MusicQueue();
         this.guildId = guildId;
         this.voteSkips = new ArrayList<>();
         this.voteStop = new ArrayList<>();
@@ -76,7 +73,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
             if (addFirst) {
                 queue.addFirst(track);
             } else {
-                queue.offer(track);
+                queue.addLast(track);
             }
         } else {
             getMusicPlayer().playTrack(track);
@@ -224,11 +221,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
     }
 
     public void shuffle() {
-        List<AudioTrack> tempList = new ArrayList<>(getQueue());
-        Collections.shuffle(tempList);
-
-        queue.clear();
-        queue.addAll(tempList);
+        queue.shuffle(random);
     }
 
     public GuildMessageChannel getRequestedTextChannel() {
@@ -244,12 +237,11 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
     }
 
     public List<AudioTrack> getQueueAsList() {
-        return new LinkedList<>(getQueue());
+        return queue.toList();
     }
 
     public void acceptNewQueue(List<AudioTrack> newQueue) {
-        queue.clear();
-        queue.addAll(newQueue);
+        queue.replaceWith(newQueue);
     }
 
     private void onStop() {
@@ -265,7 +257,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
 
         final var managedDatabase = MantaroData.db();
         final var lavalinkPlayer = getAudioPlayer().getPlayer();
-        var premium = managedDatabase.getGuild(guild).isPremium();
+        var premium = managedDatabase.isGuildPremium(guild.getId());
         try {
             final var ch = getRequestedTextChannel();
             if (ch != null && ch.canTalk()) {
@@ -298,7 +290,7 @@ public class TrackScheduler extends PlayerEventListenerAdapter {
         MantaroBot.getInstance().getAudioManager().resetMusicManagerFor(guildId);
     }
 
-    public ConcurrentLinkedDeque<AudioTrack> getQueue() {
+    public MusicQueue getQueue() {
         return this.queue;
     }
 
@@ -17,19 +17,18 @@
 
 package net.kodehawa.mantarobot.commands.music.utils;
 
-import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import lavalink.client.io.Link;
 import lavalink.client.io.jda.JdaLink;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Member;
-import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.channel.concrete.StageChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.VoiceChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
 import net.dv8tion.jda.api.utils.MarkdownSanitizer;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.music.GuildMusicManager;
+import net.kodehawa.mantarobot.commands.music.requester.MusicQueue;
 import net.kodehawa.mantarobot.core.command.slash.SlashContext;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
@@ -42,7 +41,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.Color;
-import java.util.Deque;
 import java.util.concurrent.CompletionStage;
 
 import static java.util.concurrent.CompletableFuture.completedFuture;
@@ -52,12 +50,14 @@ import static java.util.concurrent.TimeUnit.MINUTES;
 public class AudioCmdUtils {
     private static final Logger log = LoggerFactory.getLogger(AudioCmdUtils.class);
     private static final String icon = "https://apiv2.mantaro.site/image/common/musical-note.png";
+    // Lines are short (titles are cut at 33 characters), so this stays well under the description limit.
+    private static final int TRACKS_PER_PAGE = 20;
 
     public static void embedForQueue(SlashContext ctx, GuildMusicManager musicManager, I18nContext lang) {
         final var guild = ctx.getGuild();
         final var selfMember = ctx.getSelfMember();
         final var trackScheduler = musicManager.getTrackScheduler();
-        final var toSend = getQueueList(trackScheduler.getQueue());
+        final var queue = trackScheduler.getQueue();
         final var musicPlayer = trackScheduler.getMusicPlayer();
         final var playingTrack = musicPlayer.getPlayingTrack();
 
@@ -79,7 +79,7 @@ public class AudioCmdUtils {
             );
         }
 
-        if (toSend.isEmpty()) {
+        if (queue.isEmpty()) {
             ctx.reply(new EmbedBuilder()
                     .setAuthor(
                             String.format(lang.get("commands.music_general.queue.header"), guild.getName()),
@@ -97,9 +97,7 @@ public class AudioCmdUtils {
             return;
         }
 
-        var length = trackScheduler.getQueue().stream()
-                .filter(track -> track.getDuration() != Long.MAX_VALUE)
-                .mapToLong(value -> value.getInfo().length).sum();
+        var length = queue.getLength();
         AudioChannel voiceChannel = null;
         if (selfMember.getVoiceState() != null) {
             voiceChannel = selfMember.getVoiceState().getChannel();
@@ -122,8 +120,7 @@ public class AudioCmdUtils {
             builder.clearFields();
 
             // Build the queue embed.
-            // Description is then added on DiscordUtils.list/listText, as we have to
-            // split it.
+            // Description is then set per page below, with only the tracks on that page.
             return builder.setThumbnail(icon)
                     .addField(EmoteReference.SATELLITE.toHeaderString() + lang.get("commands.music_general.queue.np"), np, false)
                     .addField(EmoteReference.CLOCK.toHeaderString() + lang.get("commands.music_general.queue.total_queue_time"),
@@ -132,7 +129,7 @@ public class AudioCmdUtils {
                     )
                     .addField(EmoteReference.STAR.toHeaderString() + lang.get("commands.music_general.queue.total_size"),
                             String.format("%d %s",
-                                    trackScheduler.getQueue().size(),
+                                    queue.size(),
                                     lang.get("commands.music_general.queue.songs")
                             ),
                             true
@@ -150,9 +147,13 @@ public class AudioCmdUtils {
                             ctx.getAuthor().getEffectiveAvatarUrl());
         };
 
-        // Too long otherwise, so substract 800 from TEXT_MAX_LENGTH
-        var split = DiscordUtils.divideString(MessageEmbed.TEXT_MAX_LENGTH - 800, toSend);
-        DiscordUtils.listButtons(ctx.getUtilsContext(), 150, supplier, split);
+        // Only the page on screen is copied off the queue and formatted. The page count is the one when the queue was
+        // requested: if it shrinks meanwhile, the last pages just show less.
+        var pages = (queue.size() + TRACKS_PER_PAGE - 1) / TRACKS_PER_PAGE;
+        DiscordUtils.listButtons(ctx.getUtilsContext(), 150, pages, page -> supplier.apply(page + 1, pages)
+                .setDescription(getQueueList(queue, page * TRACKS_PER_PAGE, TRACKS_PER_PAGE))
+                .build()
+        );
     }
 
     public static CompletionStage<Boolean> openAudioConnection(SlashContext ctx, JdaLink link,
@@ -330,11 +331,11 @@ public class AudioCmdUtils {
         );
     }
 
-    public static String getQueueList(Deque<AudioTrack> queue) {
+    public static String getQueueList(MusicQueue queue, int from, int count) {
         var sb = new StringBuilder();
-        var num = 1;
+        var num = from + 1;
 
-        for (var audioTrack : queue) {
+        for (var audioTrack : queue.page(from, count)) {
             var aDuration = audioTrack.getDuration();
 
             var duration = String.format("%02d:%02d",
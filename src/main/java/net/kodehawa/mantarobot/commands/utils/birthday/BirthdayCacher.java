@@ -17,72 +17,363 @@
 
 package net.kodehawa.mantarobot.commands.utils.birthday;
 
-import net.kodehawa.mantarobot.commands.BirthdayCmd;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.utils.ImmutableLongMap;
+import org.bson.BsonType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
 
+import javax.annotation.Nullable;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * Caches the birthday date of all users seen on bot startup and adds them to a local ConcurrentHashMap.
- * This will later be used on {@link BirthdayTask}
+ * Index of everyone's birthday, used on {@link BirthdayTask} and the birthday commands.
+ * There's a bucket per day of the year, each one a sorted array of user ids, so finding whose birthday is today
+ * (or this month) only looks at those days, and nothing is boxed. Finding the birthday of a user goes the other way,
+ * through a map of user id to day built at the same time, plus the changes done since.
+ * <p>
+ * It's loaded on startup, with only the users that have a birthday set. After that, setting or removing a birthday
+ * updates it, and tells the other nodes to do the same through Redis. It's still fully reloaded once a day,
+ * to pick up anything that was missed.
  */
 public class BirthdayCacher {
     private static final Logger log = LoggerFactory.getLogger(BirthdayCacher.class);
-    private final Map<Long, BirthdayData> cachedBirthdays = new ConcurrentHashMap<>();
+    private static final String UPDATE_CHANNEL = "birthday-updates";
+    // Days of a leap year, so 29-02 gets its own bucket.
+    private static final int DAYS = 366;
+    private static final long[] NONE = new long[0];
+    // One per day, so looking up a birthday doesn't allocate.
+    private static final BirthdayData[] DATA = new BirthdayData[DAYS];
+
+    static {
+        for (int i = 0; i < DAYS; i++) {
+            DATA[i] = BirthdayData.ofDayOfYear(i);
+        }
+    }
+
+    private final AtomicReferenceArray<long[]> buckets = new AtomicReferenceArray<>(DAYS);
+    // User id -> birthday, as of the last full load. Changes done after it are in changes.
+    private volatile ImmutableLongMap<BirthdayData> byUser = ImmutableLongMap.empty();
+    // User id -> change since the last full load. Only holds what changed in a day, so it stays small.
+    private final Map<Long, Change> changes = new ConcurrentHashMap<>();
+    // Writers copy the bucket they change, so readers never need to lock.
+    private final Object writeLock = new Object();
+    // Guarded by writeLock.
+    private long sequence;
 
     public BirthdayCacher() {
+        for (int i = 0; i < DAYS; i++) {
+            buckets.set(i, NONE);
+        }
+
         log.info("Caching birthdays...");
         cache();
+
+        MantaroData.subscribe("Mantaro Birthday Update Listener", UPDATE_CHANNEL, this::onUpdate);
     }
 
+    /**
+     * Loads every birthday from the database, replacing what's in the index.
+     */
     public void cache() {
         try {
-            var users = MantaroData.db().dbMantaro().getCollection("users", MongoUser.class).find();
-            cachedBirthdays.clear();
+            long start;
+            synchronized (writeLock) {
+                start = sequence;
+            }
+
+            var users = MantaroData.db().dbMantaro().getCollection(MongoUser.DB_TABLE)
+                    .find(Filters.type("birthday", BsonType.STRING))
+                    .projection(Projections.include("birthday"));
 
-            for (var r : users) {
+            var loaded = new long[DAYS][];
+            var sizes = new int[DAYS];
+            var count = 0;
+            for (var document : users) {
                 try {
-                    var id = Long.parseUnsignedLong(r.getId());
-                    // Why?
-                    if (cachedBirthdays.containsKey(id))
+                    var id = Long.parseUnsignedLong(document.getString("_id"));
+                    var day = dayOfYear(document.getString("birthday"));
+                    if (day < 0) {
                         continue;
+                    }
 
-                    var birthday = r.getBirthday();
-                    if (birthday != null && !birthday.isEmpty()) {
-                        log.debug("-> PROCESS: {}", r);
-                        var bd = birthday.split("-");
-                        cachedBirthdays.put(id, new BirthdayData(birthday, Long.parseLong(bd[0]), Long.parseLong(bd[1])));
+                    if (loaded[day] == null) {
+                        loaded[day] = new long[16];
+                    } else if (sizes[day] == loaded[day].length) {
+                        loaded[day] = Arrays.copyOf(loaded[day], sizes[day] * 2);
                     }
+
+                    loaded[day][sizes[day]++] = id;
+                    count++;
                 } catch (Exception e) {
                     log.error("Error inserting user to birthday cache?", e);
                 }
             }
 
-            log.debug("-> [CACHE] Birthdays: {}", cachedBirthdays);
-            // Else we just don't have anything to clear (first startup)
-            if (BirthdayCmd.getGuildBirthdayCache().size() > 0) {
-                log.info("Clearing previous guild birthday cache...");
-                BirthdayCmd.getGuildBirthdayCache().invalidateAll();
+            var ids = new long[count];
+            var data = new BirthdayData[count];
+            var index = 0;
+            for (int i = 0; i < DAYS; i++) {
+                for (int j = 0; j < sizes[i]; j++) {
+                    ids[index] = loaded[i][j];
+                    data[index++] = DATA[i];
+                }
             }
 
-            log.info("Cached all birthdays. Current size is {}", cachedBirthdays.size());
+            var loadedByUser = ImmutableLongMap.of(ids, data, count);
+            synchronized (writeLock) {
+                for (int i = 0; i < DAYS; i++) {
+                    if (loaded[i] == null) {
+                        buckets.set(i, NONE);
+                        continue;
+                    }
+
+                    var bucket = Arrays.copyOf(loaded[i], sizes[i]);
+                    Arrays.sort(bucket);
+                    buckets.set(i, bucket);
+                }
+
+                byUser = loadedByUser;
+                // Changes done before the load started are in it. The ones done while it ran might not be,
+                // so they're kept and applied again on top of it.
+                changes.values().removeIf(change -> change.sequence() <= start);
+                changes.forEach((userId, change) -> {
+                    var loadedDay = loadedByUser.get(userId);
+                    move(userId, loadedDay == null ? -1 : loadedDay.dayOfYear(), change.day());
+                });
+            }
+
+            log.info("Cached all birthdays. Current size is {}", count);
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    public Map<Long, BirthdayData> getCachedBirthdays() {
-        return cachedBirthdays;
+    /**
+     * Updates the birthday of a user, here and on every other node.
+     *
+     * @param userId The user.
+     * @param birthday The new birthday, as saved on {@link MongoUser}, or null if it was removed.
+     */
+    public void update(long userId, @Nullable String birthday) {
+        apply(userId, birthday);
+        try (Jedis jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            jedis.publish(UPDATE_CHANNEL, userId + ":" + (birthday == null ? "" : birthday));
+        } catch (Exception e) {
+            log.error("Couldn't notify other nodes of a birthday change", e);
+        }
+    }
+
+    private void apply(long userId, @Nullable String birthday) {
+        var day = birthday == null ? -1 : dayOfYear(birthday);
+        synchronized (writeLock) {
+            var current = getBirthday(userId);
+            move(userId, current == null ? -1 : current.dayOfYear(), day);
+            changes.put(userId, new Change(day, ++sequence));
+        }
+    }
+
+    // Moves a user from one bucket to another, -1 being none. Must hold writeLock.
+    private void move(long userId, int from, int day) {
+        if (from >= 0 && from != day) {
+            var bucket = buckets.get(from);
+            var index = Arrays.binarySearch(bucket, userId);
+            if (index >= 0) {
+                var updated = new long[bucket.length - 1];
+                System.arraycopy(bucket, 0, updated, 0, index);
+                System.arraycopy(bucket, index + 1, updated, index, bucket.length - index - 1);
+                buckets.set(from, updated);
+            }
+        }
+
+        if (day >= 0) {
+            var bucket = buckets.get(day);
+            var index = Arrays.binarySearch(bucket, userId);
+            if (index < 0) {
+                var insert = -index - 1;
+                var updated = new long[bucket.length + 1];
+                System.arraycopy(bucket, 0, updated, 0, insert);
+                updated[insert] = userId;
+                System.arraycopy(bucket, insert, updated, insert + 1, bucket.length - insert);
+                buckets.set(day, updated);
+            }
+        }
+    }
+
+    /**
+     * Gets the birthday of a user.
+     *
+     * @param userId The user.
+     * @return Their birthday, or null if they didn't set one.
+     */
+    @Nullable
+    public BirthdayData getBirthday(long userId) {
+        // Usually empty, so this skips boxing the id.
+        var change = changes.isEmpty() ? null : changes.get(userId);
+        if (change != null) {
+            return change.day() < 0 ? null : DATA[change.day()];
+        }
+
+        return byUser.get(userId);
     }
 
+    /**
+     * Gets the birthdays of several users.
+     *
+     * @param userIds The users.
+     * @return A map of user id to birthday. Users without one aren't in it.
+     */
+    public Map<Long, BirthdayData> getBirthdays(Collection<Long> userIds) {
+        Map<Long, BirthdayData> birthdays = new HashMap<>();
+        for (var id : userIds) {
+            var birthday = getBirthday(id);
+            if (birthday != null) {
+                birthdays.put(id, birthday);
+            }
+        }
+
+        return birthdays;
+    }
+
+    /**
+     * Builds a lookup of everyone with a birthday on the specified months.
+     *
+     * @param months The months, starting at 1.
+     * @return The lookup.
+     */
+    public Lookup lookupMonths(int... months) {
+        // Read each bucket once, so a concurrent update can't make the two passes below disagree.
+        var snapshot = new long[DAYS][];
+        var total = 0;
+        for (int i = 0; i < DAYS; i++) {
+            var month = LocalDate.ofYearDay(2000, i + 1).getMonthValue();
+            for (var m : months) {
+                if (m == month) {
+                    snapshot[i] = buckets.get(i);
+                    total += snapshot[i].length;
+                    break;
+                }
+            }
+        }
+
+        // Sorted by id, with the day next to it, so each lookup is one binary search.
+        var ids = new long[total];
+        var count = 0;
+        for (var bucket : snapshot) {
+            if (bucket != null) {
+                System.arraycopy(bucket, 0, ids, count, bucket.length);
+                count += bucket.length;
+            }
+        }
+
+        Arrays.sort(ids);
+        var dayOf = new short[total];
+        for (int i = 0; i < DAYS; i++) {
+            if (snapshot[i] == null) {
+                continue;
+            }
+
+            for (var id : snapshot[i]) {
+                dayOf[Arrays.binarySearch(ids, id)] = (short) i;
+            }
+        }
+
+        return new Lookup(ids, dayOf);
+    }
+
+    public int size() {
+        var size = 0;
+        for (int i = 0; i < DAYS; i++) {
+            size += buckets.get(i).length;
+        }
+
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < DAYS; i++) {
+            if (buckets.get(i).length > 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // Updates are userId:birthday, with an empty birthday when it was removed.
+    private void onUpdate(String message) {
+        var separator = message.indexOf(':');
+        var birthday = message.substring(separator + 1);
+        apply(Long.parseUnsignedLong(message.substring(0, separator)), birthday.isEmpty() ? null : birthday);
+    }
+
+    // Birthdays are saved as dd-MM-yyyy. Returns the index of the bucket, or -1 if it isn't a valid date.
+    private static int dayOfYear(@Nullable String birthday) {
+        if (birthday == null || birthday.length() < 5) {
+            return -1;
+        }
+
+        try {
+            var day = Integer.parseInt(birthday.substring(0, 2));
+            var month = Integer.parseInt(birthday.substring(3, 5));
+            return LocalDate.of(2000, month, day).getDayOfYear() - 1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Birthdays of a set of days, frozen at the time it was built.
+     */
+    public static final class Lookup {
+        private final long[] ids;
+        private final short[] days;
+
+        private Lookup(long[] ids, short[] days) {
+            this.ids = ids;
+            this.days = days;
+        }
+
+        @Nullable
+        public BirthdayData get(long userId) {
+            var index = Arrays.binarySearch(ids, userId);
+            return index < 0 ? null : DATA[days[index]];
+        }
+
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    // A birthday that changed after the last full load. A day of -1 means it was removed.
+    private record Change(int day, long sequence) { }
+
+    // birthday is dd-MM, which is all anything reads from it.
     public record BirthdayData(String birthday, long day, long month) {
+        private static BirthdayData ofDayOfYear(int index) {
+            var date = LocalDate.ofYearDay(2000, index + 1);
+            return new BirthdayData("%02d-%02d".formatted(date.getDayOfMonth(), date.getMonthValue()),
+                    date.getDayOfMonth(), date.getMonthValue()
+            );
+        }
+
+        private int dayOfYear() {
+            return LocalDate.of(2000, (int) month, (int) day).getDayOfYear() - 1;
+        }
+
         @Override
         public String toString() {
-                return birthday;
-            }
+            return birthday;
+        }
     }
 }
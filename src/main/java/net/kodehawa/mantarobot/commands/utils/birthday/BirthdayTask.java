@@ -19,6 +19,8 @@ package net.kodehawa.mantarobot.commands.utils.birthday;
 
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.MessageEmbed;
@@ -32,6 +34,7 @@ import net.kodehawa.mantarobot.commands.custom.EmbedJSON;
 import net.kodehawa.mantarobot.commands.custom.legacy.DynamicModifiers;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.MongoGuild;
 import net.kodehawa.mantarobot.utils.Pair;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
@@ -40,6 +43,7 @@ import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.Year;
@@ -49,13 +53,32 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+/**
+ * Gives out (and takes back) birthday roles and sends the birthday messages, once a day per shard.
+ * <p>
+ * It runs as a pipeline, so a shard with thousands of guilds doesn't tie up a thread for hours:
+ * <ol>
+ *     <li>select: one projected query for the shard's guilds with birthdays set up.</li>
+ *     <li>resolve: the members with a birthday this month or last are requested in batches, every guild at once.</li>
+ *     <li>build: the messages and role changes of each guild.</li>
+ *     <li>send: everything goes through a {@link RouteScheduler}, which paces it to the route limits.</li>
+ * </ol>
+ * Each stage reports how long it took and what it handled to {@link Metrics#BIRTHDAY_STAGE_LATENCY} and
+ * {@link Metrics#BIRTHDAY_STAGE_ITEMS}.
+ */
 public class BirthdayTask {
     private static final Pattern MODIFIER_PATTERN = Pattern.compile("\\p{L}*:");
     private static final Logger log = LoggerFactory.getLogger(BirthdayTask.class);
@@ -65,12 +88,25 @@ public class BirthdayTask {
     private static final String modLogMessage = "Birthday assigner." +
             " If you see this happening for every member of your server, or in unintended ways, please do ~>opts birthday disable";
 
-    private static final ScheduledExecutorService backOffPool = Executors.newScheduledThreadPool(2,
-            new ThreadFactoryBuilder().setNameFormat("Birthday Backoff Message Thread").build()
+    // Most ids retrieveMembersByIds takes in a single request.
+    private static final int MEMBER_BATCH = 100;
+    // Member requests go over the gateway, which only takes 120 payloads a minute per shard.
+    private static final long RESOLVE_TIMEOUT_MINUTES = 15;
+    // What Discord reports on these routes. The global cap is shared by every shard on this node, and is kept
+    // well under Discord's 50/s so commands don't get stuck behind birthday messages.
+    private static final RouteScheduler.Limit CHANNEL_MESSAGES = new RouteScheduler.Limit(5, Duration.ofSeconds(5));
+    private static final RouteScheduler.Limit MEMBER_ROLES = new RouteScheduler.Limit(10, Duration.ofSeconds(10));
+    private static final int GLOBAL_REQUESTS_PER_SECOND = 10;
+
+    private static final EnumSet<Message.MentionType> allowedMentions = EnumSet.of(
+            Message.MentionType.USER, Message.MentionType.CHANNEL,
+            Message.MentionType.ROLE, Message.MentionType.EMOJI
     );
 
-    private static final ScheduledExecutorService backOffRolePool = Executors.newScheduledThreadPool(4,
-            new ThreadFactoryBuilder().setNameFormat("Birthday Backoff Role Thread").build()
+    private static final RouteScheduler scheduler = new RouteScheduler(
+            Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("Birthday Sender Thread").build()
+            ), GLOBAL_REQUESTS_PER_SECOND
     );
 
     public static void handle(int shardId) {
@@ -83,10 +119,6 @@ public class BirthdayTask {
                 return;
             }
 
-            final var start = System.currentTimeMillis();
-            var membersAssigned = 0;
-            var membersDivested = 0;
-
             final var jda = bot.getShardManager().getShardById(shardId);
             if (jda == null) { // To be fair, this shouldn't be possible as it only starts it with the shards it knows...
                 return;
@@ -107,310 +139,369 @@ public class BirthdayTask {
                     .minusMonths(1);
             final var lastMonth = lastMonthTz.format(monthFormat);
 
-            final var cached = cache.getCachedBirthdays();
-            final var guilds = jda.getGuildCache();
-
-            // Backoff sending: we need to backoff the birthday requests,
-            // else we're gonna find ourselves quite often hitting ratelimits, which might slow the whole
-            // bot down. Therefore, we're just gonna get all of the messages we need to send and *slowly*
-            // send them over the course of a few minutes, instead of trying to send them all at once.
-            Map<BirthdayGuildInfo, List<MessageCreateBuilder>> toSend = new HashMap<>();
-            List<BirthdayRoleInfo> roleBackoffAdd = new ArrayList<>();
-            List<BirthdayRoleInfo> roleBackoffRemove = new ArrayList<>();
-
-            // For all current -cached- guilds.
-            for (final var guild : guilds) {
-                // This is quite a db spam, lol
-                final var dbGuild = MantaroData.db().getGuild(guild);
-                final var guildLanguageContext = new I18nContext(dbGuild, null);
-
-                // If we have a birthday guild and channel here, continue
-                if (dbGuild.getBirthdayChannel() != null && dbGuild.getBirthdayRole() != null) {
-                    final var birthdayRole = guild.getRoleById(dbGuild.getBirthdayRole());
-                    final var channel = guild.getChannelById(StandardGuildMessageChannel.class, dbGuild.getBirthdayChannel());
-
-                    if (channel != null && birthdayRole != null) {
-                        if (!guild.getSelfMember().canInteract(birthdayRole))
-                            continue; //Go to next guild...
-                        if (!channel.canTalk())
-                            continue; //cannot talk here...
-                        if (dbGuild.getGuildAutoRole() != null && birthdayRole.getId().equals(dbGuild.getGuildAutoRole()))
-                            continue; //Birthday role is autorole role
-                        if (birthdayRole.isPublicRole())
-                            continue; //Birthday role is public role
-                        if (birthdayRole.isManaged())
-                            continue; //This was meant to be a bot role?
-
-                        // Guild map is now created from allowed birthdays. This is a little hacky, but we don't really care.
-                        // The other solution would have been just disabling this completely, which would have been worse.
-                        // @formatter:off
-                        Map<Long, BirthdayCacher.BirthdayData> guildMap = cached.entrySet()
-                                .stream()
-                                .filter(map -> dbGuild.getAllowedBirthdays().contains(String.valueOf(map.getKey())))
-                                .filter(map ->
-                                        // Only check for current month or last month!
-                                        map.getValue().birthday().substring(3, 5).equals(month) ||
-                                                map.getValue().birthday().substring(3, 5).equals(lastMonth)
-                                ).collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-                        // @formatter:on
-
-                        int birthdayNumber = 0;
-                        List<Long> nullMembers = new ArrayList<>();
-                        StringBuilder currentContent = new StringBuilder(guildLanguageContext.get("general.birthday"))
-                                .append("\n\n");
-                        List<String> contentList = new ArrayList<>();
-                        List<MessageEmbed> embedList = new ArrayList<>();
-
-                        for (var data : guildMap.entrySet()) {
-                            var birthday = data.getValue().birthday();
-                            if (dbGuild.getBirthdayBlockedIds().contains(String.valueOf(data.getKey()))) {
-                                continue;
-                            }
+            // Only birthdays from this month or last month matter: today's get the role, and the rest get it removed.
+            final var cached = cache.lookupMonths(Integer.parseInt(month), Integer.parseInt(lastMonth));
+            final var start = System.nanoTime();
 
-                            if (birthday == null) {
-                                log.debug("Birthday is null? Continuing...");
-                                nullMembers.add(data.getKey());
-                                continue;
-                            }
+            var stageStart = System.nanoTime();
+            final var candidates = select(jda, cached);
+            stageDone("select", stageStart);
 
-                            // This needs to be a retrieveMemberById call, sadly. This will get cached, though.
-                            Member member;
-                            try {
-                                // This is expensive!
-                                member = guild.retrieveMemberById(data.getKey()).useCache(true).complete();
-                            } catch (Exception ex) {
-                                nullMembers.add(data.getKey());
-                                continue;
-                            }
+            stageStart = System.nanoTime();
+            resolve(candidates);
+            stageDone("resolve", stageStart);
 
-                            // Make sure we announce on March 1st for birthdays on February 29 if the current
-                            // year is not a leap year.
-                            var compare = birthday.substring(0, 5);
-                            if (compare.equals("29-02") && !Year.isLeap(LocalDate.now().getYear())) {
-                                compare = "28-02";
-                            }
+            stageStart = System.nanoTime();
+            List<Announcement> announcements = new ArrayList<>(candidates.size());
+            var membersAssigned = 0;
+            var membersDivested = 0;
+            for (var candidate : candidates) {
+                var announcement = build(candidate, now);
+                membersAssigned += announcement.roleAdd().size();
+                membersDivested += announcement.roleRemove().size();
+                announcements.add(announcement);
+            }
 
-                            if (compare.equals(now)) {
-                                log.debug("Assigning birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-                                var tempBirthdayMessage =
-                                        String.format(EmoteReference.POPPER + "**%s is a year older now! Wish them a happy birthday.** :tada:",
-                                                member.getEffectiveName());
-
-                                if (dbGuild.getBirthdayMessage() != null) {
-                                    tempBirthdayMessage = dbGuild.getBirthdayMessage()
-                                            .replace("$(user)", member.getEffectiveName())
-                                            .replace("$(usermention)", member.getAsMention())
-                                            .replace("$(tag)", Utils.getTagOrDisplay(member.getUser())) // legacy support, discrims are technically gone
-                                            .replace("$(global_name)", member.getUser().getGlobalName() == null ? "none" : member.getUser().getGlobalName());
-                                }
+            stageDone("build", stageStart);
+            log.info("{} (birthdays): guilds: {}, people assigned: {}, people divested: {}, took {}ms",
+                    jda.getShardInfo(), candidates.size(), membersAssigned, membersDivested,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            );
 
-                                // Variable used in lambda expression should be final or effectively final...
-                                final var birthdayMessage = tempBirthdayMessage;
-                                if (!member.getRoles().contains(birthdayRole)) {
-                                    log.debug("Backing off adding birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-
-                                    // We can pretty much do all of this only based on the IDs
-                                    roleBackoffAdd.add(new BirthdayRoleInfo(guild.getId(), member.getId(), birthdayRole));
-                                    final Pair<String, MessageEmbed> messagePair = buildBirthdayMessage(birthdayMessage, channel, member);
-                                    if (messagePair.left() != null) {
-                                        try {
-                                            // ensure the content itself does not exceed 2000 characters
-                                            List<String> parts = SplitUtil.split(
-                                                    messagePair.left(),
-                                                    Message.MAX_CONTENT_LENGTH,
-                                                    SplitUtil.Strategy.NEWLINE,
-                                                    SplitUtil.Strategy.WHITESPACE
-                                            );
-                                            // only one part so it fits in a single message as ensured by SplitUtil
-                                            // we proceed by checking if it fits into the current content
-                                            if (parts.size() == 1) {
-                                                String part = parts.get(0);
-                                                // it does not fit into the current content, add the current one to the list
-                                                // and create a new one
-                                                if (currentContent.length() + part.length() > Message.MAX_CONTENT_LENGTH) {
-                                                    contentList.add(currentContent.toString());
-                                                    currentContent = new StringBuilder();
-                                                }
-                                                currentContent.append(part);
-                                            } else {
-                                                // every single of these (except the last one) parts is guaranteed to be exactly the message content length
-                                                // meaning we need a new content for all of them and the last element will be used going forward
-                                                String last = parts.remove(parts.size() - 1);
-                                                // we have to add the current content even if it still has space, as it might
-                                                // break continuity in the messages if we merge them out of order
-                                                contentList.add(currentContent.toString());
-                                                currentContent = new StringBuilder(last);
-                                                contentList.addAll(parts);
-                                            }
-                                            // add a new line to separate this b-day message from the next
-                                            // Note: this is going to be trimmed by discord if at the end
-                                            // meaning checking length *should* not be necessary
-                                            currentContent.append("\n");
-                                        } catch (IllegalStateException e) {
-                                            log.debug("Failed to use SplitUtil to ensure birthday message length: {}", messagePair.left());
-                                            continue;
-                                        }
-                                    }
-                                    if (messagePair.right() != null) {
-                                        // add embed to list
-                                        embedList.add(messagePair.right());
-                                    }
-                                    membersAssigned++;
-                                    birthdayNumber++;
-
-                                    Metrics.BIRTHDAY_COUNTER.inc();
-                                }
-                            } else {
-                                //day passed
-                                if (member.getRoles().contains(birthdayRole)) {
-                                    log.debug("Backing off removing birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
-                                    roleBackoffRemove.add(new BirthdayRoleInfo(guild.getId(), member.getId(), birthdayRole));
-                                    membersDivested++;
-                                }
-                            }
-                        }
+            send(jda, announcements);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
 
-                        if (birthdayNumber != 0) {
-                            // add the last build content to the list if it wasn't empty
-                            // \n check is here to avoid any potential "cannot send an empty message"
-                            if (!currentContent.isEmpty() && !currentContent.toString().equals("\n")) {
-                                contentList.add(currentContent.toString());
-                            }
+    // Stage one: the guilds of this shard with a birthday channel and role that we can actually use,
+    // along with the birthdays in them that matter today.
+    private static List<Candidate> select(JDA jda, BirthdayCacher.Lookup cached) {
+        List<String> guildIds = new ArrayList<>((int) jda.getGuildCache().size());
+        jda.getGuildCache().forEach(guild -> guildIds.add(guild.getId()));
+
+        List<Candidate> candidates = new ArrayList<>();
+        var skipped = 0;
+        for (var dbGuild : MantaroData.db().getBirthdayGuilds(guildIds)) {
+            final var guild = jda.getGuildById(dbGuild.getId());
+            if (guild == null) {
+                continue;
+            }
 
-                            // map messages to MessageCreateBuilder
-                            List<MessageCreateBuilder> builders = contentList.stream()
-                                    .map(m -> new MessageCreateBuilder().addContent(m))
-                                    .collect(Collectors.toList()); // list needs to be mutable
-
-                            // partition embed list into chunks of 10
-                            List<List<MessageEmbed>> embedPartition = Lists.partition(embedList, Message.MAX_EMBED_COUNT);
-                            // add embeds to the first n (n = size) MessageCreateBuilder
-                            for (int i = 0; i < embedPartition.size(); i++) {
-                                if (i >= builders.size()) {
-                                    builders.add(new MessageCreateBuilder().addEmbeds(embedPartition.get(i)));
-                                } else {
-                                    builders.get(i).addEmbeds(embedPartition.get(i));
-                                }
-                            }
-                            toSend.put(new BirthdayGuildInfo(guild.getId(), channel.getId()), builders);
-                        }
+            final var birthdayRole = guild.getRoleById(dbGuild.getBirthdayRole());
+            final var channel = guild.getChannelById(StandardGuildMessageChannel.class, dbGuild.getBirthdayChannel());
+            if (channel == null || birthdayRole == null ||
+                    !guild.getSelfMember().canInteract(birthdayRole) || // Can't give out this role
+                    !channel.canTalk() || // Cannot talk here...
+                    birthdayRole.getId().equals(dbGuild.getGuildAutoRole()) || // Birthday role is autorole role
+                    birthdayRole.isPublicRole() || // Birthday role is public role
+                    birthdayRole.isManaged()) { // This was meant to be a bot role?
+                skipped++;
+                continue;
+            }
 
-                        // If any of the member lookups to discord returned null, remove them.
-                        if (!nullMembers.isEmpty()) {
-                            nullMembers.forEach(member -> dbGuild.removeAllowedBirthday(String.valueOf(member)));
-                            dbGuild.updateAllChanged();
-                        }
-                    }
+            // Guild map is now created from allowed birthdays. This is a little hacky, but we don't really care.
+            // The other solution would have been just disabling this completely, which would have been worse.
+            var blocked = new HashSet<>(dbGuild.getBirthdayBlockedIds());
+            Map<Long, BirthdayCacher.BirthdayData> guildMap = new HashMap<>();
+            for (var allowed : dbGuild.getAllowedBirthdays()) {
+                if (blocked.contains(allowed)) {
+                    continue;
                 }
+
+                try {
+                    var id = Long.parseUnsignedLong(allowed);
+                    var birthday = cached.get(id);
+                    if (birthday != null) {
+                        guildMap.put(id, birthday);
+                    }
+                } catch (NumberFormatException ignored) { }
             }
 
-            final var end = System.currentTimeMillis();
-            log.info("{} (birthdays): people assigned: {}, people divested: {}, took {}ms",
-                    jda.getShardInfo(), membersAssigned, membersDivested, (end - start)
-            );
+            if (!guildMap.isEmpty()) {
+                candidates.add(new Candidate(guild, dbGuild, birthdayRole, channel, guildMap));
+            }
+        }
 
-            // A pool inside a pool?
-            // Send the backoff sending comment above, this basically avoids hitting
-            // discord with one billion requests at once.
-            final var backoff = 400;
-            final var roleBackoff = 100;
-            backOffPool.submit(() -> {
-                log.info("{} (birthdays): Backoff messages: {}. Sending them with {}ms backoff.",
-                        jda.getShardInfo(), toSend.size(), backoff
-                );
-
-                final var startMessage = System.currentTimeMillis();
-                for (var entry : toSend.entrySet()) {
-                    try {
-                        final var info = entry.getKey();
-                        final var guildId = info.guildId;
-                        final var channelId = info.channelId;
-                        final var messages = entry.getValue();
+        Metrics.BIRTHDAY_STAGE_ITEMS.labels("select", "selected").inc(candidates.size());
+        Metrics.BIRTHDAY_STAGE_ITEMS.labels("select", "skipped").inc(skipped);
+        return candidates;
+    }
 
-                        final var guild = bot.getShardManager().getGuildById(guildId);
-                        if (guild == null)
-                            continue;
+    // Stage two: request the members of every candidate in batches, all at once, and wait for them.
+    // JDA spreads the requests over the gateway ratelimit, so this takes a while on big runs, but nothing
+    // else is blocked on it.
+    private static void resolve(List<Candidate> candidates) throws InterruptedException {
+        List<Pair<Candidate, List<Long>>> batches = new ArrayList<>();
+        for (var candidate : candidates) {
+            for (var batch : Lists.partition(new ArrayList<>(candidate.birthdays.keySet()), MEMBER_BATCH)) {
+                batches.add(Pair.of(candidate, batch));
+            }
+        }
 
-                        final var channel = guild.getChannelById(StandardGuildMessageChannel.class, channelId);
-                        if (channel == null)
-                            continue;
+        final var latch = new CountDownLatch(batches.size());
+        for (var batch : batches) {
+            final var candidate = batch.left();
+            candidate.pending.incrementAndGet();
+            try {
+                candidate.guild.retrieveMembersByIds(batch.right())
+                        .onSuccess(members -> {
+                            candidate.members.addAll(members);
+                            candidate.pending.decrementAndGet();
+                            latch.countDown();
+                        })
+                        .onError(error -> {
+                            log.debug("Couldn't retrieve birthday members on guild {}", candidate.guild.getId(), error);
+                            candidate.failed = true;
+                            latch.countDown();
+                        });
+            } catch (Exception e) {
+                log.debug("Couldn't request birthday members on guild {}", candidate.guild.getId(), e);
+                candidate.failed = true;
+                latch.countDown();
+            }
+        }
 
-                        messages.forEach(message -> channel.sendMessage(message.build())
-                                .setAllowedMentions(EnumSet.of(
-                                        Message.MentionType.USER, Message.MentionType.CHANNEL,
-                                        Message.MentionType.ROLE, Message.MentionType.EMOJI)
-                                )
-                                .queue()
-                        );
-                        // If 100 guilds (about 1/10th of all the shard guilds! so very unlikely) do
-                        // get a birthday now, the maximum delay will be 40,000ms, which is 40 seconds.
-                        // Not much of an issue for the end user, but avoid sending too many requests
-                        // to discord at once. If half of all the guilds in the shard do, the delay
-                        // will be about 200,000ms, so 2 minutes.
-                        Thread.sleep(backoff);
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                }
+        if (!latch.await(RESOLVE_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+            log.warn("Timed out waiting for birthday members, {} batch(es) left", latch.getCount());
+        }
 
-                final var endMessage = System.currentTimeMillis();
-                toSend.clear();
-                log.info("Sent all birthday backoff messages, backoff was {}ms, took {}ms", backoff, endMessage - startMessage);
-            });
+        var resolved = 0;
+        var missing = 0;
+        var failed = 0;
+        for (var candidate : candidates) {
+            if (!candidate.isComplete()) {
+                failed++;
+                continue;
+            }
 
-            backOffRolePool.submit(() -> {
-                log.info("{} (birthdays): Backoff roles (add): {}. Sending them with {}ms backoff.",
-                        jda.getShardInfo(), roleBackoffAdd.size(), roleBackoff
-                );
+            resolved += candidate.members.size();
+            missing += candidate.birthdays.size() - candidate.members.size();
+        }
 
-                final var startRole = System.currentTimeMillis();
-                for (var roleInfo : roleBackoffAdd) {
-                    try {
-                        var guild = bot.getShardManager().getGuildById(roleInfo.guildId);
-                        if (guild == null)
-                            continue;
+        Metrics.BIRTHDAY_STAGE_ITEMS.labels("resolve", "resolved").inc(resolved);
+        Metrics.BIRTHDAY_STAGE_ITEMS.labels("resolve", "missing").inc(missing);
+        Metrics.BIRTHDAY_STAGE_ITEMS.labels("resolve", "failed").inc(failed);
+    }
 
-                        guild.addRoleToMember(UserSnowflake.fromId(roleInfo.memberId), roleInfo.role)
-                                .reason(modLogMessage)
-                                .queue();
+    // Stage three: what to send and which roles to change on a guild.
+    private static Announcement build(Candidate candidate, String now) {
+        final var guild = candidate.guild;
+        final var dbGuild = candidate.dbGuild;
+        final var birthdayRole = candidate.role;
+        final var channel = candidate.channel;
+        final var guildLanguageContext = new I18nContext(dbGuild, null);
+
+        int birthdayNumber = 0;
+        List<Long> found = new ArrayList<>();
+        List<Long> roleAdd = new ArrayList<>();
+        List<Long> roleRemove = new ArrayList<>();
+        StringBuilder currentContent = new StringBuilder(guildLanguageContext.get("general.birthday"))
+                .append("\n\n");
+        List<String> contentList = new ArrayList<>();
+        List<MessageEmbed> embedList = new ArrayList<>();
+
+        for (var member : candidate.members) {
+            found.add(member.getIdLong());
+            var data = candidate.birthdays.get(member.getIdLong());
+            if (data == null) {
+                continue;
+            }
 
-                        Thread.sleep(roleBackoff);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+            // Make sure we announce on March 1st for birthdays on February 29 if the current
+            // year is not a leap year.
+            var compare = data.birthday().substring(0, 5);
+            if (compare.equals("29-02") && !Year.isLeap(LocalDate.now().getYear())) {
+                compare = "28-02";
+            }
+
+            if (compare.equals(now)) {
+                log.debug("Assigning birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
+                var tempBirthdayMessage =
+                        String.format(EmoteReference.POPPER + "**%s is a year older now! Wish them a happy birthday.** :tada:",
+                                member.getEffectiveName());
+
+                if (dbGuild.getBirthdayMessage() != null) {
+                    tempBirthdayMessage = dbGuild.getBirthdayMessage()
+                            .replace("$(user)", member.getEffectiveName())
+                            .replace("$(usermention)", member.getAsMention())
+                            .replace("$(tag)", Utils.getTagOrDisplay(member.getUser())) // legacy support, discrims are technically gone
+                            .replace("$(global_name)", member.getUser().getGlobalName() == null ? "none" : member.getUser().getGlobalName());
+                }
+
+                // Variable used in lambda expression should be final or effectively final...
+                final var birthdayMessage = tempBirthdayMessage;
+                if (!member.getRoles().contains(birthdayRole)) {
+                    // We can pretty much do all of this only based on the IDs
+                    roleAdd.add(member.getIdLong());
+                    final Pair<String, MessageEmbed> messagePair = buildBirthdayMessage(birthdayMessage, channel, member);
+                    if (messagePair.left() != null) {
+                        try {
+                            // ensure the content itself does not exceed 2000 characters
+                            List<String> parts = SplitUtil.split(
+                                    messagePair.left(),
+                                    Message.MAX_CONTENT_LENGTH,
+                                    SplitUtil.Strategy.NEWLINE,
+                                    SplitUtil.Strategy.WHITESPACE
+                            );
+                            // only one part so it fits in a single message as ensured by SplitUtil
+                            // we proceed by checking if it fits into the current content
+                            if (parts.size() == 1) {
+                                String part = parts.get(0);
+                                // it does not fit into the current content, add the current one to the list
+                                // and create a new one
+                                if (currentContent.length() + part.length() > Message.MAX_CONTENT_LENGTH) {
+                                    contentList.add(currentContent.toString());
+                                    currentContent = new StringBuilder();
+                                }
+                                currentContent.append(part);
+                            } else {
+                                // every single of these (except the last one) parts is guaranteed to be exactly the message content length
+                                // meaning we need a new content for all of them and the last element will be used going forward
+                                String last = parts.remove(parts.size() - 1);
+                                // we have to add the current content even if it still has space, as it might
+                                // break continuity in the messages if we merge them out of order
+                                contentList.add(currentContent.toString());
+                                currentContent = new StringBuilder(last);
+                                contentList.addAll(parts);
+                            }
+                            // add a new line to separate this b-day message from the next
+                            // Note: this is going to be trimmed by discord if at the end
+                            // meaning checking length *should* not be necessary
+                            currentContent.append("\n");
+                        } catch (IllegalStateException e) {
+                            log.debug("Failed to use SplitUtil to ensure birthday message length: {}", messagePair.left());
+                            continue;
+                        }
                     }
+                    if (messagePair.right() != null) {
+                        // add embed to list
+                        embedList.add(messagePair.right());
+                    }
+                    birthdayNumber++;
+
+                    Metrics.BIRTHDAY_COUNTER.inc();
                 }
+            } else {
+                //day passed
+                if (member.getRoles().contains(birthdayRole)) {
+                    log.debug("Removing birthday role on guild {} (M: {})", guild.getId(), member.getEffectiveName());
+                    roleRemove.add(member.getIdLong());
+                }
+            }
+        }
 
-                log.info("{} (birthdays): Backoff roles (remove): {}. Sending them with {}ms backoff.",
-                        jda.getShardInfo(), roleBackoffRemove.size(), roleBackoff
-                );
+        List<MessageCreateBuilder> builders = new ArrayList<>();
+        if (birthdayNumber != 0) {
+            // add the last build content to the list if it wasn't empty
+            // \n check is here to avoid any potential "cannot send an empty message"
+            if (!currentContent.isEmpty() && !currentContent.toString().equals("\n")) {
+                contentList.add(currentContent.toString());
+            }
 
-                for (var roleInfo : roleBackoffRemove) {
-                    try {
-                        var guild = bot.getShardManager().getGuildById(roleInfo.guildId);
-                        if (guild == null)
-                            continue;
+            // map messages to MessageCreateBuilder
+            builders = contentList.stream()
+                    .map(m -> new MessageCreateBuilder().addContent(m))
+                    .collect(Collectors.toList()); // list needs to be mutable
+
+            // partition embed list into chunks of 10
+            List<List<MessageEmbed>> embedPartition = Lists.partition(embedList, Message.MAX_EMBED_COUNT);
+            // add embeds to the first n (n = size) MessageCreateBuilder
+            for (int i = 0; i < embedPartition.size(); i++) {
+                if (i >= builders.size()) {
+                    builders.add(new MessageCreateBuilder().addEmbeds(embedPartition.get(i)));
+                } else {
+                    builders.get(i).addEmbeds(embedPartition.get(i));
+                }
+            }
+        }
+
+        // Members that aren't in the guild anymore don't need to be allowed there. Only trust this if every
+        // batch of the guild came back, else we'd be removing people just because a request failed.
+        if (candidate.isComplete() && found.size() < candidate.birthdays.size()) {
+            var missing = new HashSet<>(candidate.birthdays.keySet());
+            found.forEach(missing::remove);
+            missing.forEach(member -> dbGuild.removeAllowedBirthday(String.valueOf(member)));
+            dbGuild.updateAllChanged();
+        }
 
-                        guild.removeRoleFromMember(UserSnowflake.fromId(roleInfo.memberId), roleInfo.role)
-                                .reason(modLogMessage)
-                                .queue();
+        Metrics.BIRTHDAY_STAGE_ITEMS.labels("build", "message").inc(builders.size());
+        Metrics.BIRTHDAY_STAGE_ITEMS.labels("build", "role_add").inc(roleAdd.size());
+        Metrics.BIRTHDAY_STAGE_ITEMS.labels("build", "role_remove").inc(roleRemove.size());
+        return new Announcement(guild.getId(), channel.getId(), birthdayRole.getId(), builders, roleAdd, roleRemove);
+    }
 
-                        Thread.sleep(roleBackoff);
-                    } catch (Exception e) {
-                        e.printStackTrace();
+    // Stage four: hand everything to the scheduler. The guild, channel and role are looked up again when
+    // each request goes out, as that can be a few minutes later.
+    private static void send(JDA jda, List<Announcement> announcements) {
+        final var shardManager = MantaroBot.getInstance().getShardManager();
+        final var start = System.nanoTime();
+        List<CompletableFuture<?>> requests = new ArrayList<>();
+
+        for (var announcement : announcements) {
+            var messageRoute = "messages:" + announcement.channelId();
+            for (var message : announcement.messages()) {
+                requests.add(track(scheduler.submit(messageRoute, CHANNEL_MESSAGES, () -> {
+                    var guild = shardManager.getGuildById(announcement.guildId());
+                    var channel = guild == null ? null :
+                            guild.getChannelById(StandardGuildMessageChannel.class, announcement.channelId());
+                    if (channel == null) {
+                        return null;
                     }
-                }
 
-                final var endRole = System.currentTimeMillis();
-                roleBackoffAdd.clear();
-                roleBackoffRemove.clear();
+                    return channel.sendMessage(message.build()).setAllowedMentions(allowedMentions);
+                })));
+            }
 
-                log.info("{} (birthdays): All roles done (add and removal), backoff was {}ms. Took {}ms",
-                        jda.getShardInfo(), roleBackoff, endRole - startRole
-                );
-            });
-        } catch (Exception e) {
-            e.printStackTrace();
+            // Adding and removing member roles share a bucket per guild.
+            var roleRoute = "roles:" + announcement.guildId();
+            for (var member : announcement.roleAdd()) {
+                requests.add(track(scheduler.submit(roleRoute, MEMBER_ROLES, () -> {
+                    var guild = shardManager.getGuildById(announcement.guildId());
+                    var role = guild == null ? null : guild.getRoleById(announcement.roleId());
+                    if (role == null) {
+                        return null;
+                    }
+
+                    return guild.addRoleToMember(UserSnowflake.fromId(member), role).reason(modLogMessage);
+                })));
+            }
+
+            for (var member : announcement.roleRemove()) {
+                requests.add(track(scheduler.submit(roleRoute, MEMBER_ROLES, () -> {
+                    var guild = shardManager.getGuildById(announcement.guildId());
+                    var role = guild == null ? null : guild.getRoleById(announcement.roleId());
+                    if (role == null) {
+                        return null;
+                    }
+
+                    return guild.removeRoleFromMember(UserSnowflake.fromId(member), role).reason(modLogMessage);
+                })));
+            }
         }
+
+        log.info("{} (birthdays): scheduled {} request(s)", jda.getShardInfo(), requests.size());
+        CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> {
+            stageDone("send", start);
+            log.info("{} (birthdays): all messages and roles sent, took {}ms",
+                    jda.getShardInfo(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            );
+        });
+    }
+
+    private static CompletableFuture<?> track(CompletableFuture<Boolean> request) {
+        return request.whenComplete((sent, error) -> {
+            if (error != null) {
+                log.debug("Birthday request failed", error);
+            }
+
+            var outcome = error != null ? "failed" : sent ? "sent" : "skipped";
+            Metrics.BIRTHDAY_STAGE_ITEMS.labels("send", outcome).inc();
+        });
+    }
+
+    private static void stageDone(String stage, long start) {
+        Metrics.BIRTHDAY_STAGE_LATENCY.labels(stage).observe((System.nanoTime() - start) / 1e9);
     }
 
     public static Pair<String, MessageEmbed> buildBirthdayMessage(String message, StandardGuildMessageChannel channel, Member user) {
@@ -475,9 +566,34 @@ public class BirthdayTask {
         return Pair.of(message + "\n", null);
     }
 
-    private record BirthdayGuildInfo(String guildId, String channelId) {
+
+    private record Announcement(String guildId, String channelId, String roleId, List<MessageCreateBuilder> messages,
+                                List<Long> roleAdd, List<Long> roleRemove) {
     }
 
-    private record BirthdayRoleInfo(String guildId, String memberId, Role role) {
+    // A guild with birthdays to check on this run, and its members as they come in.
+    private static final class Candidate {
+        private final Guild guild;
+        private final MongoGuild dbGuild;
+        private final Role role;
+        private final StandardGuildMessageChannel channel;
+        private final Map<Long, BirthdayCacher.BirthdayData> birthdays;
+        private final Queue<Member> members = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean failed;
+
+        private Candidate(Guild guild, MongoGuild dbGuild, Role role, StandardGuildMessageChannel channel,
+                          Map<Long, BirthdayCacher.BirthdayData> birthdays) {
+            this.guild = guild;
+            this.dbGuild = dbGuild;
+            this.role = role;
+            this.channel = channel;
+            this.birthdays = birthdays;
+        }
+
+        // Whether every member batch came back.
+        private boolean isComplete() {
+            return !failed && pending.get() == 0;
+        }
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.commands.utils.birthday;
+
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Paces bulk REST requests to what Discord allows, instead of handing them all to JDA at once (and stalling every
+ * other request on the same routes) or sleeping between them.
+ * <p>
+ * Every request goes to a route (say, the messages of a channel) with its own {@link Limit}, and also counts against
+ * a global per-second cap shared by all routes, which leaves room under Discord's global limit for everything else.
+ * When a request is submitted it's given the earliest time both allow, and it's queued on the executor for then,
+ * so nothing blocks while waiting.
+ */
+final class RouteScheduler {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    // Routes with nothing in flight are dropped once there's this many, so a daily run doesn't keep them all.
+    private static final int MAX_ROUTES = 1024;
+
+    private final ScheduledExecutorService executor;
+    private final int globalPerSecond;
+    private final Map<String, Bucket> routes = new HashMap<>();
+    // Second (nanoTime / 1s) -> requests given a slot on it. Seconds in the past are dropped as we go.
+    private final TreeMap<Long, Integer> globalSlots = new TreeMap<>();
+
+    RouteScheduler(ScheduledExecutorService executor, int globalPerSecond) {
+        this.executor = executor;
+        this.globalPerSecond = globalPerSecond;
+    }
+
+    /**
+     * Schedules a request.
+     *
+     * @param route The route the request goes to. Requests on the same route share a {@link Limit}.
+     * @param limit The limit of the route. Only the first one given for a route is used.
+     * @param action Makes the request when its time comes, or returns null if there's nothing to do anymore
+     *               (the guild or channel is gone, for example).
+     * @return A future completed with whether the request was sent (false if it was skipped), or with its error.
+     */
+    CompletableFuture<Boolean> submit(String route, Limit limit, Supplier<RestAction<?>> action) {
+        var now = System.nanoTime();
+        var delay = reserve(route, limit, now) - now;
+
+        var result = new CompletableFuture<Boolean>();
+        executor.schedule(() -> {
+            try {
+                var request = action.get();
+                if (request == null) {
+                    result.complete(false);
+                    return;
+                }
+
+                request.submit().whenComplete((value, error) -> {
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(true);
+                    }
+                });
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+
+        return result;
+    }
+
+    private synchronized long reserve(String route, Limit limit, long now) {
+        if (routes.size() > MAX_ROUTES) {
+            routes.values().removeIf(bucket -> bucket.windowEnd <= now);
+        }
+
+        var bucket = routes.computeIfAbsent(route, r -> new Bucket(limit));
+        var slot = claimGlobal(bucket.next(now), now);
+        bucket.commit(slot);
+        return slot;
+    }
+
+    // Earliest time at or after the given one that's on a second with room left, which gets claimed.
+    private long claimGlobal(long time, long now) {
+        globalSlots.headMap(Math.floorDiv(now, SECOND)).clear();
+
+        var second = Math.floorDiv(time, SECOND);
+        while (globalSlots.getOrDefault(second, 0) >= globalPerSecond) {
+            second++;
+        }
+
+        globalSlots.merge(second, 1, Integer::sum);
+        return Math.max(time, second * SECOND);
+    }
+
+    /**
+     * How many requests a route takes per window. The window starts with the first request in it, like Discord's do.
+     */
+    record Limit(int requests, Duration window) { }
+
+    // Fixed window over the times requests are actually sent at, which only ever go forward for a route.
+    private static final class Bucket {
+        private final int requests;
+        private final long window;
+        private long last = Long.MIN_VALUE;
+        private long windowEnd = Long.MIN_VALUE;
+        private int used;
+
+        private Bucket(Limit limit) {
+            this.requests = limit.requests();
+            this.window = limit.window().toNanos();
+        }
+
+        // Earliest time the route would take a request at, without claiming it.
+        private long next(long now) {
+            var time = Math.max(now, last);
+            if (time < windowEnd && used >= requests) {
+                time = windowEnd;
+            }
+
+            return time;
+        }
+
+        private void commit(long time) {
+            if (time >= windowEnd) {
+                windowEnd = time + window;
+                used = 0;
+            }
+
+            used++;
+            last = time;
+        }
+    }
+}
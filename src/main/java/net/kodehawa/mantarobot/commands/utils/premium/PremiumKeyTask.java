@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.utils.premium;
+
+import net.dv8tion.jda.api.entities.User;
+import net.kodehawa.mantarobot.MantaroBot;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.db.entities.PremiumKey;
+import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renews the premium keys that are about to expire, and warns the users holding the ones that can't be renewed.
+ * This used to be checked on every command for the user and guild that ran it, with two key lookups each time,
+ * but the answer only changes once a day, so now a single query picks up every key in the window instead.
+ */
+public class PremiumKeyTask {
+    private static final Logger log = LoggerFactory.getLogger(PremiumKeyTask.class);
+    // Same window as before: 10 days before expiration, but not on the last day.
+    private static final long WINDOW_START = TimeUnit.DAYS.toMillis(2);
+    private static final long WINDOW_END = TimeUnit.DAYS.toMillis(11);
+
+    public static void handle() {
+        try {
+            final var db = MantaroData.db();
+            final var now = System.currentTimeMillis();
+            final var keys = db.getPremiumKeysExpiringBetween(now + WINDOW_START, now + WINDOW_END);
+            var renewed = 0;
+            var warned = 0;
+
+            for (var key : keys) {
+                try { // Don't let one key stop the rest.
+                    // Handling is done inside the PremiumKey#renew method.
+                    var wasRenewed = key.renew();
+                    if (wasRenewed) {
+                        renewed++;
+                    }
+
+                    // Only the holders of user keys get warned.
+                    if (key.getParsedType() == PremiumKey.Type.USER) {
+                        var holder = findHolder(key);
+                        if (holder != null && !holder.hasReceivedExpirationWarning()) {
+                            if (!wasRenewed) {
+                                warn(holder.getId(), key);
+                                warned++;
+                            }
+
+                            holder.receivedExpirationWarning(true);
+                            holder.updateAllChanged();
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Error handling expiring premium key {}", key.getId(), e);
+                }
+            }
+
+            log.info("Premium keys: {} about to expire, {} renewed, {} holder(s) warned", keys.size(), renewed, warned);
+        } catch (Exception e) {
+            log.error("Error checking premium keys", e);
+        }
+    }
+
+    // The owner, if they're using it themselves, or whoever they gave it to.
+    private static MongoUser findHolder(PremiumKey key) {
+        final var db = MantaroData.db();
+        final var owner = db.getUser(key.getOwner());
+        if (key.getId().equals(owner.getPremiumKey())) {
+            return owner;
+        }
+
+        for (Map.Entry<String, String> claimed : owner.getKeysClaimed().entrySet()) {
+            if (key.getId().equals(claimed.getValue())) {
+                var user = db.getUser(claimed.getKey());
+                return key.getId().equals(user.getPremiumKey()) ? user : null;
+            }
+        }
+
+        return null;
+    }
+
+    private static void warn(String userId, PremiumKey key) {
+        MantaroBot.getInstance().getShardManager().retrieveUserById(userId)
+                .flatMap(User::openPrivateChannel)
+                .flatMap(privateChannel -> privateChannel.sendMessage(
+                        """
+                        %1$sYour premium key is about to expire in **%2$,d** days**!
+                        :heart: *If you're still pledging to Mantaro* you can ask Kodehawa#3457 for a key renewal in the #donators channel.*
+                        In the case that you're not longer a patron, you cannot renew, but I sincerely hope you had a good time with the bot and its features!
+                        **If you ever want to pledge again you can check the patreon link at <https://patreon.com/mantaro>**
+                        
+                        Thanks you so much for your support to keep Mantaro alive! It wouldn't be possible without the help of all of you.
+                        With love, Kodehawa and the Mantaro team :heart:
+                        
+                        This will only be sent once (hopefully). Thanks again!
+                        """.formatted(EmoteReference.WARNING, Math.max(1, key.validFor()))
+                ))
+                .queue(null, error -> log.debug("Couldn't warn {} about their key expiring", userId, error));
+    }
+}
@@ -25,8 +25,8 @@ import redis.clients.jedis.JedisPool;
 import java.util.UUID;
 
 public class Reminder {
-    private static final String table = "reminder";
-    private static final String ztable = "zreminder";
+    static final String table = "reminder";
+    static final String ztable = "zreminder";
     private static final JedisPool pool = MantaroData.getDefaultJedisPool();
     private static final ManagedDatabase db = MantaroData.db();
 
@@ -53,9 +53,7 @@ public class Reminder {
     //Id here contains the full id aka UUID:userId, unlike in the other methods
     public static void cancel(String userId, String fullId, CancelReason reason) {
         try (var redis = pool.getResource()) {
-            var data = redis.hget(table, fullId);
-
-            redis.zrem(ztable, data);
+            redis.zrem(ztable, fullId);
             redis.hdel(table, fullId);
         }
 
@@ -77,14 +75,16 @@ public class Reminder {
                 .put("reminder", reminder)
                 .put("at", time);
 
+        // The schedule only holds the id, the data is looked up when it's due.
+        // It's written first, so a reminder never comes due without it.
+        var fullId = id + ":" + userId;
         try (var redis = pool.getResource()) {
-            redis.zadd(ztable, time, r.toString());
-            //Needed for removal.
-            redis.hset(table, id + ":" + userId, r.toString());
+            redis.hset(table, fullId, r.toString());
+            redis.zadd(ztable, time, fullId);
         }
 
         var user = db.getUser(userId);
-        user.addReminder(id + ":" + userId);
+        user.addReminder(fullId);
         user.updateAllChanged();
     }
 
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.commands.utils.reminders;
+
+import net.kodehawa.mantarobot.data.MantaroData;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.ScanParams;
+import redis.clients.jedis.resps.Tuple;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires reminders when they're due, to the second.
+ * <p>
+ * Reminders live in a sorted set scored by the time they're due at, with their data in a hash by id.
+ * Every {@link #SCAN_INTERVAL_SECONDS} it looks up what's coming in the next {@link #LOOKAHEAD_SECONDS} with
+ * ZRANGEBYSCORE and arms a timing wheel with a slot per second, which ticks every second, and only goes to Redis
+ * on the ticks that have something due. Due reminders are claimed with a Lua script that pops them off the set
+ * in batches, so a burst (everyone that wanted to be reminded at the top of the hour) goes out at once,
+ * and no reminder is ever delivered twice, even with more than one node doing this.
+ * <p>
+ * Everything here runs on the single thread of the executor it's started with, so the wheel isn't synchronized.
+ */
+public class ReminderScheduler {
+    private static final Logger log = LoggerFactory.getLogger(ReminderScheduler.class);
+    private static final String SCRIPT;
+
+    static {
+        try {
+            //noinspection DataFlowIssue
+            SCRIPT = IOUtils.toString(
+                    ReminderScheduler.class.getResourceAsStream("/reminders.lua"), StandardCharsets.UTF_8
+            );
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Reminders are set at least a minute ahead, so with these every one of them gets armed before it's due.
+    private static final int SCAN_INTERVAL_SECONDS = 15;
+    private static final int LOOKAHEAD_SECONDS = 60;
+    // Has to be over the lookahead, so an armed slot is never reused before it's ticked.
+    private static final int WHEEL_SIZE = 64;
+    private static final int CLAIM_BATCH = 100;
+    // A slot only needs one reminder to get armed. If a burst goes over this, whatever is after it in the
+    // lookahead gets picked up by the next scan instead of on time.
+    private static final int MAX_ARMED_PER_SCAN = 10_000;
+
+    private final ScheduledExecutorService executor;
+    // Slot (second % WHEEL_SIZE) -> the second it's armed for, or 0 if it's empty.
+    private final long[] wheel = new long[WHEEL_SIZE];
+    private long lastTick = System.currentTimeMillis() / 1000;
+    private String scriptSha;
+
+    public ReminderScheduler(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public void start() {
+        // The issue with handling this kind of stuff with ScheduledTasks is that we need to catch everything
+        // In case the Redis server is, for some reason, unavailable, or getting the resource fails
+        // This will silently die and kill every further reminder from being fired.
+        executor.execute(() -> run(this::migrate));
+        executor.scheduleAtFixedRate(() -> run(this::scan), 0, SCAN_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        executor.scheduleAtFixedRate(() -> run(this::tick),
+                1000 - System.currentTimeMillis() % 1000, 1000, TimeUnit.MILLISECONDS
+        );
+    }
+
+    // Delivers whatever is overdue (reminders set while nobody was scanning, or that fell between scans),
+    // and arms the wheel for what's coming up.
+    private void scan() {
+        var now = System.currentTimeMillis();
+        claimDue(now);
+
+        List<Tuple> upcoming;
+        try (Jedis j = MantaroData.getDefaultJedisPool().getResource()) {
+            upcoming = j.zrangeByScoreWithScores(Reminder.ztable, now,
+                    now + TimeUnit.SECONDS.toMillis(LOOKAHEAD_SECONDS), 0, MAX_ARMED_PER_SCAN
+            );
+        }
+
+        for (var reminder : upcoming) {
+            // Rounded up, so the tick for it comes once it's due and not a bit before.
+            var second = (long) Math.ceil(reminder.getScore() / 1000);
+            wheel[(int) (second % WHEEL_SIZE)] = second;
+        }
+
+        log.debug("Reminder check - {} reminder(s) coming up", upcoming.size());
+    }
+
+    private void tick() {
+        var now = System.currentTimeMillis();
+        var second = now / 1000;
+        var due = false;
+
+        // Usually one slot, more if a tick ran late. After a long pause every slot gets looked at.
+        var from = Math.max(lastTick + 1, second - WHEEL_SIZE + 1);
+        for (var s = from; s <= second; s++) {
+            var slot = (int) (s % WHEEL_SIZE);
+            if (wheel[slot] != 0 && wheel[slot] <= second) {
+                wheel[slot] = 0;
+                due = true;
+            }
+        }
+
+        lastTick = second;
+        if (due) {
+            claimDue(now);
+        }
+    }
+
+    // Claims and delivers every reminder due by the given time, a batch at a time.
+    private void claimDue(long now) {
+        try (Jedis j = MantaroData.getDefaultJedisPool().getResource()) {
+            List<String> claimed;
+            do {
+                claimed = claim(j, now);
+                for (int i = 0; i < claimed.size(); i += 2) {
+                    try { // If we don't try here regardless, we kill the loop.
+                        ReminderTask.deliver(claimed.get(i), claimed.get(i + 1));
+                    } catch (Exception e) {
+                        log.error("Error delivering reminder {}", claimed.get(i), e);
+                    }
+                }
+            } while (claimed.size() / 2 >= CLAIM_BATCH);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> claim(Jedis j, long now) {
+        if (scriptSha == null) {
+            scriptSha = j.scriptLoad(SCRIPT);
+        }
+
+        try {
+            return (List<String>) j.evalsha(scriptSha,
+                    List.of(Reminder.ztable, Reminder.table),
+                    List.of(String.valueOf(now), String.valueOf(CLAIM_BATCH))
+            );
+        } catch (JedisNoScriptException e) {
+            //script not in cache. force load it and try again.
+            scriptSha = j.scriptLoad(SCRIPT);
+            return claim(j, now);
+        }
+    }
+
+    // Reminders used to be scheduled with their whole json as the member. Moves those to their id.
+    private void migrate() {
+        var params = new ScanParams().match("{*").count(1000);
+        var migrated = 0;
+
+        try (Jedis j = MantaroData.getDefaultJedisPool().getResource()) {
+            var cursor = ScanParams.SCAN_POINTER_START;
+            do {
+                var result = j.zscan(Reminder.ztable, cursor, params);
+                for (var legacy : result.getResult()) {
+                    var data = new JSONObject(legacy.getElement());
+                    j.zadd(Reminder.ztable, legacy.getScore(), data.getString("id") + ":" + data.getString("user"));
+                    j.zrem(Reminder.ztable, legacy.getElement());
+                    migrated++;
+                }
+
+                cursor = result.getCursor();
+            } while (!cursor.equals(ScanParams.SCAN_POINTER_START));
+        }
+
+        if (migrated > 0) {
+            log.info("Moved {} reminder(s) to the id-based schedule", migrated);
+        }
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("Error handling reminders", e);
+        }
+    }
+}
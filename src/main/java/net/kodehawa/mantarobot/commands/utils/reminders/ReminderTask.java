@@ -14,86 +14,77 @@
  * along with Mantaro. If not, see http://www.gnu.org/licenses/
  *
  */
-
 package net.kodehawa.mantarobot.commands.utils.reminders;
 
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.MantaroBot;
-import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import redis.clients.jedis.Jedis;
 
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Sends out reminders once {@link ReminderScheduler} has claimed them.
+ */
 public class ReminderTask {
     private static final Logger log = LoggerFactory.getLogger(ReminderTask.class);
 
-    public static void handle() {
-        log.debug("Checking reminder data...");
-        // The issue with handling this kind of stuff with ScheduledTasks is that we need to catch everything
-        // In case the Redis server is, for some reason, unavailable, or getting the resource fails
-        // This will silently die and kill every further reminder from being fired.
-        // Such, we need two try/catches here, one so the ScheduledTask doesn't die, and one so the loop doesn't break
-        // Java moments.
-        try (Jedis j = MantaroData.getDefaultJedisPool().getResource()) {
-            List<String> reminders = j.zrange("zreminder", 0, 14);
-            var bot = MantaroBot.getInstance();
+    /**
+     * Delivers a reminder that's due. The scheduler already took it off the schedule, so this is the only chance
+     * it gets: it's removed from the user either way.
+     *
+     * @param fullId The full id of the reminder (UUID:userId).
+     * @param rem The reminder data, or an empty string if it was cancelled after being scheduled.
+     */
+    static void deliver(String fullId, String rem) {
+        if (rem.isEmpty()) {
+            log.debug("Reminder {} has no data, was cancelled?", fullId);
+            return;
+        }
 
-            log.debug("Reminder check - remainder is: {}", reminders.size());
-            for (var rem : reminders) {
-                try { // If we don't try here regardless, we kill the loop.
-                    var data = new JSONObject(rem);
-                    var fireAt = data.getLong("at");
+        var bot = MantaroBot.getInstance();
+        var data = new JSONObject(rem);
+        var fireAt = data.getLong("at");
+        var userId = data.getString("user");
+        var guildId = data.getString("guild");
+        var scheduledAt = data.getLong("scheduledAt");
+        var late = System.currentTimeMillis() - fireAt;
+        Metrics.REMINDER_DELAY.observe(Math.max(0, late) / 1000D);
 
-                    // If the time has passed...
-                    if (System.currentTimeMillis() >= fireAt) {
-                        log.debug("Reminder date has passed, remind accordingly.");
-                        var userId = data.getString("user");
-                        var fullId = data.getString("id") + ":" + userId;
-                        var guildId = data.getString("guild");
-                        var scheduledAt = data.getLong("scheduledAt");
+        // 1 day passed already, assuming it's a stale reminder:
+        // Done because ReminderTask wasn't working.
+        if (late > TimeUnit.DAYS.toMillis(1)) {
+            Reminder.cancel(userId, fullId, Reminder.CancelReason.CANCEL);
+            return;
+        }
 
-                        // 1 day passed already, assuming it's a stale reminder:
-                        // Done because ReminderTask wasn't working.
-                        if (System.currentTimeMillis() - fireAt > TimeUnit.DAYS.toMillis(1)) {
-                            Reminder.cancel(userId, fullId, Reminder.CancelReason.CANCEL);
-                            return;
-                        }
+        log.debug("Reminder date has passed, remind accordingly.");
+        var reminder = data.getString("reminder"); //The actual reminder data
+        var guild = bot.getShardManager().getGuildById(guildId);
+        var scheduledTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(scheduledAt), ZoneId.systemDefault());
 
-                        var reminder = data.getString("reminder"); //The actual reminder data
-                        var guild = bot.getShardManager().getGuildById(guildId);
-                        var scheduledTime = OffsetDateTime.ofInstant(Instant.ofEpochMilli(scheduledAt), ZoneId.systemDefault());
-                        bot.getShardManager().retrieveUserById(userId)
-                                .flatMap(User::openPrivateChannel)
-                                .flatMap(privateChannel -> privateChannel
-                                        .sendMessageFormat("""
-                                                        %s**Reminder!**
-                                                        
-                                                        You asked me to remind you of: **%s**
-                                                        Asked at: <t:%s>%s""",
-                                                EmoteReference.POPPER,
-                                                reminder.trim().isEmpty() ? "something" : reminder, scheduledTime.toEpochSecond(),
-                                                (guild != null ? "%nAsked on: %s".formatted(guild.getName()) : "")
-                                        )
-                                ).queue(success -> {
-                                            log.debug("Reminded {}. Removing from remind database", fullId);
-                                            Reminder.cancel(userId, fullId, Reminder.CancelReason.REMINDED);
-                                        }, err -> Reminder.cancel(userId, fullId, Reminder.CancelReason.ERROR_DELIVERING)
-                                );
-                    }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        bot.getShardManager().retrieveUserById(userId)
+                .flatMap(User::openPrivateChannel)
+                .flatMap(privateChannel -> privateChannel
+                        .sendMessageFormat("""
+                                        %s**Reminder!**
+                                        
+                                        You asked me to remind you of: **%s**
+                                        Asked at: <t:%s>%s""",
+                                EmoteReference.POPPER,
+                                reminder.trim().isEmpty() ? "something" : reminder, scheduledTime.toEpochSecond(),
+                                (guild != null ? "%nAsked on: %s".formatted(guild.getName()) : "")
+                        )
+                ).queue(success -> {
+                            log.debug("Reminded {}. Removing from remind database", fullId);
+                            Reminder.cancel(userId, fullId, Reminder.CancelReason.REMINDED);
+                        }, err -> Reminder.cancel(userId, fullId, Reminder.CancelReason.ERROR_DELIVERING)
+                );
     }
 }
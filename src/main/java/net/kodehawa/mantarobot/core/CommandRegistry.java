@@ -43,9 +43,7 @@ import net.kodehawa.mantarobot.core.modules.commands.help.HelpContent;
 import net.kodehawa.mantarobot.core.modules.commands.i18n.I18nContext;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.db.ManagedDatabase;
-import net.kodehawa.mantarobot.db.entities.MongoGuild;
-import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.db.GuildCommandPolicy;
 import net.kodehawa.mantarobot.options.core.Option;
 import net.kodehawa.mantarobot.utils.Utils;
 import net.kodehawa.mantarobot.utils.commands.EmoteReference;
@@ -54,7 +52,6 @@ import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -96,7 +93,7 @@ public class CommandRegistry {
 
     // Process non-slash commands.
     // We filter non-guild events early on.
-    public void process(MessageReceivedEvent event, MongoGuild dbGuild, String cmdName, String content, String prefix, boolean isMention) {
+    public void process(MessageReceivedEvent event, GuildCommandPolicy policy, String cmdName, String content, String prefix, boolean isMention) {
         if (cmdName.length() >= 50) {
             return;
         }
@@ -107,7 +104,7 @@ public class CommandRegistry {
 
         if (command == null) {
             // We will create a proper I18nContext once the custom command goes through, if it does. We don't need it otherwise.
-            CustomCmds.handle(prefix, cmdName, new Context(event, new I18nContext(), content, isMention), dbGuild, content);
+            CustomCmds.handle(prefix, cmdName, new Context(event, new I18nContext(), content, isMention), policy, content);
             return;
         }
 
@@ -116,16 +113,18 @@ public class CommandRegistry {
         // Variable used in lambda expression should be final or effectively final...
         final var cmd = command;
         final var guild = event.getGuild();
-        final var mantaroData = managedDatabase.getMantaroData();
+        final var mantaroData = managedDatabase.getMantaroDataSnapshot();
 
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
+        if (mantaroData.isBlackListedGuild(guild.getIdLong())) {
             log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
             return;
         }
 
         // !! Permission check start
-        if (dbGuild.getDisabledCommands().contains(name(cmd, cmdName))) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.COMMAND);
+        final var commandName = name(cmd, cmdName);
+        final var commandCategory = root(cmd).category();
+        if (policy.isCommandDisabled(commandName)) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.COMMAND);
             return;
         }
 
@@ -135,55 +134,48 @@ public class CommandRegistry {
         }
 
         final var roles = member.getRoles();
-        final var channelDisabledCommands = dbGuild.getChannelSpecificDisabledCommands().get(channel.getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(name(cmd, cmdName))) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.COMMAND_SPECIFIC);
+        if (policy.isCommandDisabled(channel.getIdLong(), commandName)) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.COMMAND_SPECIFIC);
             return;
         }
 
-        if (dbGuild.getDisabledUsers().contains(author.getId()) && isNotAdmin(member)) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.USER);
+        if (policy.isUserDisabled(author.getIdLong()) && isNotAdmin(member)) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.USER);
             return;
         }
 
         var isOptions = cmdName.equalsIgnoreCase("opts");
-        if (dbGuild.getDisabledChannels().contains(channel.getId()) && !isOptions) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.CHANNEL);
+        if (policy.isChannelDisabled(channel.getIdLong()) && !isOptions) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.CHANNEL);
             return;
         }
 
-        if (dbGuild.getDisabledCategories().contains(root(cmd).category()) && !isOptions) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.CATEGORY);
+        if (policy.isCategoryDisabled(commandCategory) && !isOptions) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.CATEGORY);
             return;
         }
 
-        if (dbGuild.getChannelSpecificDisabledCategories().computeIfAbsent(
-                channel.getId(), c -> new ArrayList<>()).contains(root(cmd).category()) && !isOptions) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.SPECIFIC_CATEGORY);
+        if (policy.isCategoryDisabled(channel.getIdLong(), commandCategory) && !isOptions) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.SPECIFIC_CATEGORY);
             return;
         }
 
-        if (!dbGuild.getDisabledRoles().isEmpty() && roles.stream().anyMatch(
-                r -> dbGuild.getDisabledRoles().contains(r.getId())) && isNotAdmin(member)) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.ROLE);
+        if (policy.isAnyRoleDisabled(roles) && isNotAdmin(member)) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.ROLE);
             return;
         }
 
-        final var roleSpecificDisabledCommands = dbGuild.getRoleSpecificDisabledCommands();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(name(cmd, cmdName))) && isNotAdmin(member)) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.SPECIFIC_ROLE);
+        if (policy.isCommandDisabledForAnyRole(roles, commandName) && isNotAdmin(member)) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.SPECIFIC_ROLE);
             return;
         }
 
-        final var roleSpecificDisabledCategories = dbGuild.getRoleSpecificDisabledCategories();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(root(cmd).category())) && isNotAdmin(member)) {
-            sendDisabledNotice(event, dbGuild, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
+        if (policy.isCategoryDisabledForAnyRole(roles, commandCategory) && isNotAdmin(member)) {
+            sendDisabledNotice(event, policy, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
             return;
         }
 
-        if (mantaroData.getBlackListedUsers().contains(author.getId())) {
+        if (mantaroData.isBlackListedUser(author.getIdLong())) {
             if (!rl.process(author)) {
                 return;
             }
@@ -196,8 +188,10 @@ public class CommandRegistry {
             return;
         }
 
+        // Past the disable checks, so this is going to run: we do need the whole guild from here on.
+        final var dbGuild = managedDatabase.getGuild(guild);
         // If we are in the patreon bot, deny all requests from unknown guilds.
-        if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
+        if (config.isPremiumBot() && !config.isOwner(author) && !managedDatabase.isGuildPremium(guild.getId())) {
             channel.sendMessage("""
                             :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
                             **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
@@ -213,15 +207,13 @@ public class CommandRegistry {
         }
         // !! Permission check end
 
-        final var dbUser = managedDatabase.getUser(author);
-        renewPremiumKey(managedDatabase, author, dbUser, dbGuild);
-
+        final var userLanguage = managedDatabase.getUserLanguage(author.getId());
         // Used a command on the new system?
         // sort-of-fix: remove if statement when we port all commands
         boolean executedNew;
         try {
             executedNew = newCommands.execute(new NewContext(event,
-                    new I18nContext(dbGuild, dbUser),
+                    I18nContext.of(dbGuild, userLanguage),
                     event.getMessage().getContentRaw().substring(prefix.length()))
             );
         } catch (ArgumentParseError e) {
@@ -238,7 +230,7 @@ public class CommandRegistry {
         }
 
         if (!executedNew) {
-            cmd.run(new Context(event, new I18nContext(dbGuild, dbUser), cmdName, content, isMention), cmdName, content);
+            cmd.run(new Context(event, I18nContext.of(dbGuild, userLanguage), cmdName, content, isMention), cmdName, content);
         }
 
         commandLog.debug("Command: {}, User: {} ({}), Guild: {}, Channel: {}, Message: {}" ,
@@ -269,10 +261,10 @@ public class CommandRegistry {
         }
 
         final var managedDatabase = MantaroData.db();
-        final var mantaroData = managedDatabase.getMantaroData();
+        final var mantaroData = managedDatabase.getMantaroDataSnapshot();
         final var guild = event.getGuild();
 
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
+        if (mantaroData.isBlackListedGuild(guild.getIdLong())) {
             log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
             event.reply("Not accepting commands from this server.")
                     .setEphemeral(true)
@@ -290,7 +282,7 @@ public class CommandRegistry {
         final var author = event.getUser();
         final var dbGuild = managedDatabase.getGuild(event.getGuild());
         // If we are in the patreon bot, deny all requests from unknown guilds.
-        if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
+        if (config.isPremiumBot() && !config.isOwner(author) && !managedDatabase.isGuildPremium(guild.getId())) {
             event.reply("""
                             :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
                             **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
@@ -300,8 +292,8 @@ public class CommandRegistry {
             return;
         }
 
-        final var dbUser = managedDatabase.getUser(author);
-        cmd.execute(new InteractionContext<>(event, new I18nContext(dbGuild, dbUser)));
+        final var userLanguage = managedDatabase.getUserLanguage(author.getId());
+        cmd.execute(new InteractionContext<>(event, I18nContext.of(dbGuild, userLanguage)));
         commandLog.debug("Context (user) command: {}, User: {} ({}), Guild: {}" ,
                 cmd.getName(), author.getName(), author.getId(), guild.getId()
         );
@@ -329,10 +321,10 @@ public class CommandRegistry {
         }
 
         final var managedDatabase = MantaroData.db();
-        final var mantaroData = managedDatabase.getMantaroData();
+        final var mantaroData = managedDatabase.getMantaroDataSnapshot();
         final var guild = event.getGuild();
 
-        if (mantaroData.getBlackListedGuilds().contains(guild.getId())) {
+        if (mantaroData.isBlackListedGuild(guild.getIdLong())) {
             log.debug("Got command from blacklisted guild {}, dropping", guild.getId());
             event.reply("Not accepting commands from this server.")
                     .setEphemeral(true)
@@ -345,10 +337,10 @@ public class CommandRegistry {
         // Variable used in lambda expression should be final or effectively final...
         final var cmd = command;
         final var name = cmd.getName();
-        final var dbGuild = managedDatabase.getGuild(event.getGuild());
+        final var policy = managedDatabase.getGuildCommandPolicy(guild);
 
         // !! Permission check start
-        if (dbGuild.getDisabledCommands().contains(name)) {
+        if (policy.isCommandDisabled(name)) {
             sendDisabledNotice(event, CommandDisableLevel.COMMAND);
             return;
         }
@@ -359,53 +351,46 @@ public class CommandRegistry {
         }
 
         final var roles = member.getRoles();
-        final var channelDisabledCommands = dbGuild.getChannelSpecificDisabledCommands().get(channel.getId());
-        if (channelDisabledCommands != null && channelDisabledCommands.contains(name)) {
+        if (policy.isCommandDisabled(channel.getIdLong(), name)) {
             sendDisabledNotice(event, CommandDisableLevel.COMMAND_SPECIFIC);
             return;
         }
 
-        if (dbGuild.getDisabledUsers().contains(author.getId()) && isNotAdmin(member)) {
+        if (policy.isUserDisabled(author.getIdLong()) && isNotAdmin(member)) {
             sendDisabledNotice(event, CommandDisableLevel.USER);
             return;
         }
-        if (dbGuild.getDisabledChannels().contains(channel.getId())) {
+        if (policy.isChannelDisabled(channel.getIdLong())) {
             sendDisabledNotice(event, CommandDisableLevel.CHANNEL);
             return;
         }
 
-        if (dbGuild.getDisabledCategories().contains(cmd.getCategory())) {
+        if (policy.isCategoryDisabled(cmd.getCategory())) {
             sendDisabledNotice(event, CommandDisableLevel.CATEGORY);
             return;
         }
 
-        if (dbGuild.getChannelSpecificDisabledCategories().computeIfAbsent(
-                channel.getId(), c -> new ArrayList<>()).contains(cmd.getCategory())) {
+        if (policy.isCategoryDisabled(channel.getIdLong(), cmd.getCategory())) {
             sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_CATEGORY);
             return;
         }
 
-        if (!dbGuild.getDisabledRoles().isEmpty() && roles.stream().anyMatch(
-                r -> dbGuild.getDisabledRoles().contains(r.getId())) && isNotAdmin(member)) {
+        if (policy.isAnyRoleDisabled(roles) && isNotAdmin(member)) {
             sendDisabledNotice(event, CommandDisableLevel.ROLE);
             return;
         }
 
-        final var roleSpecificDisabledCommands = dbGuild.getRoleSpecificDisabledCommands();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCommands.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(name)) && isNotAdmin(member)) {
+        if (policy.isCommandDisabledForAnyRole(roles, name) && isNotAdmin(member)) {
             sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_ROLE);
             return;
         }
 
-        final var roleSpecificDisabledCategories = dbGuild.getRoleSpecificDisabledCategories();
-        if (roles.stream().anyMatch(r -> roleSpecificDisabledCategories.computeIfAbsent(
-                r.getId(), s -> new ArrayList<>()).contains(cmd.getCategory())) && isNotAdmin(member)) {
+        if (policy.isCategoryDisabledForAnyRole(roles, cmd.getCategory()) && isNotAdmin(member)) {
             sendDisabledNotice(event, CommandDisableLevel.SPECIFIC_ROLE_CATEGORY);
             return;
         }
 
-        if (mantaroData.getBlackListedUsers().contains(author.getId())) {
+        if (mantaroData.isBlackListedUser(author.getIdLong())) {
             if (!rl.process(author)) {
                 return;
             }
@@ -418,8 +403,9 @@ public class CommandRegistry {
             return;
         }
 
+        final var dbGuild = managedDatabase.getGuild(guild);
         // If we are in the patreon bot, deny all requests from unknown guilds.
-        if (config.isPremiumBot() && !config.isOwner(author) && !dbGuild.isPremium()) {
+        if (config.isPremiumBot() && !config.isOwner(author) && !managedDatabase.isGuildPremium(guild.getId())) {
             event.reply("""
                             :x: Seems like you're trying to use the Patreon bot when this guild is **not** marked as premium.
                             **If you think this is an error please contact Kodehawa#3457 or poke me on #donators in the support guild**
@@ -435,10 +421,8 @@ public class CommandRegistry {
         }
         // !! Permission check end
 
-        final var dbUser = managedDatabase.getUser(author);
-        renewPremiumKey(managedDatabase, author, dbUser, dbGuild);
-
-        cmd.execute(new SlashContext(event, new I18nContext(dbGuild, dbUser)));
+        final var userLanguage = managedDatabase.getUserLanguage(author.getId());
+        cmd.execute(new SlashContext(event, I18nContext.of(dbGuild, userLanguage)));
         commandLog.debug("Slash command: {}, User: {} ({}), Guild: {}, Channel: {}, Options: {}" ,
                 cmd.getName(), author.getName(), author.getId(), guild.getId(), channel.getId(), event.getOptions()
         );
@@ -462,46 +446,6 @@ public class CommandRegistry {
         }
     }
 
-    public void renewPremiumKey(ManagedDatabase managedDatabase, User author, MongoUser dbUser, MongoGuild guildData) {
-        if (dbUser.getPremiumKey() != null) {
-            final var currentKey = managedDatabase.getPremiumKey(dbUser.getPremiumKey());
-            if (currentKey != null) {
-                // 10 days before expiration or best fit.
-                if (currentKey.validFor() <= 10 && currentKey.validFor() > 1) {
-                    // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
-                    if (!currentKey.renew() && !dbUser.hasReceivedExpirationWarning()) {
-                        author.openPrivateChannel().queue(privateChannel ->
-                                privateChannel.sendMessage(
-                                        """
-                                        %1$sYour premium key is about to expire in **%2$,d** days**!
-                                        :heart: *If you're still pledging to Mantaro* you can ask Kodehawa#3457 for a key renewal in the #donators channel.*
-                                        In the case that you're not longer a patron, you cannot renew, but I sincerely hope you had a good time with the bot and its features!
-                                        **If you ever want to pledge again you can check the patreon link at <https://patreon.com/mantaro>**
-                                        
-                                        Thanks you so much for your support to keep Mantaro alive! It wouldn't be possible without the help of all of you.
-                                        With love, Kodehawa and the Mantaro team :heart:
-                                        
-                                        This will only be sent once (hopefully). Thanks again!
-                                        """.formatted(EmoteReference.WARNING, Math.max(1, currentKey.validFor()))
-                                ).queue()
-                        );
-                    }
-
-                    dbUser.receivedExpirationWarning(true);
-                    dbUser.updateAllChanged();
-                }
-            }
-        }
-
-        if (guildData.getPremiumKey() != null) {
-            final var guildKey = managedDatabase.getPremiumKey(guildData.getPremiumKey());
-            // Handling is done inside the PremiumKey#renew method. This only gets fired if the key has less than 10 days left.
-            if (guildKey != null && guildKey.validFor() <= 10 && guildKey.validFor() > 1) {
-                guildKey.renew();
-            }
-        }
-    }
-
     public void register(Class<? extends NewCommand> clazz) {
         var cmd = newCommands.register(clazz);
         var p = new ProxyCommand(cmd);
@@ -562,7 +506,7 @@ public class CommandRegistry {
     }
 
 
-    private void sendDisabledNotice(MessageReceivedEvent event, MongoGuild data, CommandDisableLevel level) {
+    private void sendDisabledNotice(MessageReceivedEvent event, GuildCommandPolicy data, CommandDisableLevel level) {
         if (data.isCommandWarningDisplay() && level != CommandDisableLevel.NONE) {
             event.getChannel().sendMessageFormat("%sThis command is disabled on this server. Reason: %s",
                     EmoteReference.ERROR, Utils.capitalize(level.getName())
@@ -41,6 +41,7 @@ import net.kodehawa.mantarobot.ExtraRuntimeOptions;
 import net.kodehawa.mantarobot.MantaroBot;
 import net.kodehawa.mantarobot.commands.music.listener.VoiceChannelListener;
 import net.kodehawa.mantarobot.core.cache.EvictingCachePolicy;
+import net.kodehawa.mantarobot.core.command.processor.CommandDispatcher;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
 import net.kodehawa.mantarobot.core.listeners.MantaroListener;
 import net.kodehawa.mantarobot.core.listeners.command.CommandListener;
@@ -100,6 +101,7 @@ public class MantaroCore {
 
     private LoadState loadState = PRELOAD;
     private final Map<Integer, Shard> shards = new ConcurrentHashMap<>();
+    private final CommandDispatcher commandDispatcher;
     private final ExecutorService threadPool = Executors.newCachedThreadPool(
             new ThreadFactoryBuilder().setNameFormat("Mantaro Thread-%d").build()
     );
@@ -115,7 +117,10 @@ public class MantaroCore {
     public MantaroCore(Config config, boolean isDebug) {
         this.config = config;
         this.isDebug = isDebug;
+        this.commandDispatcher = new CommandDispatcher(config);
         Metrics.THREAD_POOL_COLLECTOR.add("mantaro-executor", threadPool);
+        Metrics.THREAD_POOL_COLLECTOR.add("mantaro-command-executor", commandDispatcher.getExecutor());
+        Metrics.THREAD_POOL_COLLECTOR.add("mantaro-command-resolver", commandDispatcher.getResolverExecutor());
     }
 
     public boolean hasLoadedCompletely() {
@@ -274,7 +279,7 @@ public class MantaroCore {
                     .setSessionController(controller)
                     .addEventListeners(eventListeners)
                     .addEventListenerProviders(List.of(
-                            id -> new CommandListener(commandProcessor, threadPool, getShard(id).getMessageCache()),
+                            id -> new CommandListener(commandProcessor, commandDispatcher, getShard(id).getMessageCache()),
                             id -> new MantaroListener(threadPool, getShard(id).getMessageCache()),
                             id -> getShard(id).getListener()
                     ))
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.core.command.processor;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import net.kodehawa.mantarobot.data.Config;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs commands on the command executor. There's two modes, picked with {@link Config#getCommandExecutorMode()}:
+ * <ul>
+ *     <li>cached: an unbounded cached thread pool, with no limits. This is how it always worked.</li>
+ *     <li>bounded: a fixed pool with a bounded queue, a global cap on commands in flight (queued or running),
+ *     and a cap per guild and per user. Work over any limit is rejected instead of spawning more threads.
+ *     Checking whether a message is a command at all runs on its own small fixed pool, also with a bounded queue.</li>
+ * </ul>
+ * Commands spend most of their time blocked on Mongo, Redis or HTTP, so under a burst the cached pool ends up
+ * with thousands of threads. The bounded mode trades that for dropping commands, which is what we want to compare.
+ */
+public class CommandDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(CommandDispatcher.class);
+
+    private final ExecutorService executor;
+    private final ExecutorService resolver;
+    private final boolean bounded;
+    private final Semaphore inFlight;
+    private final LoadingCache<Long, Semaphore> guildPermits;
+    private final LoadingCache<Long, Semaphore> userPermits;
+
+    public CommandDispatcher(Config config) {
+        this.bounded = "bounded".equalsIgnoreCase(config.getCommandExecutorMode());
+        var threadFactory = new ThreadFactoryBuilder().setNameFormat("Mantaro Command-%d").build();
+        var resolverThreadFactory = new ThreadFactoryBuilder().setNameFormat("Mantaro Command Resolver-%d").build();
+
+        if (bounded) {
+            var threads = Math.max(1, config.getCommandExecutorThreads());
+            var pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(Math.max(1, config.getCommandQueueSize())), threadFactory
+            );
+
+            pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+
+            var resolverThreads = Math.max(1, config.getCommandResolverThreads());
+            var resolverPool = new ThreadPoolExecutor(resolverThreads, resolverThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(Math.max(1, config.getCommandQueueSize())), resolverThreadFactory
+            );
+
+            resolverPool.allowCoreThreadTimeOut(true);
+            this.resolver = resolverPool;
+            this.inFlight = new Semaphore(Math.max(1, config.getMaxCommandsInFlight()));
+            this.guildPermits = permits(config.getMaxCommandsPerGuild());
+            this.userPermits = permits(config.getMaxCommandsPerUser());
+        } else {
+            this.executor = Executors.newCachedThreadPool(threadFactory);
+            this.resolver = Executors.newCachedThreadPool(resolverThreadFactory);
+            this.inFlight = null;
+            this.guildPermits = null;
+            this.userPermits = null;
+        }
+
+        log.info("Using {} command executor", bounded ? "bounded" : "cached");
+    }
+
+    /**
+     * The executor commands run on. Only {@link #dispatch} should submit work here: non-command work (listeners,
+     * startup tasks) has its own executor, so it never takes up command threads or gets rejected by the queue.
+     *
+     * @return The executor, for metrics.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * The executor messages are checked on, to see whether they are commands at all. See {@link #resolve}.
+     *
+     * @return The executor, for metrics.
+     */
+    public ExecutorService getResolverExecutor() {
+        return resolver;
+    }
+
+    /**
+     * Runs the check of whether a message is a command, which needs the guild policy and might go to the database.
+     * In bounded mode this is capped too, so a burst of messages can't spawn a thread each before any limit applies.
+     * The task should call {@link #dispatch} if the message turns out to be a command.
+     *
+     * @param task The check to run.
+     * @return Whether it was accepted. If false, it won't run.
+     */
+    public boolean resolve(Runnable task) {
+        try {
+            resolver.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return reject("resolve");
+        }
+    }
+
+    /**
+     * Runs a command on the executor, if it's within the limits.
+     *
+     * @param guildId The guild the command comes from, or 0 if none.
+     * @param userId The user that ran the command.
+     * @param task The command to run.
+     * @return Whether it was accepted. If false, it won't run.
+     */
+    public boolean dispatch(long guildId, long userId, Runnable task) {
+        if (!bounded) {
+            executor.execute(task);
+            return true;
+        }
+
+        if (!inFlight.tryAcquire()) {
+            return reject("global");
+        }
+
+        var guild = guildId == 0 ? null : guildPermits.getUnchecked(guildId);
+        if (guild != null && !guild.tryAcquire()) {
+            inFlight.release();
+            return reject("guild");
+        }
+
+        var user = userPermits.getUnchecked(userId);
+        if (!user.tryAcquire()) {
+            release(guild);
+            inFlight.release();
+            return reject("user");
+        }
+
+        Metrics.COMMANDS_IN_FLIGHT.inc();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release(user, guild);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            release(user, guild);
+            return reject("queue");
+        }
+
+        return true;
+    }
+
+    private void release(Semaphore user, Semaphore guild) {
+        user.release();
+        release(guild);
+        inFlight.release();
+        Metrics.COMMANDS_IN_FLIGHT.dec();
+    }
+
+    private static void release(Semaphore semaphore) {
+        if (semaphore != null) {
+            semaphore.release();
+        }
+    }
+
+    private static boolean reject(String reason) {
+        Metrics.COMMAND_REJECTIONS.labels(reason).inc();
+        return false;
+    }
+
+    // The semaphore is captured by the task, so evicting one while it has permits taken is harmless:
+    // it just means that guild or user briefly gets a fresh set of permits.
+    private static LoadingCache<Long, Semaphore> permits(int max) {
+        return CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .expireAfterAccess(5, TimeUnit.MINUTES)
+                .build(CacheLoader.from(() -> new Semaphore(Math.max(1, max))));
+    }
+}
@@ -24,6 +24,9 @@ import net.dv8tion.jda.api.events.interaction.command.UserContextInteractionEven
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.kodehawa.mantarobot.core.CommandRegistry;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.GuildCommandPolicy;
+
+import javax.annotation.Nullable;
 
 import static net.kodehawa.mantarobot.utils.StringUtils.splitArgs;
 
@@ -37,11 +40,8 @@ public class CommandProcessor {
     public boolean runContextUser(UserContextInteractionEvent event) {
         final long start = System.currentTimeMillis();
         // Run the actual command here.
-        REGISTRY.process(event);
-
-        // This could be done using a lock, but that would be a little too blocking. So just set a flag.
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            jedis.set("commands-running-" + event.getUser().getId(), String.valueOf(1));
+        try (var ignored = MantaroData.db().beginUnitOfWork()) {
+            REGISTRY.process(event);
         }
 
         final long end = System.currentTimeMillis();
@@ -53,11 +53,8 @@ public class CommandProcessor {
     public boolean runSlash(SlashCommandInteractionEvent event) {
         final long start = System.currentTimeMillis();
         // Run the actual command here.
-        REGISTRY.process(event);
-
-        // This could be done using a lock, but that would be a little too blocking. So just set a flag.
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            jedis.set("commands-running-" + event.getUser().getId(), String.valueOf(1));
+        try (var ignored = MantaroData.db().beginUnitOfWork()) {
+            REGISTRY.process(event);
         }
 
         final long end = System.currentTimeMillis();
@@ -69,8 +66,16 @@ public class CommandProcessor {
         REGISTRY.processAutocomplete(event);
     }
 
-    public boolean run(MessageReceivedEvent event) {
-        final long start = System.currentTimeMillis();
+    /**
+     * Finds out whether a message is a command: whether it starts with any of our prefixes, and whether the
+     * name after it is a command or a custom command of the guild. This is cheap (the policy and the custom command
+     * names are cached), so it's done for every message before it takes up a slot on the command executor.
+     *
+     * @param event The message.
+     * @return The command to run, or null if the message isn't one.
+     */
+    @Nullable
+    public MessageCommand resolve(MessageReceivedEvent event) {
         final var config = MantaroData.config().get();
         // The command executed, in raw form.
         var rawCmd = event.getMessage().getContentRaw();
@@ -79,9 +84,9 @@ public class CommandProcessor {
 
         // Mantaro prefixes.
         String[] prefix = config.prefix;
-        // Guild-specific prefix.
-        final var dbGuild = MantaroData.db().getGuild(event.getGuild());
-        var customPrefix = dbGuild.getGuildCustomPrefix();
+        // Guild-specific prefix. This runs for every message, so only the command policy is loaded, not the whole guild.
+        final var policy = MantaroData.db().getGuildCommandPolicy(event.getGuild());
+        var customPrefix = policy.getGuildCustomPrefix();
         // Possible mentions
         boolean isMention = false;
         String[] mentionPrefixes = {
@@ -111,12 +116,7 @@ public class CommandProcessor {
             rawCmd = rawCmd.substring(customPrefix.length());
             usedPrefix = customPrefix;
         } else if (usedPrefix == null) {
-            return false;
-        }
-
-        // This could be done using a lock, but that would be a little too blocking. So just set a flag.
-        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-            jedis.set("commands-running-" + event.getAuthor().getId(), String.valueOf(1));
+            return null;
         }
 
         // The command arguments to parse.
@@ -124,11 +124,34 @@ public class CommandProcessor {
         String cmdName = parts[0];
         String content = parts[1];
 
+        if (cmdName.isEmpty() || cmdName.length() >= 50) {
+            return null;
+        }
+
+        if (!REGISTRY.commands().containsKey(cmdName.toLowerCase()) &&
+                !MantaroData.db().getCustomCommandNames(event.getGuild().getId()).contains(cmdName)) {
+            return null;
+        }
+
+        return new MessageCommand(event, policy, cmdName, content, usedPrefix, isMention);
+    }
+
+    public boolean run(MessageCommand command) {
+        final long start = System.currentTimeMillis();
         // Run the actual command here.
-        REGISTRY.process(event, dbGuild, cmdName, content, usedPrefix, isMention);
+        // Entity updates done while running it are written once it's done (see UnitOfWork).
+        try (var ignored = MantaroData.db().beginUnitOfWork()) {
+            REGISTRY.process(command.event(), command.policy(), command.name(), command.content(), command.prefix(), command.mention());
+        }
 
         final long end = System.currentTimeMillis();
         commandTime.observe(end - start);
         return true;
     }
+
+    /**
+     * A message that resolved to a command, see {@link #resolve(MessageReceivedEvent)}.
+     */
+    public record MessageCommand(MessageReceivedEvent event, GuildCommandPolicy policy, String name,
+                                 String content, String prefix, boolean mention) { }
 }
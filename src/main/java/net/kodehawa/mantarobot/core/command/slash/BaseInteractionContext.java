@@ -439,7 +439,7 @@ public abstract class BaseInteractionContext<T extends GenericCommandInteraction
     }
 
     public boolean isUserBlacklisted(String id) {
-        return getMantaroData().getBlackListedUsers().contains(id);
+        return managedDatabase.getMantaroDataSnapshot().isBlackListedUser(id);
     }
 
     public JedisPool getJedisPool() {
@@ -18,9 +18,11 @@
 package net.kodehawa.mantarobot.core.listeners.command;
 
 import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.mongodb.MongoException;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.events.GenericEvent;
+import net.dv8tion.jda.api.events.interaction.GenericInteractionCreateEvent;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.GenericCommandInteractionEvent;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
@@ -29,6 +31,7 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.exceptions.PermissionException;
 import net.dv8tion.jda.api.hooks.EventListener;
 import net.kodehawa.mantarobot.commands.currency.profile.Badge;
+import net.kodehawa.mantarobot.core.command.processor.CommandDispatcher;
 import net.kodehawa.mantarobot.core.command.processor.CommandProcessor;
 import net.kodehawa.mantarobot.core.listeners.entities.CachedMessage;
 import net.kodehawa.mantarobot.data.I18n;
@@ -43,19 +46,23 @@ import org.slf4j.LoggerFactory;
 import java.util.IllegalFormatException;
 import java.util.Optional;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class CommandListener implements EventListener {
     private static final Logger log = LoggerFactory.getLogger(CommandListener.class);
     // Commands ran this session.
     private static int commandTotal = 0;
     private final CommandProcessor commandProcessor;
-    private final ExecutorService threadPool;
+    private final CommandDispatcher dispatcher;
     private final Cache<Long, Optional<CachedMessage>> messageCache;
+    // Users we recently told their command was dropped, so a burst only gets one notice.
+    private final Cache<Long, Boolean> rejectionNotices = CacheBuilder.newBuilder()
+            .expireAfterWrite(30, TimeUnit.SECONDS)
+            .build();
 
-    public CommandListener(CommandProcessor processor, ExecutorService threadPool, Cache<Long, Optional<CachedMessage>> messageCache) {
+    public CommandListener(CommandProcessor processor, CommandDispatcher dispatcher, Cache<Long, Optional<CachedMessage>> messageCache) {
         this.commandProcessor = processor;
-        this.threadPool = threadPool;
+        this.dispatcher = dispatcher;
         this.messageCache = messageCache;
     }
 
@@ -88,30 +95,59 @@ public class CommandListener implements EventListener {
                 return;
             }
 
-            threadPool.execute(() -> onCommand(msg));
+            // Only messages that are actually commands take up a slot on the command executor.
+            // Resolving needs the guild policy, which might not be cached, so it's done off the gateway thread,
+            // on the dispatcher's resolver (bounded too). We don't know it's a command if that rejects it, so no notice then.
+            dispatcher.resolve(() -> {
+                var command = resolve(msg);
+                if (command != null && !dispatcher.dispatch(msg.getGuild().getIdLong(), msg.getAuthor().getIdLong(), () -> onCommand(command))) {
+                    rejectMessage(msg);
+                }
+            });
         }
 
         if (event instanceof SlashCommandInteractionEvent slashInteraction) {
-            threadPool.execute(() -> onSlash(slashInteraction));
+            if (!dispatch(slashInteraction, () -> onSlash(slashInteraction))) {
+                rejectInteraction(slashInteraction);
+            }
         }
 
         if (event instanceof CommandAutoCompleteInteractionEvent autoCompleteInteraction) {
-            threadPool.execute(() -> commandProcessor.runAutocomplete(autoCompleteInteraction));
+            dispatch(autoCompleteInteraction, () -> commandProcessor.runAutocomplete(autoCompleteInteraction));
         }
 
         if (event instanceof UserContextInteractionEvent userInteraction) {
-            threadPool.execute(() -> onUserContext(userInteraction));
+            if (!dispatch(userInteraction, () -> onUserContext(userInteraction))) {
+                rejectInteraction(userInteraction);
+            }
+        }
+    }
+
+    private boolean dispatch(GenericInteractionCreateEvent event, Runnable task) {
+        var guild = event.getGuild();
+        return dispatcher.dispatch(guild == null ? 0 : guild.getIdLong(), event.getUser().getIdLong(), task);
+    }
+
+    // Interactions need an answer, or the user just gets "the application did not respond".
+    private void rejectInteraction(GenericCommandInteractionEvent event) {
+        event.reply(EmoteReference.STOPWATCH + "I'm handling too many commands right now, try again in a few seconds.")
+                .setEphemeral(true)
+                .queue(success -> { }, failure -> { });
+    }
+
+    // Same as rejectInteraction, but at most once every 30 seconds per user, as nothing stops them from spamming it.
+    private void rejectMessage(MessageReceivedEvent event) {
+        if (rejectionNotices.asMap().putIfAbsent(event.getAuthor().getIdLong(), true) != null) {
+            return;
         }
+
+        event.getChannel().sendMessage(EmoteReference.STOPWATCH + "I'm handling too many commands right now, try again in a few seconds.")
+                .queue(success -> { }, failure -> { });
     }
 
     private void onSlash(SlashCommandInteractionEvent event) {
         try {
             if (commandProcessor.runSlash(event)) {
-                // Remove running flag
-                try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    jedis.del("commands-running-" + event.getUser().getId());
-                }
-
                 commandTotal++;
             }
         } catch (MongoException e) {
@@ -157,11 +193,6 @@ public class CommandListener implements EventListener {
     private void onUserContext(UserContextInteractionEvent event) {
         try {
             if (commandProcessor.runContextUser(event)) {
-                // Remove running flag
-                try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    jedis.del("commands-running-" + event.getUser().getId());
-                }
-
                 commandTotal++;
             }
         } catch (MongoException e) {
@@ -202,14 +233,22 @@ public class CommandListener implements EventListener {
         }
     }
 
-    private void onCommand(MessageReceivedEvent event) {
+    private CommandProcessor.MessageCommand resolve(MessageReceivedEvent event) {
         try {
-            if (commandProcessor.run(event)) {
-                // Remove running flag
-                try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
-                    jedis.del("commands-running-" + event.getAuthor().getId());
-                }
+            return commandProcessor.resolve(event);
+        } catch (MongoException e) {
+            log.error("Database on fire!", e);
+        } catch (Exception e) {
+            log.error("Error resolving command on message {}", event.getMessageId(), e);
+        }
 
+        return null;
+    }
+
+    private void onCommand(CommandProcessor.MessageCommand command) {
+        var event = command.event();
+        try {
+            if (commandProcessor.run(command)) {
                 commandTotal++;
             }
         } catch (MongoException e) {
@@ -404,7 +404,7 @@ public class Context implements IContext {
     }
 
     public boolean isUserBlacklisted(String id) {
-        return getMantaroData().getBlackListedUsers().contains(id);
+        return managedDatabase.getMantaroDataSnapshot().isBlackListedUser(id);
     }
 
     public User retrieveUserById(String id) {
@@ -23,12 +23,22 @@ import net.kodehawa.mantarobot.db.entities.MongoUser;
 
 public class I18nContext {
     private MongoGuild guildData;
-    private MongoUser userData;
+    private String userLanguage;
     private I18n i18n = null;
 
     public I18nContext(MongoGuild guildData, MongoUser userData) {
         this.guildData = guildData;
-        this.userData = userData;
+        this.userLanguage = userData == null ? null : userData.getLang();
+    }
+
+    /**
+     * Same as the constructor, but only with the language of the user, as given by
+     * {@link net.kodehawa.mantarobot.db.ManagedDatabase#getUserLanguage(String)}.
+     */
+    public static I18nContext of(MongoGuild guildData, String userLanguage) {
+        var context = new I18nContext(guildData, null);
+        context.userLanguage = userLanguage;
+        return context;
     }
 
     public I18nContext(I18n i18n) {
@@ -53,15 +63,15 @@ public class I18nContext {
             return i18n.getLanguage();
         }
 
-        if (guildData == null && userData == null) {
+        if (guildData == null && userLanguage == null) {
             return "en_US";
         }
 
         String lang;
-        if (userData == null)
-            lang = guildData.getLang();
+        if (guildData == null)
+            lang = userLanguage;
         else
-            lang = userData.getLang() == null || userData.getLang().isEmpty() ? guildData.getLang() : userData.getLang();
+            lang = userLanguage == null || userLanguage.isEmpty() ? guildData.getLang() : userLanguage;
 
         I18n context = I18n.getForLanguage(lang);
         return context == null ? "en_US" : lang;
@@ -61,6 +61,24 @@ public class Config {
     public int memberCacheSize = 10_000;
     public boolean handleRatelimits = true;
     public boolean testing = false;
+    // Set size to 0 to disable. Expiry is what bounds staleness between nodes, so keep it low.
+    public int entityCacheSize = 5_000;
+    public long entityCacheExpirySeconds = 15;
+    public boolean coalesceEntityWrites = true;
+    // Custom commands are only ever changed through commands on the node that has the guild, which drops the names
+    // right away, so this can be long: it only bounds staleness for edits made straight on the database.
+    public long customCommandNamesExpiryMinutes = 60;
+    // "cached" (unbounded pool, as it always was) or "bounded" (fixed pool with per-guild/user limits).
+    public String commandExecutorMode = "cached";
+    public int commandExecutorThreads = 200;
+    public int commandQueueSize = 1_000;
+    public int maxCommandsInFlight = 1_000;
+    public int maxCommandsPerGuild = 20;
+    public int maxCommandsPerUser = 3;
+    // Threads that check whether a message is a command (bounded mode). The check can go to Mongo on a cache miss.
+    public int commandResolverThreads = 16;
+    // Answers "still on cooldown" without going to Redis, see IncreasingRateLimiter.
+    public boolean ratelimitNearCache = false;
 
     public Config() { }
 
@@ -225,6 +243,54 @@ public class Config {
         return isPremiumBot() || isSelfHost() || isTesting();
     }
 
+    public int getEntityCacheSize() {
+        return entityCacheSize;
+    }
+
+    public long getEntityCacheExpirySeconds() {
+        return entityCacheExpirySeconds;
+    }
+
+    public long getCustomCommandNamesExpiryMinutes() {
+        return customCommandNamesExpiryMinutes;
+    }
+
+    public boolean isCoalesceEntityWrites() {
+        return coalesceEntityWrites;
+    }
+
+    public String getCommandExecutorMode() {
+        return commandExecutorMode;
+    }
+
+    public int getCommandExecutorThreads() {
+        return commandExecutorThreads;
+    }
+
+    public int getCommandQueueSize() {
+        return commandQueueSize;
+    }
+
+    public int getMaxCommandsInFlight() {
+        return maxCommandsInFlight;
+    }
+
+    public int getMaxCommandsPerGuild() {
+        return maxCommandsPerGuild;
+    }
+
+    public int getMaxCommandsPerUser() {
+        return maxCommandsPerUser;
+    }
+
+    public int getCommandResolverThreads() {
+        return commandResolverThreads;
+    }
+
+    public boolean isRatelimitNearCache() {
+        return ratelimitNearCache;
+    }
+
     public String getMongoUri() {
         return mongoUri;
     }
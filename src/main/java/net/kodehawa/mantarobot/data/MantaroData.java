@@ -32,10 +32,13 @@ import org.bson.codecs.pojo.Conventions;
 import org.bson.codecs.pojo.PojoCodecProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
 
 import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static com.mongodb.MongoClientSettings.getDefaultCodecRegistry;
 import static org.bson.codecs.configuration.CodecRegistries.fromProviders;
@@ -105,4 +108,48 @@ public class MantaroData {
     public static JedisPool getDefaultJedisPool() {
         return MantaroData.defaultJedisPool;
     }
+
+    /**
+     * Listens to a Redis channel on its own daemon thread, subscribing again whenever the connection drops.
+     * Messages are handled on that thread, one at a time, and anything the listener throws is logged.
+     * Messages published while it's reconnecting are lost, so pair this with some periodic refresh.
+     *
+     * @param threadName The name of the thread.
+     * @param channel The channel to listen to.
+     * @param listener What to do with each message.
+     */
+    public static void subscribe(String threadName, String channel, Consumer<String> listener) {
+        var pubSub = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+                try {
+                    listener.accept(message);
+                } catch (Exception e) {
+                    log.error("Error handling message {} on {}", message, channel, e);
+                }
+            }
+        };
+
+        var thread = new Thread(() -> {
+            var config = config().get();
+            while (true) {
+                // Can't use the pool here: its connections time out on reads, and subscribe blocks until unsubscribed.
+                try (var jedis = new Jedis(config.getJedisPoolAddress(), config.getJedisPoolPort(), 0)) {
+                    jedis.subscribe(pubSub, channel);
+                } catch (Exception e) {
+                    log.warn("Lost subscription to {}, retrying in 5 seconds", channel, e);
+                }
+
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }, threadName);
+
+        thread.setDaemon(true);
+        thread.start();
+    }
 }
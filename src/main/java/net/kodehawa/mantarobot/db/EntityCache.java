@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache for a single entity type.
+ * We keep the raw BSON document and decode a new entity on every hit, as every caller gets to mutate what it receives
+ * (and most of them never save it back), so handing out a shared instance would leak unsaved changes between commands.
+ * Absent documents are cached too, as most users that run commands have never saved anything.
+ */
+public class EntityCache<T extends ManagedMongoObject> {
+    // Marker for "not in the database". Compared by identity, never handed out.
+    private static final BsonDocument ABSENT = new BsonDocument();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    private final String name;
+    private final Codec<T> codec;
+    private final Cache<String, BsonDocument> cache;
+    // Bumped on every invalidation, so a load that started before a write can't put the old document back.
+    private final AtomicLong epoch = new AtomicLong();
+
+    public EntityCache(@Nonnull String name, @Nonnull Class<T> type, @Nonnull CodecRegistry registry, long maxSize, long expiry, TimeUnit unit) {
+        this.name = name;
+        this.codec = registry.get(type);
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .maximumSize(maxSize)
+                .expireAfterWrite(expiry, unit)
+                .<String, BsonDocument>removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        Metrics.ENTITY_CACHE.labels(name, "eviction").inc();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Looks up the entity with the specified id, going to the database on a miss.
+     *
+     * @param id The id of the document.
+     * @param collection The collection to look into on a miss, with {@link BsonDocument} as the document class.
+     * @return A freshly decoded entity, or null if it doesn't exist in the database.
+     */
+    @Nullable
+    public T get(@Nonnull String id, @Nonnull MongoCollection<BsonDocument> collection) {
+        var document = cache.getIfPresent(id);
+        if (document != null) {
+            Metrics.ENTITY_CACHE.labels(name, "hit").inc();
+            return decode(document);
+        }
+
+        Metrics.ENTITY_CACHE.labels(name, "miss").inc();
+        var current = epoch.get();
+        document = collection.find().filter(Filters.eq(id)).first();
+        if (epoch.get() == current) {
+            cache.put(id, document == null ? ABSENT : document);
+        }
+
+        return document == null ? null : decode(document);
+    }
+
+    public void invalidate(@Nonnull String id) {
+        epoch.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    @Nullable
+    private T decode(BsonDocument document) {
+        if (document == ABSENT) {
+            return null;
+        }
+
+        return codec.decode(new BsonDocumentReader(document), DECODER_CONTEXT);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import com.mongodb.client.model.Projections;
+import net.dv8tion.jda.api.entities.Role;
+import net.kodehawa.mantarobot.core.modules.commands.base.CommandCategory;
+import net.kodehawa.mantarobot.db.entities.MongoGuild;
+import net.kodehawa.mantarobot.utils.ImmutableLongMap;
+import net.kodehawa.mantarobot.utils.ImmutableLongSet;
+import org.bson.conversions.Bson;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only view of the parts of {@link MongoGuild} that are checked before running a command: the custom prefix
+ * and the disable lists. It's loaded with a projection of only those fields, so guilds with long autorole lists,
+ * welcome messages and the like don't pay to decode all of that on every message.
+ * <p>
+ * The rules are compiled once per version of the guild config: snowflakes go into primitive hash sets, and
+ * commands and categories into bitsets, so each check is a couple of lookups that don't allocate.
+ * This is immutable and shared between threads. Options write to the full {@link MongoGuild} as usual,
+ * and saving it drops the cached policy.
+ */
+public final class GuildCommandPolicy {
+    // Keep this in sync with what's read in the constructor.
+    static final Bson PROJECTION = Projections.include(
+            "guildCustomPrefix", "commandWarningDisplay",
+            "disabledCommands", "channelSpecificDisabledCommands", "roleSpecificDisabledCommands",
+            "disabledCategories", "channelSpecificDisabledCategories", "roleSpecificDisabledCategories",
+            "disabledUsers", "disabledChannels", "disabledRoles"
+    );
+
+    // Command name -> bit index on the command bitsets. Shared between every guild, only ever grows with names
+    // that were disabled somewhere (options check they're real commands first), so it stays small.
+    private static final Map<String, Integer> COMMAND_INDEX = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_COMMAND_INDEX = new AtomicInteger();
+
+    private final String id;
+    private final String guildCustomPrefix;
+    private final boolean commandWarningDisplay;
+    private final BitSet disabledCommands;
+    private final long disabledCategories;
+    private final ImmutableLongMap<Rules> channelRules;
+    private final ImmutableLongMap<Rules> roleRules;
+    private final ImmutableLongSet disabledUsers;
+    private final ImmutableLongSet disabledChannels;
+    private final ImmutableLongSet disabledRoles;
+
+    private GuildCommandPolicy(MongoGuild guild) {
+        this.id = guild.getId();
+        this.guildCustomPrefix = guild.getGuildCustomPrefix();
+        this.commandWarningDisplay = guild.isCommandWarningDisplay();
+        this.disabledCommands = commandBits(guild.getDisabledCommands());
+        this.disabledCategories = categoryMask(guild.getDisabledCategories());
+        this.channelRules = rules(guild.getChannelSpecificDisabledCommands(), guild.getChannelSpecificDisabledCategories());
+        this.roleRules = rules(guild.getRoleSpecificDisabledCommands(), guild.getRoleSpecificDisabledCategories());
+        this.disabledUsers = ImmutableLongSet.ofSnowflakes(guild.getDisabledUsers());
+        this.disabledChannels = ImmutableLongSet.ofSnowflakes(guild.getDisabledChannels());
+        this.disabledRoles = ImmutableLongSet.ofSnowflakes(guild.getDisabledRoles());
+    }
+
+    /**
+     * Builds a policy out of a guild. The guild can be partial, as long as it has every field in {@link #PROJECTION}.
+     *
+     * @param guild The guild to read from.
+     * @return The policy.
+     */
+    @Nonnull
+    public static GuildCommandPolicy of(@Nonnull MongoGuild guild) {
+        return new GuildCommandPolicy(guild);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public String getGuildCustomPrefix() {
+        return guildCustomPrefix;
+    }
+
+    public boolean isCommandWarningDisplay() {
+        return commandWarningDisplay;
+    }
+
+    public boolean isCommandDisabled(String command) {
+        return hasCommand(disabledCommands, command);
+    }
+
+    public boolean isCommandDisabled(long channelId, String command) {
+        var rules = channelRules.get(channelId);
+        return rules != null && hasCommand(rules.commands, command);
+    }
+
+    public boolean isCategoryDisabled(@Nullable CommandCategory category) {
+        return hasCategory(disabledCategories, category);
+    }
+
+    public boolean isCategoryDisabled(long channelId, @Nullable CommandCategory category) {
+        var rules = channelRules.get(channelId);
+        return rules != null && hasCategory(rules.categories, category);
+    }
+
+    public boolean isUserDisabled(long userId) {
+        return disabledUsers.contains(userId);
+    }
+
+    public boolean isChannelDisabled(long channelId) {
+        return disabledChannels.contains(channelId);
+    }
+
+    public boolean isAnyRoleDisabled(List<Role> roles) {
+        if (disabledRoles.isEmpty()) {
+            return false;
+        }
+
+        // Indexed loops, as this runs for every role of every member that runs a command.
+        for (int i = 0; i < roles.size(); i++) {
+            if (disabledRoles.contains(roles.get(i).getIdLong())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isCommandDisabledForAnyRole(List<Role> roles, String command) {
+        if (roleRules.isEmpty()) {
+            return false;
+        }
+
+        var index = COMMAND_INDEX.get(command);
+        if (index == null) {
+            return false;
+        }
+
+        for (int i = 0; i < roles.size(); i++) {
+            var rules = roleRules.get(roles.get(i).getIdLong());
+            if (rules != null && rules.commands.get(index)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public boolean isCategoryDisabledForAnyRole(List<Role> roles, @Nullable CommandCategory category) {
+        if (roleRules.isEmpty() || category == null) {
+            return false;
+        }
+
+        for (int i = 0; i < roles.size(); i++) {
+            var rules = roleRules.get(roles.get(i).getIdLong());
+            if (rules != null && hasCategory(rules.categories, category)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean hasCommand(BitSet bits, String command) {
+        if (bits.isEmpty()) {
+            return false;
+        }
+
+        var index = COMMAND_INDEX.get(command);
+        return index != null && bits.get(index);
+    }
+
+    private static boolean hasCategory(long mask, @Nullable CommandCategory category) {
+        return category != null && (mask & (1L << category.ordinal())) != 0;
+    }
+
+    private static BitSet commandBits(@Nullable Collection<String> commands) {
+        var bits = new BitSet();
+        if (commands != null) {
+            for (var command : commands) {
+                if (command != null) {
+                    bits.set(COMMAND_INDEX.computeIfAbsent(command, c -> NEXT_COMMAND_INDEX.getAndIncrement()));
+                }
+            }
+        }
+
+        return bits;
+    }
+
+    private static long categoryMask(@Nullable Collection<CommandCategory> categories) {
+        var mask = 0L;
+        if (categories != null) {
+            for (var category : categories) {
+                if (category != null) {
+                    mask |= 1L << category.ordinal();
+                }
+            }
+        }
+
+        return mask;
+    }
+
+    // Merges the per-snowflake command and category lists, so a role or channel is a single lookup.
+    private static ImmutableLongMap<Rules> rules(@Nullable Map<String, List<String>> commands,
+                                                 @Nullable Map<String, List<CommandCategory>> categories) {
+        Map<String, Rules> rules = new HashMap<>();
+        if (commands != null) {
+            commands.forEach((key, value) -> {
+                var bits = commandBits(value);
+                if (key != null && !bits.isEmpty()) {
+                    rules.put(key, new Rules(bits, 0));
+                }
+            });
+        }
+
+        if (categories != null) {
+            categories.forEach((key, value) -> {
+                var mask = categoryMask(value);
+                if (key != null && mask != 0) {
+                    var existing = rules.get(key);
+                    rules.put(key, new Rules(existing == null ? new BitSet() : existing.commands, mask));
+                }
+            });
+        }
+
+        return ImmutableLongMap.ofSnowflakes(rules);
+    }
+
+    private static final class Rules {
+        // Never modified after construction.
+        private final BitSet commands;
+        private final long categories;
+
+        private Rules(BitSet commands, long categories) {
+            this.commands = commands;
+            this.categories = categories;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.db;
+
+import com.google.common.collect.Lists;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.entities.MongoUser;
+import net.kodehawa.mantarobot.db.entities.Player;
+import net.kodehawa.mantarobot.db.entities.PlayerStats;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Leaderboards kept in Redis sorted sets, one per counter, so showing one (or someone's rank) doesn't sort a whole collection.
+ * Every write that goes through {@link ManagedDatabase} updates the sets of the fields it touches. Only positive values
+ * are kept: people with nothing on a counter aren't ranked at all, which keeps the sets a lot smaller.
+ * <p>
+ * Anything that was missed (Redis being down, writes done outside of the bot) is fixed by {@link #rebuildAll()},
+ * which the master node runs once a day.
+ */
+public class Leaderboards {
+    private static final Logger log = LoggerFactory.getLogger(Leaderboards.class);
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final long REBUILD_SEEN_EXPIRY_SECONDS = 60 * 60;
+
+    public enum Board {
+        MONEY(Player.DB_TABLE, "newMoney", Player.class, Player::getNewMoney),
+        OLD_MONEY(Player.DB_TABLE, "oldMoney", Player.class, Player::getOldMoney),
+        REPUTATION(Player.DB_TABLE, "reputation", Player.class, Player::getReputation),
+        DAILY(Player.DB_TABLE, "dailyStreak", Player.class, Player::getDailyStreak),
+        GAMES(Player.DB_TABLE, "gamesWon", Player.class, Player::getGamesWon),
+        GAMBLE(PlayerStats.DB_TABLE, "gambleWins", PlayerStats.class, PlayerStats::getGambleWins),
+        SLOTS(PlayerStats.DB_TABLE, "slotsWins", PlayerStats.class, PlayerStats::getSlotsWins),
+        CLAIM(MongoUser.DB_TABLE, "timesClaimed", MongoUser.class, MongoUser::getTimesClaimed);
+
+        private static final Map<String, List<Board>> BY_TABLE = Arrays.stream(values())
+                .collect(Collectors.groupingBy(Board::getTable));
+
+        private final String table;
+        private final String field;
+        private final ToLongFunction<Object> getter;
+
+        <T> Board(String table, String field, Class<T> type, ToLongFunction<T> getter) {
+            this.table = table;
+            this.field = field;
+            this.getter = object -> getter.applyAsLong(type.cast(object));
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        String getKey() {
+            return "leaderboard:" + table + ":" + field;
+        }
+    }
+
+    public record Entry(String id, long score) { }
+
+    private final ManagedDatabase database;
+
+    Leaderboards(ManagedDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Gets the top of a leaderboard.
+     *
+     * @param board The leaderboard.
+     * @param count How many entries to get.
+     * @return The entries, highest first. Empty if the leaderboard hasn't been built yet (or Redis is down).
+     */
+    @Nonnull
+    public List<Entry> top(@Nonnull Board board, int count) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var tuples = jedis.zrevrangeWithScores(board.getKey(), 0, count - 1);
+            List<Entry> entries = new ArrayList<>(tuples.size());
+            for (var tuple : tuples) {
+                entries.add(new Entry(tuple.getElement(), (long) tuple.getScore()));
+            }
+
+            return entries;
+        } catch (Exception e) {
+            log.error("Couldn't read leaderboard {}", board, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Gets the position of someone on a leaderboard.
+     *
+     * @param board The leaderboard.
+     * @param id The id of the document (usually the user id).
+     * @return The position, starting at 1, or empty if they aren't on it.
+     */
+    @Nonnull
+    public OptionalLong rank(@Nonnull Board board, @Nonnull String id) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var rank = jedis.zrevrank(board.getKey(), id);
+            return rank == null ? OptionalLong.empty() : OptionalLong.of(rank + 1);
+        } catch (Exception e) {
+            log.error("Couldn't read rank of {} on leaderboard {}", id, board, e);
+            return OptionalLong.empty();
+        }
+    }
+
+    // Called after writing fields of a document. Fields that aren't on a leaderboard are ignored, without touching Redis.
+    void record(String table, String id, Map<String, ?> fields) {
+        var boards = Board.BY_TABLE.get(table);
+        if (boards == null) {
+            return;
+        }
+
+        Map<Board, Object> changed = new HashMap<>();
+        for (var board : boards) {
+            if (fields.containsKey(board.getField())) {
+                changed.put(board, fields.get(board.getField()));
+            }
+        }
+
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var pipeline = jedis.pipelined();
+            changed.forEach((board, value) -> {
+                var score = value instanceof Number number ? number.longValue() : 0;
+                if (score > 0) {
+                    pipeline.zadd(board.getKey(), score, id);
+                } else {
+                    pipeline.zrem(board.getKey(), id);
+                }
+            });
+
+            pipeline.sync();
+        } catch (Exception e) {
+            // The daily rebuild picks it up.
+            log.error("Couldn't update leaderboards for {}:{}", table, id, e);
+        }
+    }
+
+    // Called after replacing a whole document.
+    void record(ManagedMongoObject object) {
+        var boards = Board.BY_TABLE.get(object.getTableName());
+        if (boards == null) {
+            return;
+        }
+
+        Map<String, Object> fields = new HashMap<>();
+        for (var board : boards) {
+            fields.put(board.getField(), board.getter.applyAsLong(object));
+        }
+
+        record(object.getTableName(), object.getId(), fields);
+    }
+
+    // Called after deleting a document.
+    void remove(String table, String id) {
+        var boards = Board.BY_TABLE.get(table);
+        if (boards == null) {
+            return;
+        }
+
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var pipeline = jedis.pipelined();
+            for (var board : boards) {
+                pipeline.zrem(board.getKey(), id);
+            }
+
+            pipeline.sync();
+        } catch (Exception e) {
+            log.error("Couldn't remove {}:{} from leaderboards", table, id, e);
+        }
+    }
+
+    /**
+     * Rebuilds every leaderboard. Meant to be run on a single node.
+     */
+    public void rebuildAll() {
+        for (var board : Board.values()) {
+            try {
+                rebuild(board);
+            } catch (Exception e) {
+                log.error("Couldn't rebuild leaderboard {}", board, e);
+            }
+        }
+    }
+
+    /**
+     * Adds everyone with a positive value to a leaderboard, and then drops everyone on it that the scan didn't see,
+     * after checking them against the database. Writes done while this runs aren't lost: at worst an entry
+     * gets a value that's a few milliseconds old, until the next write to it. The scan uses an index on the field,
+     * which is created here if it's missing.
+     *
+     * @param board The leaderboard to rebuild.
+     */
+    public void rebuild(@Nonnull Board board) {
+        var start = System.currentTimeMillis();
+        var key = board.getKey();
+        // Everyone the scan saw, so the ones it didn't can be found in Redis instead of holding every id here.
+        var seenKey = key + ":rebuild";
+        var collection = database.dbMantaro().getCollection(board.getTable());
+        collection.createIndex(Indexes.descending(board.getField()));
+        var count = 0;
+        var removed = 0;
+
+        // Connections are borrowed per batch: the scan takes a while, and the pool is shared with everything else.
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            jedis.del(seenKey);
+        }
+
+        Map<String, Double> batch = new HashMap<>();
+        var documents = collection.find(Filters.gt(board.getField(), 0))
+                .projection(Projections.include(board.getField()))
+                .batchSize(REBUILD_BATCH_SIZE);
+
+        for (var document : documents) {
+            var value = document.get(board.getField(), Number.class);
+            if (value == null) {
+                continue;
+            }
+
+            batch.put(String.valueOf(document.get("_id")), (double) value.longValue());
+            if (batch.size() >= REBUILD_BATCH_SIZE) {
+                count += batch.size();
+                addBatch(key, seenKey, batch);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            count += batch.size();
+            addBatch(key, seenKey, batch);
+        }
+
+        // Entries that dropped to 0 without us noticing aren't in the scan. Someone could have gone over 0
+        // after the scan passed them, though, so they're checked against the database before being dropped.
+        List<String> unseen;
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            unseen = new ArrayList<>(jedis.zdiff(key, seenKey));
+            jedis.del(seenKey);
+        }
+
+        for (var ids : Lists.partition(unseen, REBUILD_BATCH_SIZE)) {
+            Map<String, Long> actual = new HashMap<>();
+            for (Document document : collection.find(Filters.in("_id", ids)).projection(Projections.include(board.getField()))) {
+                var value = document.get(board.getField(), Number.class);
+                actual.put(String.valueOf(document.get("_id")), value == null ? 0 : value.longValue());
+            }
+
+            try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+                var pipeline = jedis.pipelined();
+                for (var id : ids) {
+                    var value = actual.getOrDefault(id, 0L);
+                    if (value > 0) {
+                        pipeline.zadd(key, value, id);
+                    } else {
+                        pipeline.zrem(key, id);
+                        removed++;
+                    }
+                }
+
+                pipeline.sync();
+            }
+        }
+
+        log.info("Rebuilt leaderboard {} with {} entries ({} removed) in {}ms",
+                board, count, removed, System.currentTimeMillis() - start);
+    }
+
+    private static void addBatch(String key, String seenKey, Map<String, Double> batch) {
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            var pipeline = jedis.pipelined();
+            pipeline.zadd(key, batch);
+            pipeline.zadd(seenKey, batch);
+            // In case this node dies halfway through.
+            pipeline.expire(seenKey, REBUILD_SEEN_EXPIRY_SECONDS);
+            pipeline.sync();
+        }
+    }
+}
@@ -17,20 +17,32 @@
 
 package net.kodehawa.mantarobot.db;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.math.LongMath;
+import com.mongodb.MongoServerException;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Field;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.kodehawa.mantarobot.ExtraRuntimeOptions;
+import net.kodehawa.mantarobot.data.MantaroData;
 import net.kodehawa.mantarobot.db.entities.CustomCommand;
 import net.kodehawa.mantarobot.db.entities.MongoGuild;
 import net.kodehawa.mantarobot.db.entities.MantaroObject;
@@ -39,8 +51,12 @@ import net.kodehawa.mantarobot.db.entities.MongoUser;
 import net.kodehawa.mantarobot.db.entities.Player;
 import net.kodehawa.mantarobot.db.entities.PlayerStats;
 import net.kodehawa.mantarobot.db.entities.PremiumKey;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.bson.BsonDocument;
+import org.bson.BsonType;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,16 +64,137 @@ import javax.annotation.CheckReturnValue;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class ManagedDatabase {
     private static final Logger log = LoggerFactory.getLogger(ManagedDatabase.class);
+    private static final int DUPLICATE_KEY = 11000;
+    // Transfers that haven't been settled yet. See transferFieldValue.
+    private static final String TRANSFERS_TABLE = "transfers";
+    // Everything BirthdayTask reads off a guild. Keep in sync with it.
+    private static final Bson BIRTHDAY_GUILD_PROJECTION = Projections.include(
+            "birthdayChannel", "birthdayRole", "birthdayMessage", "birthdayBlockedIds",
+            "allowedBirthdays", "guildAutoRole", "lang"
+    );
     private final MongoClient mongoClient;
+    // Keyed by table name, so writes can find the cache to invalidate from the object alone.
+    private final Map<String, EntityCache<?>> entityCaches = new HashMap<>();
+    // Users, players and stats aren't cached: they get saved back whole, and the same user runs commands on several
+    // nodes, so a stale copy on one node would write over what another one saved (money, items, streaks...).
+    // What commands need of the user up front (the language) is cached on its own, as it's never saved back.
+    private final EntityCache<MongoGuild> guildCache;
+    private final EntityCache<CustomCommand> customCommandCache;
+    // Guild id -> names of its custom commands. Anything that isn't in here doesn't exist, so typos never reach Mongo.
+    private final Cache<String, Set<String>> customCommandNames;
+    private final AtomicLong customCommandNamesEpoch = new AtomicLong();
+    // Immutable, so it's shared instead of decoded on every hit like the entity caches.
+    private final Cache<String, GuildCommandPolicy> guildPolicyCache;
+    private final AtomicLong guildPolicyEpoch = new AtomicLong();
+    // User id -> language ("" if they didn't pick one). Every command needs it, and it's all it needs of the user
+    // before running. Expires like the guild cache, which bounds how long another node can show the old language.
+    private final Cache<String, String> userLanguageCache;
+    private final AtomicLong userLanguageEpoch = new AtomicLong();
+    // MongoUser#isPremium and MongoGuild#isPremium look up the key (and sometimes Patreon), so the result is kept for a bit.
+    private final Cache<String, Boolean> premiumUserCache;
+    private final Cache<String, Boolean> premiumGuildCache;
+    private volatile MantaroDataSnapshot mantaroDataSnapshot;
+    private final Leaderboards leaderboards = new Leaderboards(this);
 
     public ManagedDatabase(@Nonnull MongoClient mongoClient) {
         this.mongoClient = mongoClient;
+        this.guildCache = createCache(MongoGuild.DB_TABLE, MongoGuild.class);
+        this.customCommandCache = createCache(CustomCommand.DB_TABLE, CustomCommand.class);
+
+        var config = MantaroData.config().get();
+        this.customCommandNames = CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .maximumSize(config.getEntityCacheSize())
+                .expireAfterWrite(config.getCustomCommandNamesExpiryMinutes(), TimeUnit.MINUTES)
+                .build();
+        this.guildPolicyCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .maximumSize(config.getEntityCacheSize())
+                .expireAfterWrite(config.getEntityCacheExpirySeconds(), TimeUnit.SECONDS)
+                .build();
+        this.userLanguageCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .maximumSize(config.getEntityCacheSize())
+                .expireAfterWrite(config.getEntityCacheExpirySeconds(), TimeUnit.SECONDS)
+                .build();
+        this.premiumUserCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .maximumSize(config.getEntityCacheSize())
+                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .build();
+        this.premiumGuildCache = CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .maximumSize(config.getEntityCacheSize())
+                .expireAfterWrite(5, TimeUnit.MINUTES)
+                .build();
+    }
+
+    private <T extends ManagedMongoObject> EntityCache<T> createCache(String table, Class<T> clazz) {
+        var config = MantaroData.config().get();
+        var cache = new EntityCache<>(table, clazz, dbMantaro().getCodecRegistry(),
+                config.getEntityCacheSize(), config.getEntityCacheExpirySeconds(), TimeUnit.SECONDS
+        );
+
+        entityCaches.put(table, cache);
+        return cache;
+    }
+
+    private MongoCollection<BsonDocument> rawCollection(String table) {
+        return dbMantaro().getCollection(table, BsonDocument.class);
+    }
+
+    private void invalidateCached(ManagedMongoObject object) {
+        invalidateCached(object.getTableName(), object.getId());
+    }
+
+    private void invalidateCached(String table, String id) {
+        var cache = entityCaches.get(table);
+        if (cache != null) {
+            cache.invalidate(id);
+        }
+
+        if (MongoGuild.DB_TABLE.equals(table)) {
+            guildPolicyEpoch.incrementAndGet();
+            guildPolicyCache.invalidate(id);
+            premiumGuildCache.invalidate(id);
+        }
+
+        if (MongoUser.DB_TABLE.equals(table)) {
+            premiumUserCache.invalidate(id);
+            userLanguageEpoch.incrementAndGet();
+            userLanguageCache.invalidate(id);
+        }
+
+        // Keys don't know who holds them, and they change rarely (activations and renewals), so just start over.
+        if (PremiumKey.DB_TABLE.equals(table)) {
+            premiumUserCache.invalidateAll();
+            premiumGuildCache.invalidateAll();
+        }
+
+        if (CustomCommand.DB_TABLE.equals(table)) {
+            // Custom command ids are guildId:name.
+            var separator = id.indexOf(':');
+            if (separator > 0) {
+                customCommandNamesEpoch.incrementAndGet();
+                customCommandNames.invalidate(id.substring(0, separator));
+            }
+        }
     }
 
     private static void log(String message, Object... fmtArgs) {
@@ -76,14 +213,59 @@ public class ManagedDatabase {
         return mongoClient.getDatabase("mantaro");
     }
 
+    @Nonnull
+    public Leaderboards getLeaderboards() {
+        return leaderboards;
+    }
+
     @Nullable
     @CheckReturnValue
     public CustomCommand getCustomCommand(@Nonnull String guildId, @Nonnull String name) {
+        if (!getCustomCommandNames(guildId).contains(name)) {
+            Metrics.ENTITY_CACHE.labels("custom_command", "negative").inc();
+            return null;
+        }
+
         var id = guildId + ":" + name;
         log("Requesting Custom Command {} from MongoDB", id);
+        return customCommandCache.get(id, rawCollection(CustomCommand.DB_TABLE));
+    }
 
-        MongoCollection<CustomCommand> collection = dbMantaro().getCollection(CustomCommand.DB_TABLE, CustomCommand.class);
-        return collection.find().filter(Filters.eq(id)).first();
+    /**
+     * Gets the names of every custom command on a guild. It's loaded once per guild with a projection of only the ids,
+     * and dropped whenever a custom command of that guild is saved or deleted.
+     *
+     * @param guildId The id of the guild.
+     * @return An immutable set of the names.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Set<String> getCustomCommandNames(@Nonnull String guildId) {
+        var names = customCommandNames.getIfPresent(guildId);
+        if (names != null) {
+            Metrics.ENTITY_CACHE.labels("custom_command_names", "hit").inc();
+            return names;
+        }
+
+        log("Requesting Custom Command names on guild {} from MongoDB", guildId);
+        Metrics.ENTITY_CACHE.labels("custom_command_names", "miss").inc();
+
+        var epoch = customCommandNamesEpoch.get();
+        var prefix = guildId + ":";
+        var loaded = new HashSet<String>();
+        for (var document : rawCollection(CustomCommand.DB_TABLE).find(Filters.eq("guildId", guildId)).projection(Projections.include("_id"))) {
+            var id = document.get("_id");
+            if (id != null && id.isString() && id.asString().getValue().startsWith(prefix)) {
+                loaded.add(id.asString().getValue().substring(prefix.length()));
+            }
+        }
+
+        names = Collections.unmodifiableSet(loaded);
+        if (customCommandNamesEpoch.get() == epoch) {
+            customCommandNames.put(guildId, names);
+        }
+
+        return names;
     }
 
     @Nullable
@@ -139,8 +321,8 @@ public class ManagedDatabase {
     @CheckReturnValue
     public MongoGuild getGuild(@Nonnull String guildId) {
         log("Requesting Guild {} from MongoDB", guildId);
-        var collection = dbMantaro().getCollection(MongoGuild.DB_TABLE, MongoGuild.class);
-        var guild = collection.find().filter(Filters.eq(guildId)).first();
+        flushPending(MongoGuild.DB_TABLE, guildId);
+        var guild = guildCache.get(guildId, rawCollection(MongoGuild.DB_TABLE));
         return guild == null ? MongoGuild.of(guildId) : guild;
     }
 
@@ -150,6 +332,72 @@ public class ManagedDatabase {
         return getGuild(guild.getId());
     }
 
+    /**
+     * Gets the command policy of a guild (prefix and disable lists), without loading the rest of it.
+     * This is what's checked on every message, so it's cached on its own and loaded with a projection.
+     *
+     * @param guildId The id of the guild.
+     * @return The policy. Guilds that aren't in the database get the default one.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandPolicy getGuildCommandPolicy(@Nonnull String guildId) {
+        var policy = guildPolicyCache.getIfPresent(guildId);
+        if (policy != null) {
+            Metrics.ENTITY_CACHE.labels("guild_policy", "hit").inc();
+            return policy;
+        }
+
+        log("Requesting Guild command policy {} from MongoDB", guildId);
+        Metrics.ENTITY_CACHE.labels("guild_policy", "miss").inc();
+        flushPending(MongoGuild.DB_TABLE, guildId);
+
+        var epoch = guildPolicyEpoch.get();
+        var guild = dbMantaro().getCollection(MongoGuild.DB_TABLE, MongoGuild.class)
+                .find(Filters.eq(guildId))
+                .projection(GuildCommandPolicy.PROJECTION)
+                .first();
+
+        policy = GuildCommandPolicy.of(guild == null ? MongoGuild.of(guildId) : guild);
+        if (guildPolicyEpoch.get() == epoch) {
+            guildPolicyCache.put(guildId, policy);
+        }
+
+        return policy;
+    }
+
+    @Nonnull
+    @CheckReturnValue
+    public GuildCommandPolicy getGuildCommandPolicy(@Nonnull Guild guild) {
+        return getGuildCommandPolicy(guild.getId());
+    }
+
+    /**
+     * Gets the guilds, out of the given ones, that have both a birthday channel and role set, in a single query.
+     * The guilds are partial: only the fields the birthday task reads are loaded, so they skip the guild cache,
+     * and changes to them must be written with {@link MongoGuild#updateAllChanged()}, never saved whole.
+     *
+     * @param guildIds The ids of the guilds to look in, usually all the guilds of a shard.
+     * @return The guilds with birthdays enabled.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public List<MongoGuild> getBirthdayGuilds(@Nonnull Collection<String> guildIds) {
+        if (guildIds.isEmpty()) {
+            return List.of();
+        }
+
+        log("Requesting {} birthday guild(s) from MongoDB", guildIds.size());
+        return Lists.newArrayList(dbMantaro().getCollection(MongoGuild.DB_TABLE, MongoGuild.class)
+                .find(Filters.and(
+                        Filters.in("_id", guildIds),
+                        Filters.type("birthdayChannel", BsonType.STRING),
+                        Filters.type("birthdayRole", BsonType.STRING)
+                ))
+                .projection(BIRTHDAY_GUILD_PROJECTION)
+        );
+    }
+
     @SuppressWarnings("unused")
     @Nonnull
     @CheckReturnValue
@@ -183,12 +431,67 @@ public class ManagedDatabase {
         return obj;
     }
 
+    /**
+     * Gets the in-memory view of {@link MantaroObject}. This never goes to the database unless it hasn't been loaded yet.
+     * Use this for checks, and {@link #getMantaroData()} when you need to modify it.
+     *
+     * @return The current snapshot.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public MantaroDataSnapshot getMantaroDataSnapshot() {
+        var snapshot = mantaroDataSnapshot;
+        if (snapshot == null) {
+            snapshot = refreshMantaroDataSnapshot();
+        }
+
+        return snapshot;
+    }
+
+    @Nonnull
+    public MantaroDataSnapshot refreshMantaroDataSnapshot() {
+        var snapshot = MantaroDataSnapshot.of(getMantaroData());
+        mantaroDataSnapshot = snapshot;
+        log("Refreshed MantaroObject snapshot ({} guilds, {} users blacklisted)",
+                snapshot.blackListedGuildCount(), snapshot.blackListedUserCount()
+        );
+
+        return snapshot;
+    }
+
+    /**
+     * Refreshes the MantaroObject snapshot periodically, and whenever another node tells us it changed.
+     * The periodic refresh is just a fallback in case we miss a message while reconnecting to Redis.
+     *
+     * @param executor The executor to schedule the periodic refresh on.
+     */
+    public void startMantaroDataRefresh(ScheduledExecutorService executor) {
+        executor.scheduleAtFixedRate(() -> {
+            try {
+                refreshMantaroDataSnapshot();
+            } catch (Exception e) {
+                log.error("Error refreshing MantaroObject snapshot", e);
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+
+        MantaroData.subscribe("Mantaro Data Refresh Listener", MantaroDataSnapshot.REFRESH_CHANNEL, message -> refreshMantaroDataSnapshot());
+    }
+
+    private void publishMantaroDataChange(MantaroObject object) {
+        mantaroDataSnapshot = MantaroDataSnapshot.of(object);
+        try (var jedis = MantaroData.getDefaultJedisPool().getResource()) {
+            jedis.publish(MantaroDataSnapshot.REFRESH_CHANNEL, object.getId());
+        } catch (Exception e) {
+            log.error("Couldn't notify other nodes of a MantaroObject change", e);
+        }
+    }
+
     @Nonnull
     @CheckReturnValue
     public Player getPlayer(@Nonnull String userId) {
         log("Requesting Player {} from MongoDB", userId);
-        var collection = dbMantaro().getCollection(Player.DB_TABLE, Player.class);
-        var player = collection.find().filter(Filters.eq(userId)).first();
+        flushPending(Player.DB_TABLE, userId);
+        var player = dbMantaro().getCollection(Player.DB_TABLE, Player.class).find().filter(Filters.eq(userId)).first();
 
         return player == null ? Player.of(userId) : player;
     }
@@ -205,12 +508,55 @@ public class ManagedDatabase {
         return getPlayer(member.getUser());
     }
 
+    /**
+     * Looks up several players at once, with a single query.
+     *
+     * @param userIds The ids of the users to look up.
+     * @return A map of id to player, with a new player for every id that isn't in the database.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, Player> getPlayers(@Nonnull Collection<String> userIds) {
+        log("Requesting {} Players from MongoDB", userIds.size());
+        userIds.forEach(id -> flushPending(Player.DB_TABLE, id));
+        Map<String, Player> players = new HashMap<>(userIds.size());
+        dbMantaro().getCollection(Player.DB_TABLE, Player.class)
+                .find(Filters.in("_id", userIds))
+                .forEach(player -> players.put(player.getId(), player));
+        userIds.forEach(id -> players.computeIfAbsent(id, Player::of));
+
+        return players;
+    }
+
+    /**
+     * Looks up several players at once, only loading the fields in the projection.
+     * Partial documents shouldn't ever be saved back, as it'd wipe every field that wasn't loaded.
+     *
+     * @param userIds The ids of the users to look up.
+     * @param projection The fields to load.
+     * @return A map of id to (partial) player, with a new player for every id that isn't in the database.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, Player> getPlayers(@Nonnull Collection<String> userIds, @Nonnull Bson projection) {
+        log("Requesting {} partial Players from MongoDB", userIds.size());
+        userIds.forEach(id -> flushPending(Player.DB_TABLE, id));
+        Map<String, Player> players = new HashMap<>(userIds.size());
+        dbMantaro().getCollection(Player.DB_TABLE, Player.class)
+                .find(Filters.in("_id", userIds))
+                .projection(projection)
+                .forEach(player -> players.put(player.getId(), player));
+        userIds.forEach(id -> players.computeIfAbsent(id, Player::of));
+
+        return players;
+    }
+
     @Nonnull
     @CheckReturnValue
     public PlayerStats getPlayerStats(@Nonnull String userId) {
         log("Requesting PlayerStats {} from MongoDB", userId);
-        var collection = dbMantaro().getCollection(PlayerStats.DB_TABLE, PlayerStats.class);
-        var stats = collection.find().filter(Filters.eq(userId)).first();
+        flushPending(PlayerStats.DB_TABLE, userId);
+        var stats = dbMantaro().getCollection(PlayerStats.DB_TABLE, PlayerStats.class).find().filter(Filters.eq(userId)).first();
 
         return stats == null ? PlayerStats.of(userId) : stats;
     }
@@ -234,9 +580,34 @@ public class ManagedDatabase {
         }
 
         log("Requesting Marriage {} from MongoDB", marriageId);
+        flushPending(Marriage.DB_TABLE, marriageId);
         return dbMantaro().getCollection(Marriage.DB_TABLE, Marriage.class).find(Filters.eq(marriageId)).first();
     }
 
+    /**
+     * Looks up several marriages with a single query.
+     *
+     * @param marriageIds The ids to look up. Null ids are skipped.
+     * @return A map of id to marriage. Marriages that don't exist aren't in the map, as a missing marriage is just null.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, Marriage> getMarriages(@Nonnull Collection<String> marriageIds) {
+        var ids = marriageIds.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+
+        log("Requesting {} Marriages from MongoDB", ids.size());
+        ids.forEach(id -> flushPending(Marriage.DB_TABLE, id));
+        Map<String, Marriage> marriages = new HashMap<>(ids.size());
+        dbMantaro().getCollection(Marriage.DB_TABLE, Marriage.class)
+                .find(Filters.in("_id", ids))
+                .forEach(marriage -> marriages.put(marriage.getId(), marriage));
+
+        return marriages;
+    }
+
     @SuppressWarnings("unused")
     @Nonnull
     @CheckReturnValue
@@ -265,16 +636,126 @@ public class ManagedDatabase {
         return collection.find().filter(Filters.eq(id)).first();
     }
 
+    /**
+     * Gets the enabled keys that expire within a time window, using the index on expiration (created if missing).
+     *
+     * @param from The start of the window, inclusive, in epoch millis.
+     * @param to The end of the window, exclusive, in epoch millis.
+     * @return The keys.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public List<PremiumKey> getPremiumKeysExpiringBetween(long from, long to) {
+        log("Requesting Premium Keys expiring between {} and {} from MongoDB", from, to);
+        var collection = dbMantaro().getCollection(PremiumKey.DB_TABLE, PremiumKey.class);
+        collection.createIndex(Indexes.ascending("expiration"));
+
+        return Lists.newArrayList(collection.find(Filters.and(
+                Filters.gte("expiration", from),
+                Filters.lt("expiration", to),
+                Filters.eq("enabled", true)
+        )));
+    }
+
     @Nonnull
     @CheckReturnValue
     public MongoUser getUser(@Nonnull String userId) {
         log("Requesting User {} from MongoDB", userId);
-        var collection = dbMantaro().getCollection(MongoUser.DB_TABLE, MongoUser.class);
-        var user = collection.find().filter(Filters.eq(userId)).first();
+        flushPending(MongoUser.DB_TABLE, userId);
+        var user = dbMantaro().getCollection(MongoUser.DB_TABLE, MongoUser.class).find().filter(Filters.eq(userId)).first();
 
         return user == null ? MongoUser.of(userId) : user;
     }
 
+    /**
+     * Looks up several users at once, with a single query.
+     *
+     * @param userIds The ids of the users to look up.
+     * @return A map of id to user, with a new user for every id that isn't in the database.
+     */
+    @Nonnull
+    @CheckReturnValue
+    public Map<String, MongoUser> getUsers(@Nonnull Collection<String> userIds) {
+        log("Requesting {} Users from MongoDB", userIds.size());
+        userIds.forEach(id -> flushPending(MongoUser.DB_TABLE, id));
+        Map<String, MongoUser> users = new HashMap<>(userIds.size());
+        dbMantaro().getCollection(MongoUser.DB_TABLE, MongoUser.class)
+                .find(Filters.in("_id", userIds))
+                .forEach(user -> users.put(user.getId(), user));
+        userIds.forEach(id -> users.computeIfAbsent(id, MongoUser::of));
+
+        return users;
+    }
+
+    /**
+     * Gets the language a user picked, without loading the rest of them. This is needed on every command,
+     * so it's cached on its own (for as long as entities are) and loaded with a projection.
+     * Saving the user drops the cached value.
+     *
+     * @param userId The id of the user.
+     * @return The language, or null if they didn't pick one (or aren't in the database).
+     */
+    @Nullable
+    @CheckReturnValue
+    public String getUserLanguage(@Nonnull String userId) {
+        var lang = userLanguageCache.getIfPresent(userId);
+        if (lang != null) {
+            Metrics.ENTITY_CACHE.labels("user_language", "hit").inc();
+            return lang.isEmpty() ? null : lang;
+        }
+
+        log("Requesting User language {} from MongoDB", userId);
+        Metrics.ENTITY_CACHE.labels("user_language", "miss").inc();
+        flushPending(MongoUser.DB_TABLE, userId);
+
+        var epoch = userLanguageEpoch.get();
+        var user = dbMantaro().getCollection(MongoUser.DB_TABLE, MongoUser.class)
+                .find(Filters.eq(userId))
+                .projection(Projections.include("lang"))
+                .first();
+
+        lang = user == null || user.getLang() == null ? "" : user.getLang();
+        if (userLanguageEpoch.get() == epoch) {
+            userLanguageCache.put(userId, lang);
+        }
+
+        return lang.isEmpty() ? null : lang;
+    }
+
+    /**
+     * Whether a user is premium, as in {@link MongoUser#isPremium()}, but cached for a few minutes.
+     * Meant for hot paths like rate limits. Saving the user, or any key, drops the cached value.
+     *
+     * @param userId The id of the user.
+     * @return Whether the user is premium.
+     */
+    public boolean isUserPremium(@Nonnull String userId) {
+        var premium = premiumUserCache.getIfPresent(userId);
+        if (premium == null) {
+            premium = getUser(userId).isPremium();
+            premiumUserCache.put(userId, premium);
+        }
+
+        return premium;
+    }
+
+    /**
+     * Whether a guild is premium, as in {@link MongoGuild#isPremium()}, but cached for a few minutes.
+     * Saving the guild, or any key, drops the cached value.
+     *
+     * @param guildId The id of the guild.
+     * @return Whether the guild is premium.
+     */
+    public boolean isGuildPremium(@Nonnull String guildId) {
+        var premium = premiumGuildCache.getIfPresent(guildId);
+        if (premium == null) {
+            premium = getGuild(guildId).isPremium();
+            premiumGuildCache.put(guildId, premium);
+        }
+
+        return premium;
+    }
+
     @Nonnull
     @CheckReturnValue
     public MongoUser getUser(@Nonnull User user) {
@@ -290,26 +771,47 @@ public class ManagedDatabase {
     public <T extends ManagedMongoObject> void saveMongo(@Nonnull T object, Class<T> clazz) {
         log("Saving {} {}:{} to MongoDB (replacing whole)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
 
+        flushPending(object.getTableName(), object.getId());
         var collection = dbMantaro().getCollection(object.getTableName(), clazz);
         var returnDoc = new FindOneAndReplaceOptions().returnDocument(ReturnDocument.AFTER);
         var found = collection.findOneAndReplace(Filters.eq(object.getId()), object, returnDoc);
         if (found == null) { // New document?
             collection.insertOne(object);
         }
+
+        invalidateCached(object);
+        leaderboards.record(object);
+        if (object instanceof MantaroObject mantaroObject) {
+            publishMantaroDataChange(mantaroObject);
+        }
     }
 
     public <T extends ManagedMongoObject> void deleteMongo(@Nonnull T object, Class<T> clazz) {
         log("Deleting {} {}:{} from MongoDB (whole)", object.getClass().getSimpleName(), object.getTableName(), object.getDatabaseId());
 
+        // Whatever is pending would just upsert it back.
+        var unit = UnitOfWork.current();
+        if (unit != null) {
+            unit.drain(object.getTableName(), object.getId());
+        }
+
         MongoCollection<T> collection = dbMantaro().getCollection(object.getTableName(), clazz);
         collection.deleteOne(Filters.eq(object.getId()));
+        invalidateCached(object);
+        leaderboards.remove(object.getTableName(), object.getId());
     }
 
     public void updateFieldValue(ManagedMongoObject object, String key, Object value) {
         log("Updating id {} key {} (from db {}) to {} (single value)", object.getId(), key, object.getTableName(), value);
 
+        if (enqueueUpdate(object, Collections.singletonMap(key, value))) {
+            return;
+        }
+
         var collection = dbMantaro().getCollection(object.getTableName());
         collection.updateOne(Filters.eq(object.getId()), Updates.set(key, value), new UpdateOptions().upsert(true));
+        invalidateCached(object);
+        leaderboards.record(object.getTableName(), object.getId(), Collections.singletonMap(key, value));
     }
 
     public void updateFieldValues(ManagedMongoObject object, Map<String, Object> map) {
@@ -321,7 +823,304 @@ public class ManagedDatabase {
             return;
         }
 
+        if (enqueueUpdate(object, map)) {
+            return;
+        }
+
         var collection = dbMantaro().getCollection(object.getTableName());
+        var updates = toUpdates(map);
+        log("Database Update with content: {}", updates.toString());
+        // Reminder: you NEED to use Updates.combine, else somehow Map objects will act really strangely (ex. will not remove deleted items, but will add new ones)
+        // Upsert means it's adding the document/embedded document if it does not exist on the current collection/document.
+        collection.updateOne(Filters.eq(object.getId()), Updates.combine(updates), new UpdateOptions().upsert(true));
+        invalidateCached(object);
+        leaderboards.record(object.getTableName(), object.getId(), map);
+    }
+
+    /**
+     * Atomically adds to a numeric field, as long as the result stays within [min, max].
+     * Unlike reading the entity, changing it and saving it back, this can't lose a concurrent update done by another
+     * command or node. A missing field (or document) counts as 0. Anything pending for this document on the current
+     * unit of work is written first, so the two can't step on each other.
+     *
+     * @param object The object to update.
+     * @param key The field to increment. Can be a dotted path.
+     * @param delta How much to add (negative to subtract).
+     * @param min The lowest allowed value after the update.
+     * @param max The highest allowed value after the update.
+     * @return The value after the update, or empty if it would have gone out of bounds (nothing is changed then).
+     */
+    @Nonnull
+    public OptionalLong incrementFieldValue(ManagedMongoObject object, String key, long delta, long min, long max) {
+        return incrementFieldValue(object.getTableName(), object.getId(), key, delta, min, max);
+    }
+
+    @Nonnull
+    private OptionalLong incrementFieldValue(String table, String id, String key, long delta, long min, long max) {
+        log("Incrementing id {} key {} (from db {}) by {} (atomic, bounds [{}, {}])", id, key, table, delta, min, max);
+        flushPending(table, id);
+
+        var lower = LongMath.saturatedSubtract(min, delta);
+        var upper = LongMath.saturatedSubtract(max, delta);
+        var inRange = Filters.and(Filters.gte(key, lower), Filters.lte(key, upper));
+        // $inc treats a missing field as 0, so let it through if 0 + delta is within bounds.
+        var missingAllowed = lower <= 0 && upper >= 0;
+        var guard = missingAllowed ? Filters.or(inRange, Filters.exists(key, false)) : inRange;
+
+        var options = new FindOneAndUpdateOptions()
+                .returnDocument(ReturnDocument.AFTER)
+                .projection(Projections.include(key))
+                .upsert(missingAllowed);
+
+        Document updated;
+        try {
+            updated = dbMantaro().getCollection(table)
+                    .findOneAndUpdate(Filters.and(Filters.eq(id), guard), Updates.inc(key, delta), options);
+        } catch (MongoServerException e) {
+            // The document exists but didn't pass the guard, so the upsert tried to insert it again.
+            if (e.getCode() == DUPLICATE_KEY) {
+                return OptionalLong.empty();
+            }
+
+            throw e;
+        } finally {
+            invalidateCached(table, id);
+        }
+
+        if (updated == null) {
+            return OptionalLong.empty();
+        }
+
+        var value = updated.getEmbedded(List.of(key.split("\\.")), Number.class);
+        var result = value == null ? 0 : value.longValue();
+        leaderboards.record(table, id, Collections.singletonMap(key, result));
+        return OptionalLong.of(result);
+    }
+
+    /**
+     * Atomically takes up to amount from a numeric field, leaving it at 0 if it had less than that.
+     * Like {@link #incrementFieldValue}, this is a single update, so nothing that lands at the same time is lost.
+     *
+     * @param object The object to update.
+     * @param key The field to take from. Can be a dotted path.
+     * @param amount The most to take.
+     * @return How much was taken, and what the field was left at. Nothing is taken from a document that doesn't exist.
+     */
+    @Nonnull
+    public Taken takeFieldValue(ManagedMongoObject object, String key, long amount) {
+        log("Taking up to {} from id {} key {} (from db {}) (atomic)", amount, object.getId(), key, object.getTableName());
+        flushPending(object.getTableName(), object.getId());
+
+        // max(0, (field or 0) - amount), as an update pipeline so it's done in the same write that reads the field.
+        var remaining = new Document("$max", List.of(0L,
+                new Document("$subtract", List.of(new Document("$ifNull", List.of("$" + key, 0L)), amount))
+        ));
+        var options = new FindOneAndUpdateOptions()
+                .returnDocument(ReturnDocument.BEFORE)
+                .projection(Projections.include(key));
+
+        Document before;
+        try {
+            before = dbMantaro().getCollection(object.getTableName())
+                    .findOneAndUpdate(Filters.eq(object.getId()), List.of(Aggregates.set(new Field<>(key, remaining))), options);
+        } finally {
+            invalidateCached(object);
+        }
+
+        if (before == null) {
+            return new Taken(0, 0);
+        }
+
+        var value = before.getEmbedded(List.of(key.split("\\.")), Number.class);
+        var previous = value == null ? 0 : value.longValue();
+        var left = Math.max(0, previous - amount);
+        leaderboards.record(object.getTableName(), object.getId(), Collections.singletonMap(key, left));
+        return new Taken(previous - left, left);
+    }
+
+    /**
+     * Moves a counter from one document to another: takes debit from the first, as long as it doesn't go below 0,
+     * and then adds credit to the second, as long as it doesn't go over max. If the second part fails or throws,
+     * the first is undone. Both parts are atomic by themselves, which is what matters here: nobody can spend the same
+     * money twice.
+     * <p>
+     * Doing both in a single write would need a multi-document transaction (and so a replica set), so instead every
+     * transfer is written down in the transfers collection before anything is moved, and removed once it's settled.
+     * If the process dies halfway or a refund fails, the record stays there for {@link #settleTransfers()}.
+     *
+     * @param from The object to take from.
+     * @param to The object to give to.
+     * @param key The field to move. Can be a dotted path.
+     * @param debit How much to take from the first object.
+     * @param credit How much to give to the second object (can differ from debit, ex. when there's a tax).
+     * @param max The highest value allowed on the second object.
+     * @return The result of the transfer, with the values both objects were left with if it went through.
+     */
+    @Nonnull
+    public Transfer transferFieldValue(ManagedMongoObject from, ManagedMongoObject to, String key, long debit, long credit, long max) {
+        var journal = dbMantaro().getCollection(TRANSFERS_TABLE);
+        var id = new ObjectId();
+        journal.insertOne(new Document("_id", id)
+                .append("fromTable", from.getTableName())
+                .append("from", from.getId())
+                .append("toTable", to.getTableName())
+                .append("to", to.getId())
+                .append("key", key)
+                .append("debit", debit)
+                .append("credit", credit)
+                .append("state", TransferState.PENDING.name())
+                .append("updatedAt", System.currentTimeMillis())
+        );
+
+        // If this throws, we can't know whether it went through, so the record is left as pending.
+        var taken = incrementFieldValue(from, key, -debit, 0, Long.MAX_VALUE);
+        if (taken.isEmpty()) {
+            journal.deleteOne(Filters.eq(id));
+            Metrics.TRANSFERS.labels("insufficient").inc();
+            return new Transfer(TransferResult.INSUFFICIENT, 0, 0);
+        }
+
+        setTransferState(id, TransferState.CREDITING);
+        OptionalLong given;
+        try {
+            given = incrementFieldValue(to, key, credit, 0, max);
+        } catch (RuntimeException e) {
+            log.error("Couldn't credit transfer {} ({} {} from {} to {}), refunding", id, credit, key, from.getId(), to.getId(), e);
+            refundTransfer(id, from.getTableName(), from.getId(), key, debit);
+            throw e;
+        }
+
+        if (given.isEmpty()) {
+            refundTransfer(id, from.getTableName(), from.getId(), key, debit);
+            Metrics.TRANSFERS.labels("overflow").inc();
+            return new Transfer(TransferResult.OVERFLOW, 0, 0);
+        }
+
+        journal.deleteOne(Filters.eq(id));
+        Metrics.TRANSFERS.labels("success").inc();
+        return new Transfer(TransferResult.SUCCESS, taken.getAsLong(), given.getAsLong());
+    }
+
+    /**
+     * Settles the transfers that didn't finish (see {@link #transferFieldValue}) and haven't been touched for a while.
+     * Refunds that are known to be owed are retried. Transfers that stopped where we can't tell whether the last
+     * write went through (the process died, or Mongo failed mid-write) are logged once and marked as stuck, so they
+     * can be checked by hand instead of risking paying twice. Only meant to run on one node.
+     */
+    public void settleTransfers() {
+        var journal = dbMantaro().getCollection(TRANSFERS_TABLE);
+        var cutoff = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10);
+
+        Document owed;
+        while ((owed = journal.findOneAndUpdate(
+                Filters.and(Filters.eq("state", TransferState.REFUND.name()), Filters.lt("updatedAt", cutoff)),
+                Updates.combine(Updates.set("state", TransferState.REFUNDING.name()), Updates.set("updatedAt", System.currentTimeMillis()))
+        )) != null) {
+            refundTransfer(owed.getObjectId("_id"), owed.getString("fromTable"), owed.getString("from"),
+                    owed.getString("key"), owed.getLong("debit")
+            );
+        }
+
+        var unknown = Filters.and(
+                Filters.in("state", TransferState.PENDING.name(), TransferState.CREDITING.name(), TransferState.REFUNDING.name()),
+                Filters.lt("updatedAt", cutoff)
+        );
+        for (var stuck : journal.find(unknown)) {
+            log.error("Transfer {} stopped halfway and needs to be checked by hand: {}", stuck.getObjectId("_id"), stuck.toJson());
+            Metrics.TRANSFERS.labels("stuck").inc();
+            setTransferState(stuck.getObjectId("_id"), TransferState.STUCK);
+        }
+    }
+
+    // Gives the debit back. The state is set first, so a refund that fails is retried by settleTransfers.
+    private void refundTransfer(ObjectId id, String table, String objectId, String key, long debit) {
+        setTransferState(id, TransferState.REFUND);
+
+        OptionalLong refunded;
+        try {
+            refunded = incrementFieldValue(table, objectId, key, debit, 0, Long.MAX_VALUE);
+        } catch (RuntimeException e) {
+            log.error("Couldn't refund {} {} to {}:{} (transfer {}), will retry", debit, key, table, objectId, id, e);
+            Metrics.TRANSFERS.labels("refund_failed").inc();
+            return;
+        }
+
+        if (refunded.isEmpty()) {
+            log.error("Couldn't refund {} {} to {}:{} (transfer {}), it would overflow, will retry", debit, key, table, objectId, id);
+            Metrics.TRANSFERS.labels("refund_failed").inc();
+            return;
+        }
+
+        dbMantaro().getCollection(TRANSFERS_TABLE).deleteOne(Filters.eq(id));
+        Metrics.TRANSFERS.labels("refunded").inc();
+    }
+
+    private void setTransferState(ObjectId id, TransferState state) {
+        dbMantaro().getCollection(TRANSFERS_TABLE).updateOne(Filters.eq(id),
+                Updates.combine(Updates.set("state", state.name()), Updates.set("updatedAt", System.currentTimeMillis()))
+        );
+    }
+
+    /**
+     * Starts deferring field updates done on this thread until the returned unit is closed.
+     * See {@link UnitOfWork} for the details.
+     *
+     * @return The unit of work, meant to be used in a try-with-resources block.
+     */
+    @Nonnull
+    public UnitOfWork beginUnitOfWork() {
+        return UnitOfWork.begin(this);
+    }
+
+    private boolean enqueueUpdate(ManagedMongoObject object, Map<String, Object> map) {
+        var unit = UnitOfWork.current();
+        if (unit == null || !MantaroData.config().get().isCoalesceEntityWrites()) {
+            return false;
+        }
+
+        unit.enqueue(object.getTableName(), object.getId(), map);
+        Metrics.ENTITY_UPDATES.labels("queued").inc();
+        return true;
+    }
+
+    // Writes what's pending for this document on the current unit of work, if any, so a read or replace sees it.
+    private void flushPending(String table, String id) {
+        var unit = UnitOfWork.current();
+        if (unit == null) {
+            return;
+        }
+
+        var segments = unit.drain(table, id);
+        if (segments != null && !segments.isEmpty()) {
+            writeUpdates(table, Map.of(id, segments));
+        }
+    }
+
+    // Called by UnitOfWork. One ordered bulk write per table, one update per document (or per non-conflicting segment).
+    void writeUpdates(String table, Map<String, List<Map<String, Object>>> documents) {
+        log("Writing {} coalesced update(s) to {}", documents.size(), table);
+
+        List<WriteModel<Document>> models = new ArrayList<>();
+        for (var entry : documents.entrySet()) {
+            for (var segment : entry.getValue()) {
+                models.add(new UpdateOneModel<>(Filters.eq(entry.getKey()), Updates.combine(toUpdates(segment)), new UpdateOptions().upsert(true)));
+            }
+        }
+
+        if (models.isEmpty()) {
+            return;
+        }
+
+        dbMantaro().getCollection(table).bulkWrite(models);
+        Metrics.ENTITY_UPDATES.labels("written").inc(models.size());
+
+        documents.forEach((id, segments) -> {
+            invalidateCached(table, id);
+            segments.forEach(segment -> leaderboards.record(table, id, segment));
+        });
+    }
+
+    private static List<Bson> toUpdates(Map<String, Object> map) {
         List<Bson> updates = new ArrayList<>();
         map.forEach((key, value) -> {
             if (value instanceof Map<?, ?> e) {
@@ -358,9 +1157,27 @@ public class ManagedDatabase {
             updates.add(Updates.set(key, value));
         });
 
-        log("Database Update with content: {}", updates.toString());
-        // Reminder: you NEED to use Updates.combine, else somehow Map objects will act really strangely (ex. will not remove deleted items, but will add new ones)
-        // Upsert means it's adding the document/embedded document if it does not exist on the current collection/document.
-        collection.updateOne(Filters.eq(object.getId()), Updates.combine(updates), new UpdateOptions().upsert(true));
+        return updates;
     }
+
+    public enum TransferResult {
+        SUCCESS, INSUFFICIENT, OVERFLOW
+    }
+
+    // Where a transfer stopped. PENDING and CREDITING are written before a write we can't tell the outcome of if it
+    // throws, REFUND means the debit is known to be owed back, and REFUNDING is a refund settleTransfers is on.
+    private enum TransferState {
+        PENDING, CREDITING, REFUND, REFUNDING, STUCK
+    }
+
+    /**
+     * The outcome of {@link #takeFieldValue}: how much was taken, and what was left.
+     */
+    public record Taken(long taken, long value) { }
+
+    /**
+     * The outcome of {@link #transferFieldValue}. The values are what the database returned after each update,
+     * and are only meaningful on {@link TransferResult#SUCCESS}.
+     */
+    public record Transfer(TransferResult result, long fromValue, long toValue) { }
 }
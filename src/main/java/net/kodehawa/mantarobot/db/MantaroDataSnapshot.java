@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import net.kodehawa.mantarobot.db.entities.MantaroObject;
+import net.kodehawa.mantarobot.utils.ImmutableLongSet;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Read-only view of {@link MantaroObject}, used for the blacklist checks every command goes through.
+ * Mutations still go through {@link ManagedDatabase#getMantaroData()}, saving it refreshes this on every node.
+ */
+public final class MantaroDataSnapshot {
+    public static final String REFRESH_CHANNEL = "mantaro-data-refresh";
+
+    private final ImmutableLongSet blackListedGuilds;
+    private final ImmutableLongSet blackListedUsers;
+
+    private MantaroDataSnapshot(ImmutableLongSet blackListedGuilds, ImmutableLongSet blackListedUsers) {
+        this.blackListedGuilds = blackListedGuilds;
+        this.blackListedUsers = blackListedUsers;
+    }
+
+    public static MantaroDataSnapshot of(@Nonnull MantaroObject object) {
+        return new MantaroDataSnapshot(
+                ImmutableLongSet.ofSnowflakes(object.getBlackListedGuilds()),
+                ImmutableLongSet.ofSnowflakes(object.getBlackListedUsers())
+        );
+    }
+
+    public boolean isBlackListedGuild(long guildId) {
+        return blackListedGuilds.contains(guildId);
+    }
+
+    public boolean isBlackListedUser(long userId) {
+        return blackListedUsers.contains(userId);
+    }
+
+    public boolean isBlackListedUser(String userId) {
+        try {
+            return isBlackListedUser(Long.parseLong(userId));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public int blackListedGuildCount() {
+        return blackListedGuilds.size();
+    }
+
+    public int blackListedUserCount() {
+        return blackListedUsers.size();
+    }
+}
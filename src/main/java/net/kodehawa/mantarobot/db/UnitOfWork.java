@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects field updates done on the current thread while a command runs, and writes them all at once when closed.
+ * Several updateAllChanged() calls on the same document (player, then its pet, then its equipment...) end up as
+ * a single bulk write instead of one round trip each.
+ * <p>
+ * Updates are only deferred on the thread that opened the unit: callbacks running on JDA threads write immediately.
+ * Reading a document through {@link ManagedDatabase} writes whatever is pending for it first, so code that
+ * saves and then looks the entity up again still sees its own changes.
+ */
+public final class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    private final ManagedDatabase database;
+    // table -> document id -> ordered segments of $set values.
+    private final Map<String, Map<String, List<Map<String, Object>>>> pending = new LinkedHashMap<>();
+    private int depth = 1;
+
+    private UnitOfWork(ManagedDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Starts a unit of work on this thread, or joins the one that's already running.
+     * Only the outermost unit writes when closed.
+     *
+     * @param database The database to write to.
+     * @return The unit of work. Close it to write the pending changes.
+     */
+    @Nonnull
+    static UnitOfWork begin(@Nonnull ManagedDatabase database) {
+        var current = CURRENT.get();
+        if (current != null) {
+            current.depth++;
+            return current;
+        }
+
+        current = new UnitOfWork(database);
+        CURRENT.set(current);
+        return current;
+    }
+
+    @Nullable
+    static UnitOfWork current() {
+        return CURRENT.get();
+    }
+
+    void enqueue(String table, String id, Map<String, Object> fields) {
+        var segments = pending.computeIfAbsent(table, t -> new LinkedHashMap<>())
+                .computeIfAbsent(id, i -> new ArrayList<>());
+
+        // Mongo rejects an update that sets both "pet" and "pet.health", so those go on separate (ordered) updates.
+        var segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || conflicts(segment, fields)) {
+            segment = new LinkedHashMap<>();
+            segments.add(segment);
+        }
+
+        segment.putAll(fields);
+    }
+
+    @Nullable
+    List<Map<String, Object>> drain(String table, String id) {
+        var documents = pending.get(table);
+        if (documents == null) {
+            return null;
+        }
+
+        return documents.remove(id);
+    }
+
+    @Override
+    public void close() {
+        if (--depth > 0) {
+            return;
+        }
+
+        CURRENT.remove();
+        for (var entry : pending.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                database.writeUpdates(entry.getKey(), entry.getValue());
+            }
+        }
+
+        pending.clear();
+    }
+
+    private static boolean conflicts(Map<String, Object> segment, Map<String, Object> fields) {
+        for (var key : fields.keySet()) {
+            for (var existing : segment.keySet()) {
+                if (key.equals(existing)) {
+                    continue;
+                }
+
+                if (key.startsWith(existing + ".") || existing.startsWith(key + ".")) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
@@ -19,6 +19,7 @@ package net.kodehawa.mantarobot.db.entities;
 
 import net.kodehawa.mantarobot.commands.currency.item.Item;
 import net.kodehawa.mantarobot.commands.currency.item.ItemHelper;
+import net.kodehawa.mantarobot.commands.currency.item.ItemReference;
 import net.kodehawa.mantarobot.commands.currency.item.ItemStack;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,20 +27,42 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
+/**
+ * A player's (or the ground's) items, as an amount per item id (its index on {@link ItemReference#ALL}).
+ * Checking or changing the amount of an item doesn't need to go through the rest of them.
+ * <p>
+ * It's still stored as a map from item slice (see {@link ItemHelper#sliceOf(Item)}) to amount, and
+ * {@link #serialize()} and {@link #load(Map)} convert from and to that.
+ */
 public class Inventory {
     private static final Logger LOGGER = LoggerFactory.getLogger("Inventory");
-    private Map<String, Integer> stored = new HashMap<>();
+    private final int[] amounts = new int[ItemReference.ALL.length];
 
     public List<ItemStack> asList() {
-        return unserialize(stored);
+        var list = new ArrayList<ItemStack>();
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] != 0) {
+                list.add(new ItemStack(ItemHelper.fromId(id), amounts[id]));
+            }
+        }
+
+        return list;
     }
 
     public Map<Item, ItemStack> asMap() {
-        return ItemStack.mapped(asList());
+        var map = new LinkedHashMap<Item, ItemStack>();
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] != 0) {
+                var item = ItemHelper.fromId(id);
+                map.put(item, new ItemStack(item, amounts[id]));
+            }
+        }
+
+        return map;
     }
 
     // Serialization constructor
@@ -47,48 +70,62 @@ public class Inventory {
     public Inventory() { }
 
     public void clear() {
-        replaceWith(new ArrayList<>());
+        Arrays.fill(amounts, 0);
     }
 
     @SuppressWarnings("unused")
     public void clearOnlySellables() {
-        List<ItemStack> ns = asList().stream().filter(item -> !item.getItem().isSellable()).collect(Collectors.toList());
-        replaceWith(ns);
+        for (int id = 0; id < amounts.length; id++) {
+            if (ItemHelper.fromId(id).isSellable()) {
+                amounts[id] = 0;
+            }
+        }
     }
 
     public boolean containsItem(Item item) {
-        return asMap().containsKey(item);
+        return getAmount(item) != 0;
     }
 
     @SuppressWarnings("unused")
     public ItemStack getStackOf(Item item) {
         if (containsItem(item)) {
-            return asMap().get(item);
+            return new ItemStack(item, getAmount(item));
         } else {
             return null;
         }
     }
 
     public int getAmount(Item item) {
-        return asMap().getOrDefault(item, new ItemStack(item, 0)).getAmount();
+        var id = ItemHelper.idOf(item);
+        return id == -1 ? 0 : amounts[id];
     }
 
     public boolean merge(List<ItemStack> inv) {
-        Map<String, Integer> map = new HashMap<>(stored);
-        Map<String, Integer> toAdd = serialize(inv);
-        boolean[] hadOverflow = {false};
-        toAdd.forEach((id, amount) -> {
-            int currentAmount = map.getOrDefault(id, 0);
-            if (currentAmount + amount > ItemStack.MAX_STACK_SIZE) {
-                currentAmount = ItemStack.MAX_STACK_SIZE;
-                hadOverflow[0] = true;
-            } else {
-                currentAmount += amount;
+        // Stacks of the same item are added up first, and only their total is checked against the stack size.
+        var added = new int[amounts.length];
+        for (var stack : inv) {
+            var id = ItemHelper.idOf(stack.getItem());
+            if (id != -1) {
+                added[id] += stack.getAmount();
             }
-            map.put(id, currentAmount);
-        });
-        replaceWith(unserialize(map));
-        return hadOverflow[0];
+        }
+
+        var hadOverflow = false;
+        for (int id = 0; id < added.length; id++) {
+            if (added[id] == 0) {
+                continue;
+            }
+
+            var amount = amounts[id] + added[id];
+            if (amount > ItemStack.MAX_STACK_SIZE) {
+                amount = ItemStack.MAX_STACK_SIZE;
+                hadOverflow = true;
+            }
+
+            amounts[id] = Math.max(amount, 0);
+        }
+
+        return hadOverflow;
     }
 
     public void process(List<ItemStack> is) {
@@ -102,21 +139,68 @@ public class Inventory {
     }
 
     public void replaceWith(List<ItemStack> inv) {
-        stored = serialize(inv);
+        clear();
+        for (var stack : inv) {
+            var id = ItemHelper.idOf(stack.getItem());
+            if (id != -1) {
+                amounts[id] += stack.getAmount();
+            }
+        }
+
+        for (int id = 0; id < amounts.length; id++) {
+            amounts[id] = clamp(amounts[id]);
+        }
+    }
+
+    /**
+     * Replaces the contents of this inventory with the stored ones. Items that don't exist anymore are left out.
+     */
+    public void load(Map<String, Integer> stored) {
+        clear();
+        if (stored == null) {
+            return;
+        }
+
+        stored.forEach((slice, amount) -> {
+            var item = ItemHelper.fromTranslationSlice(slice);
+            if (item.isPresent() && amount != null) {
+                amounts[ItemHelper.idOf(item.get())] = clamp(amount);
+            }
+        });
+    }
+
+    /**
+     * @return The contents of this inventory, the way they're stored.
+     */
+    public Map<String, Integer> serialize() {
+        var map = new HashMap<String, Integer>();
+        for (int id = 0; id < amounts.length; id++) {
+            if (amounts[id] != 0) {
+                map.put(ItemHelper.sliceOf(ItemHelper.fromId(id)), amounts[id]);
+            }
+        }
+
+        return map;
+    }
+
+    // The key an item is stored under, in the database.
+    public static String keyOf(Item item) {
+        return ItemHelper.sliceOf(item);
     }
 
     public static Map<String, Integer> serialize(List<ItemStack> list) {
-        Map<String, Integer> collect = list.stream().filter(stack -> stack.getAmount() != 0)
-                .collect(Collectors.toMap(stack -> stack.getItem().getTranslatedName().split("\\.")[1], ItemStack::getAmount, Integer::sum));
-        collect.values().remove(0);
-        return collect;
+        var inventory = new Inventory();
+        inventory.replaceWith(list);
+        return inventory.serialize();
     }
 
     public static List<ItemStack> unserialize(Map<String, Integer> map) {
-        //noinspection OptionalGetWithoutIsPresent
-        return map.entrySet().stream().filter(e -> e.getValue() != 0)
-                .filter(e -> ItemHelper.fromTranslationSlice(e.getKey()).isPresent())
-                .map(entry -> new ItemStack(ItemHelper.fromTranslationSlice(entry.getKey()).get(), Math.max(Math.min(entry.getValue(), ItemStack.MAX_STACK_SIZE), 0)))
-                .collect(Collectors.toList());
+        var inventory = new Inventory();
+        inventory.load(map);
+        return inventory.asList();
+    }
+
+    private static int clamp(int amount) {
+        return Math.max(Math.min(amount, ItemStack.MAX_STACK_SIZE), 0);
     }
 }
@@ -249,6 +249,7 @@ public class Marriage implements ManagedMongoObject {
     @Override
     public void updateAllChanged() {
         MantaroData.db().updateFieldValues(this, fieldTracker);
+        fieldTracker.clear();
     }
 
     //it's 3am and i cba to replace usages of this so whatever
@@ -212,6 +212,7 @@ public class MongoGuild implements ManagedMongoObject {
     @Override
     public void updateAllChanged() {
         MantaroData.db().updateFieldValues(this, fieldTracker);
+        fieldTracker.clear();
     }
 
     @BsonIgnore
@@ -1217,7 +1218,7 @@ public class MongoGuild implements ManagedMongoObject {
     }
 
     public void removeAllowedBirthday(String userId) {
-        allowedBirthdays.add(userId);
+        allowedBirthdays.remove(userId);
         fieldTracker.put("allowedBirthdays", this.allowedBirthdays);
     }
 
@@ -581,6 +581,7 @@ public class MongoUser implements ManagedMongoObject {
     @Override
     public void updateAllChanged() {
         MantaroData.db().updateFieldValues(this, fieldTracker);
+        fieldTracker.clear();
     }
 
     @Override
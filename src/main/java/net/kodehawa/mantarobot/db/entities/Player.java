@@ -29,6 +29,7 @@ import net.kodehawa.mantarobot.commands.currency.profile.ProfileComponent;
 import net.kodehawa.mantarobot.commands.currency.profile.inventory.InventorySortType;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.db.ManagedDatabase;
 import net.kodehawa.mantarobot.db.ManagedMongoObject;
 import org.bson.codecs.pojo.annotations.BsonId;
 import org.bson.codecs.pojo.annotations.BsonIgnore;
@@ -43,8 +44,6 @@ import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
-import static net.kodehawa.mantarobot.db.entities.Inventory.serialize;
-
 public class Player implements ManagedMongoObject {
     @BsonIgnore
     private static final Config config = MantaroData.config().get();
@@ -104,7 +103,7 @@ public class Player implements ManagedMongoObject {
         this.level = level == null ? 0 : level;
         this.oldMoney = oldMoney == null ? 0 : oldMoney;
         this.reputation = reputation == null ? 0 : reputation;
-        this.inventoryObject.replaceWith(Inventory.unserialize(inventory));
+        this.inventoryObject.load(inventory);
     }
 
     /**
@@ -243,7 +242,7 @@ public class Player implements ManagedMongoObject {
     }
 
     public Map<String, Integer> getInventory() {
-        return serialize(inventoryObject.asList());
+        return inventoryObject.serialize();
     }
 
     // -- Setters (protected if possible)
@@ -411,7 +410,7 @@ public class Player implements ManagedMongoObject {
     @SuppressWarnings("unused")
     public void setInventory(Map<String, Integer> inventory) {
         this.inventory = inventory;
-        this.inventoryObject.replaceWith(Inventory.unserialize(inventory));
+        this.inventoryObject.load(inventory);
     }
 
     // -- Tracking setters (always public)
@@ -550,26 +549,35 @@ public class Player implements ManagedMongoObject {
 
     @BsonIgnore
     public void incrementMiningExperience(Random random) {
-        this.miningExperience = miningExperience + (random.nextInt(5) + 1);
-        fieldTracker.put("miningExperience", miningExperience);
+        this.miningExperience = incrementExperience("miningExperience", miningExperience, random.nextInt(5) + 1);
     }
 
     @BsonIgnore
     public void incrementFishingExperience(Random random) {
-        this.fishingExperience = fishingExperience + (random.nextInt(5) + 1);
-        fieldTracker.put("fishingExperience", fishingExperience);
+        this.fishingExperience = incrementExperience("fishingExperience", fishingExperience, random.nextInt(5) + 1);
     }
 
     @BsonIgnore
     public void incrementChopExperience(Random random) {
-        this.chopExperience = chopExperience + (random.nextInt(5) + 1);
-        fieldTracker.put("chopExperience", chopExperience);
+        this.chopExperience = incrementExperience("chopExperience", chopExperience, random.nextInt(5) + 1);
+    }
+
+    // Experience goes through an atomic increment, like money, so two commands on different nodes can't lose each other's.
+    @BsonIgnore
+    private long incrementExperience(String key, long current, long amount) {
+        var result = MantaroData.db().incrementFieldValue(this, key, amount, 0, Long.MAX_VALUE);
+        var experience = result.orElse(current);
+        if (fieldTracker.containsKey(key)) {
+            fieldTracker.put(key, experience);
+        }
+
+        return experience;
     }
 
     @SuppressWarnings("unused")
     @BsonProperty("inventory")
     public Map<String, Integer> rawInventory() {
-        return serialize(inventoryObject.asList());
+        return inventoryObject.serialize();
     }
 
     public long getNewMoney() {
@@ -797,6 +805,150 @@ public class Player implements ManagedMongoObject {
         return true;
     }
 
+    /**
+     * Adds money to the player right away, using an atomic increment instead of saving the whole value back.
+     * Use this instead of {@link #addMoney(long)} when other commands could be changing this player's money at the same time.
+     *
+     * @param toAdd How much?
+     * @return Whether it was added (false if it would overflow).
+     */
+    @BsonIgnore
+    public boolean addMoneyAtomically(long toAdd) {
+        if (toAdd < 0) {
+            return false;
+        }
+
+        var result = MantaroData.db().incrementFieldValue(this, moneyKey(), toAdd, 0, Long.MAX_VALUE);
+        result.ifPresent(this::syncMoney);
+        return result.isPresent();
+    }
+
+    /**
+     * Removes money from the player right away, using an atomic increment. Fails if the player (in the database,
+     * not on this copy) doesn't have enough, so the same money can't be spent twice.
+     *
+     * @param toRemove How much?
+     * @return Whether it was removed.
+     */
+    @BsonIgnore
+    public boolean removeMoneyAtomically(long toRemove) {
+        if (toRemove < 0) {
+            return false;
+        }
+
+        var result = MantaroData.db().incrementFieldValue(this, moneyKey(), -toRemove, 0, Long.MAX_VALUE);
+        result.ifPresent(this::syncMoney);
+        return result.isPresent();
+    }
+
+    /**
+     * Removes as much money as the player has, up to the given amount, right away and atomically.
+     * Meant for losses that have to be paid even if the player spent some of the money elsewhere meanwhile:
+     * whatever they have left is taken, and nothing that lands at the same time is overwritten.
+     *
+     * @param toRemove The most to remove.
+     * @return How much was removed.
+     */
+    @BsonIgnore
+    public long removeMoneyUpTo(long toRemove) {
+        if (toRemove <= 0) {
+            return 0;
+        }
+
+        var taken = MantaroData.db().takeFieldValue(this, moneyKey(), toRemove);
+        syncMoney(taken.value());
+        return taken.taken();
+    }
+
+    /**
+     * Adds (or removes, if negative) an item right away, using an atomic increment on its inventory entry.
+     *
+     * @param item The item.
+     * @param amount How many.
+     * @return Whether it went through (false if the player doesn't have enough, or it wouldn't fit).
+     */
+    @BsonIgnore
+    public boolean processItemAtomically(Item item, int amount) {
+        var result = MantaroData.db().incrementFieldValue(this, itemKey(item), amount, 0, ItemStack.MAX_STACK_SIZE);
+        result.ifPresent(value -> syncItem(item, (int) value));
+        return result.isPresent();
+    }
+
+    /**
+     * Moves money between two players atomically. See {@link net.kodehawa.mantarobot.db.ManagedDatabase#transferFieldValue}.
+     *
+     * @param from Who is sending the money.
+     * @param to Who is receiving it.
+     * @param amount How much to take from the sender.
+     * @param received How much the receiver gets.
+     * @return The result of the transfer.
+     */
+    @BsonIgnore
+    public static ManagedDatabase.TransferResult transferMoney(Player from, Player to, long amount, long received) {
+        var transfer = MantaroData.db().transferFieldValue(from, to, from.moneyKey(), amount, received, Long.MAX_VALUE);
+        if (transfer.result() == ManagedDatabase.TransferResult.SUCCESS) {
+            from.syncMoney(transfer.fromValue());
+            to.syncMoney(transfer.toValue());
+        }
+
+        return transfer.result();
+    }
+
+    /**
+     * Moves items between two players atomically. See {@link net.kodehawa.mantarobot.db.ManagedDatabase#transferFieldValue}.
+     *
+     * @param from Who is sending the items.
+     * @param to Who is receiving them.
+     * @param item The item.
+     * @param amount How many.
+     * @return The result of the transfer.
+     */
+    @BsonIgnore
+    public static ManagedDatabase.TransferResult transferItem(Player from, Player to, Item item, int amount) {
+        var transfer = MantaroData.db().transferFieldValue(from, to, from.itemKey(item), amount, amount, ItemStack.MAX_STACK_SIZE);
+        if (transfer.result() == ManagedDatabase.TransferResult.SUCCESS) {
+            from.syncItem(item, (int) transfer.fromValue());
+            to.syncItem(item, (int) transfer.toValue());
+        }
+
+        return transfer.result();
+    }
+
+    @BsonIgnore
+    private String moneyKey() {
+        boolean useOld = config.isPremiumBot() || config.isSelfHost();
+        return useOld ? "oldMoney" : "newMoney";
+    }
+
+    @BsonIgnore
+    private String itemKey(Item item) {
+        return "inventory." + Inventory.keyOf(item);
+    }
+
+    // Keeps this copy in line with what an atomic update left in the database.
+    // If a tracked save is still pending it would write the old value back, so we update that too.
+    @BsonIgnore
+    private void syncMoney(long money) {
+        var key = moneyKey();
+        if (key.equals("oldMoney")) {
+            setOldMoney(money);
+        } else {
+            setNewMoney(money);
+        }
+
+        if (fieldTracker.containsKey(key)) {
+            fieldTracker.put(key, money);
+        }
+    }
+
+    @BsonIgnore
+    private void syncItem(Item item, int amount) {
+        inventoryObject.process(new ItemStack(item, amount - getItemAmount(item)));
+        if (fieldTracker.containsKey("inventory")) {
+            fieldTracker.put("inventory", getInventory());
+        }
+    }
+
     //it's 3am and i cba to replace usages of this so whatever
     @BsonIgnore
     public boolean isLocked() {
@@ -857,6 +1009,7 @@ public class Player implements ManagedMongoObject {
     @Override
     public void updateAllChanged() {
         MantaroData.db().updateFieldValues(this, fieldTracker);
+        fieldTracker.clear();
     }
 
     @Override
@@ -256,6 +256,7 @@ public class PlayerStats implements ManagedMongoObject {
     @Override
     public void updateAllChanged() {
         MantaroData.db().updateFieldValues(this, fieldTracker);
+        fieldTracker.clear();
     }
 
     @Override
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.utils;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Open-addressed hash map from primitive longs (snowflakes) to values. Same idea as {@link ImmutableLongSet}:
+ * lookups don't box the key, so they don't allocate.
+ */
+public final class ImmutableLongMap<V> {
+    private static final ImmutableLongMap<?> EMPTY = new ImmutableLongMap<>(new long[0], new Object[0], 0);
+
+    // 0 marks an empty slot. It isn't a valid snowflake, so it's never stored as a key.
+    private final long[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final int size;
+
+    private ImmutableLongMap(long[] keys, Object[] values, int count) {
+        var capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+        var table = new long[capacity];
+        var tableValues = new Object[capacity];
+        var mask = capacity - 1;
+        var size = 0;
+
+        for (int i = 0; i < count; i++) {
+            var key = keys[i];
+            if (key == 0 || values[i] == null) {
+                continue;
+            }
+
+            var slot = ImmutableLongSet.mix(key) & mask;
+            while (table[slot] != 0 && table[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (table[slot] == 0) {
+                size++;
+            }
+
+            table[slot] = key;
+            tableValues[slot] = values[i];
+        }
+
+        this.keys = table;
+        this.values = tableValues;
+        this.mask = mask;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> ImmutableLongMap<V> empty() {
+        return (ImmutableLongMap<V>) EMPTY;
+    }
+
+    /**
+     * Builds a map out of parallel arrays of keys and values. If a key is repeated, the last value wins.
+     * Keys that are 0 and null values are skipped.
+     *
+     * @param keys The keys.
+     * @param values The values, at the same index as their key.
+     * @param count How many entries of the arrays to use.
+     * @return The new map.
+     */
+    public static <V> ImmutableLongMap<V> of(long[] keys, V[] values, int count) {
+        if (count == 0) {
+            return empty();
+        }
+
+        return new ImmutableLongMap<>(keys, values, count);
+    }
+
+    /**
+     * Builds a map out of one keyed by snowflakes stored as strings. Keys that aren't a number and null values are skipped.
+     *
+     * @param map The map to copy.
+     * @return The new map.
+     */
+    public static <V> ImmutableLongMap<V> ofSnowflakes(@Nullable Map<String, V> map) {
+        if (map == null || map.isEmpty()) {
+            return empty();
+        }
+
+        var keys = new long[map.size()];
+        var values = new Object[map.size()];
+        var count = 0;
+        for (var entry : map.entrySet()) {
+            try {
+                keys[count] = Long.parseLong(entry.getKey());
+                values[count] = entry.getValue();
+                count++;
+            } catch (NumberFormatException ignored) { }
+        }
+
+        return new ImmutableLongMap<>(keys, values, count);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0) {
+            return null;
+        }
+
+        var slot = ImmutableLongSet.mix(key) & mask;
+        long current;
+        while ((current = keys[slot]) != 0) {
+            if (current == key) {
+                return (V) values[slot];
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+
+package net.kodehawa.mantarobot.utils;
+
+import java.util.Collection;
+
+/**
+ * Open-addressed hash set of primitive longs, meant for snowflakes.
+ * Lookups don't box, so they don't allocate, which is the whole point: this is checked on every command.
+ */
+public final class ImmutableLongSet {
+    public static final ImmutableLongSet EMPTY = new ImmutableLongSet(new long[0], 0);
+
+    // 0 marks an empty slot. It isn't a valid snowflake, but we keep track of it anyway.
+    private final long[] table;
+    private final int mask;
+    private final int size;
+    private final boolean containsZero;
+
+    private ImmutableLongSet(long[] values, int count) {
+        var capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+        var table = new long[capacity];
+        var mask = capacity - 1;
+        var zero = false;
+        var size = 0;
+
+        for (int i = 0; i < count; i++) {
+            var value = values[i];
+            if (value == 0) {
+                if (!zero) size++;
+                zero = true;
+                continue;
+            }
+
+            var slot = mix(value) & mask;
+            while (table[slot] != 0 && table[slot] != value) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (table[slot] == 0) {
+                table[slot] = value;
+                size++;
+            }
+        }
+
+        this.table = table;
+        this.mask = mask;
+        this.size = size;
+        this.containsZero = zero;
+    }
+
+    public static ImmutableLongSet of(long... values) {
+        return new ImmutableLongSet(values, values.length);
+    }
+
+    /**
+     * Builds a set out of snowflakes stored as strings. Anything that isn't a number is skipped.
+     *
+     * @param ids The ids to add.
+     * @return The new set.
+     */
+    public static ImmutableLongSet ofSnowflakes(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return EMPTY;
+        }
+
+        var values = new long[ids.size()];
+        var count = 0;
+        for (var id : ids) {
+            try {
+                values[count] = Long.parseLong(id);
+                count++;
+            } catch (NumberFormatException ignored) { }
+        }
+
+        return new ImmutableLongSet(values, count);
+    }
+
+    public boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+
+        var slot = mix(value) & mask;
+        long current;
+        while ((current = table[slot]) != 0) {
+            if (current == value) {
+                return true;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    static int mix(long value) {
+        var h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
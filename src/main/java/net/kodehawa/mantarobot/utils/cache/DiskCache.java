@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 Kodehawa
+ *
+ * Mantaro is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * Mantaro is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro. If not, see http://www.gnu.org/licenses/
+ *
+ */
+package net.kodehawa.mantarobot.utils.cache;
+
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import net.kodehawa.mantarobot.utils.Utils;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import okhttp3.Request;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Downloads files to disk, up to a total size, evicting the least recently used ones past that.
+ * <p>
+ * Files are stored by the SHA-256 of their contents under objects/, so two urls with the same file share it.
+ * Each url has a small file under refs/, named after the SHA-256 of the url, with the hash of its contents.
+ * The index is only kept in memory, and is rebuilt from those two directories on startup: recency is lost on
+ * restart, so files start out ordered by when they were downloaded.
+ * <p>
+ * Only one of these must use a directory at a time.
+ */
+final class DiskCache {
+    private static final Logger log = LoggerFactory.getLogger(DiskCache.class);
+    private static final String TEMP_PREFIX = "tmp-";
+
+    private final String name;
+    private final Path objects;
+    private final Path refs;
+    private final long maxBytes;
+    private final Consumer<Path> onEvict;
+    // Content hash -> file size, in access order. This, the two maps below and size are guarded by this.
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Url hash -> content hash, and back.
+    private final Map<String, String> urls = new HashMap<>();
+    private final Map<String, Set<String>> referrers = new HashMap<>();
+    private long size;
+    // Url hash -> download in progress, so concurrent misses for a url wait on the same one.
+    private final Map<String, CompletableFuture<Path>> downloads = new ConcurrentHashMap<>();
+
+    DiskCache(String name, Path directory, long maxBytes, Consumer<Path> onEvict) {
+        this.name = name;
+        this.objects = directory.resolve("objects");
+        this.refs = directory.resolve("refs");
+        this.maxBytes = maxBytes;
+        this.onEvict = onEvict;
+
+        try {
+            Files.createDirectories(objects);
+            Files.createDirectories(refs);
+            rebuild();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the file for a url, downloading it if it's not here.
+     *
+     * @param url The url.
+     * @return The file, and whether it had to be downloaded.
+     */
+    Result get(String url) throws IOException {
+        var key = Hashing.sha256().hashString(url, StandardCharsets.UTF_8).toString();
+        var cached = lookup(key);
+        if (cached != null) {
+            return new Result(cached, false);
+        }
+
+        var download = new CompletableFuture<Path>();
+        var existing = downloads.putIfAbsent(key, download);
+        if (existing != null) {
+            return new Result(await(existing), false);
+        }
+
+        try {
+            // It might have finished between the lookup and us getting here.
+            var path = lookup(key);
+            var downloaded = path == null;
+            if (downloaded) {
+                path = download(url, key);
+            }
+
+            download.complete(path);
+            return new Result(path, downloaded);
+        } catch (IOException | RuntimeException e) {
+            download.completeExceptionally(e);
+            throw e;
+        } finally {
+            downloads.remove(key, download);
+        }
+    }
+
+    private synchronized Path lookup(String key) {
+        var hash = urls.get(key);
+        // Touches the entry, so it counts as used.
+        if (hash == null || entries.get(hash) == null) {
+            return null;
+        }
+
+        return objects.resolve(hash);
+    }
+
+    private Path download(String url, String key) throws IOException {
+        var request = new Request.Builder()
+                .url(url)
+                .build();
+
+        var temp = objects.resolve(TEMP_PREFIX + UUID.randomUUID());
+        try (var response = Utils.httpClient.newCall(request).execute()) {
+            var body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Couldn't download " + url + ": " + response.code() + " " + response.message());
+            }
+
+            String hash;
+            try (var input = new HashingInputStream(Hashing.sha256(), body.byteStream())) {
+                Files.copy(input, temp);
+                hash = input.hash().toString();
+            }
+
+            Metrics.URL_CACHE_BYTES.labels(name, "downloaded").inc(Files.size(temp));
+            return store(key, hash, temp);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Moves a download into place and evicts whatever doesn't fit anymore. The file operations happen under the
+    // lock too (they're only renames and deletes), so a file that's being evicted can't be added back halfway.
+    private synchronized Path store(String key, String hash, Path temp) throws IOException {
+        var path = objects.resolve(hash);
+        if (!entries.containsKey(hash)) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            size += Files.size(path);
+        }
+
+        entries.put(hash, Files.size(path));
+        Files.writeString(refs.resolve(key), hash);
+        link(key, hash);
+        evict();
+        return path;
+    }
+
+    // Drops the least recently used files until it fits. Never evicts the most recent one, even if it's over
+    // the limit on its own.
+    private void evict() {
+        var iterator = entries.entrySet().iterator();
+        while (size > maxBytes && entries.size() > 1) {
+            var eldest = iterator.next();
+            size -= eldest.getValue();
+            iterator.remove();
+
+            var keys = referrers.remove(eldest.getKey());
+            if (keys != null) {
+                for (var key : keys) {
+                    urls.remove(key);
+                    delete(refs.resolve(key));
+                }
+            }
+
+            var path = objects.resolve(eldest.getKey());
+            onEvict.accept(path);
+            delete(path);
+        }
+
+        Metrics.URL_CACHE_SIZE.labels(name).set(size);
+    }
+
+    private void link(String key, String hash) {
+        var previous = urls.put(key, hash);
+        if (previous != null && !previous.equals(hash)) {
+            var keys = referrers.get(previous);
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+
+        referrers.computeIfAbsent(hash, h -> new HashSet<>()).add(key);
+    }
+
+    private void rebuild() throws IOException {
+        record Entry(String hash, long size, long modified) { }
+        List<Entry> found = new ArrayList<>();
+
+        try (var files = Files.list(objects)) {
+            for (var path : (Iterable<Path>) files::iterator) {
+                var fileName = path.getFileName().toString();
+                // Left over from a download that didn't finish.
+                if (fileName.startsWith(TEMP_PREFIX)) {
+                    delete(path);
+                    continue;
+                }
+
+                var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                found.add(new Entry(fileName, attributes.size(), attributes.lastModifiedTime().toMillis()));
+            }
+        }
+
+        found.sort(Comparator.comparingLong(Entry::modified));
+        for (var entry : found) {
+            entries.put(entry.hash(), entry.size());
+            size += entry.size();
+        }
+
+        try (var files = Files.list(refs)) {
+            for (var path : (Iterable<Path>) files::iterator) {
+                var hash = Files.readString(path).trim();
+                if (entries.containsKey(hash)) {
+                    link(path.getFileName().toString(), hash);
+                } else {
+                    delete(path);
+                }
+            }
+        }
+
+        // Nothing points to these, so nothing can ever get them.
+        for (var iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            var entry = iterator.next();
+            if (!referrers.containsKey(entry.getKey())) {
+                size -= entry.getValue();
+                iterator.remove();
+                delete(objects.resolve(entry.getKey()));
+            }
+        }
+
+        log.info("Loaded {} cached file(s) ({} bytes) for {}", entries.size(), size, name);
+        // Shrinks it if the limit went down since last time.
+        evict();
+    }
+
+    private static Path await(CompletableFuture<Path> download) throws IOException {
+        try {
+            return download.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a download", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Couldn't delete cached file {}", path, e);
+        }
+    }
+
+    record Result(Path path, boolean downloaded) { }
+}
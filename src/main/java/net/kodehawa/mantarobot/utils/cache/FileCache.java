@@ -14,55 +14,132 @@
  * along with Mantaro. If not, see http://www.gnu.org/licenses/
  *
  */
-
 package net.kodehawa.mantarobot.utils.cache;
 
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 import java.util.concurrent.ExecutionException;
 
+/**
+ * Keeps the most used files memory-mapped, up to a total size. The mappings live outside the heap, and every
+ * reader gets its own view of the same mapping, so reads don't copy the file.
+ * <p>
+ * Files must not change while they're cached (or be invalidated when they do), as the mapping would see it.
+ */
 public class FileCache {
-    private final LoadingCache<File, byte[]> cache;
+    private final LoadingCache<File, ByteBuffer> cache;
 
-    public FileCache(int maxSize, int concurrencyLevel) {
+    public FileCache(long maxBytes, int concurrencyLevel) {
         cache = CacheBuilder.newBuilder()
-                .maximumSize(maxSize)
+                .maximumWeight(maxBytes)
+                .weigher((File file, ByteBuffer buffer) -> buffer.capacity())
                 .concurrencyLevel(concurrencyLevel)
                 .build(new CacheLoader<>() {
                     @NotNull
                     @Override
-                    public byte [] load(@NotNull File key) throws Exception {
+                    public ByteBuffer load(@NotNull File key) throws Exception {
+                        // Checked, so it reaches get as the cause of an ExecutionException instead of being wrapped.
+                        if (!key.exists()) throw new NoSuchFileException(key.toString());
                         if (!key.isFile()) throw new IllegalArgumentException(key + ": not a file");
-                        var baos = new ByteArrayOutputStream();
-                        try(var fis = new FileInputStream(key)) {
-                            fis.transferTo(baos);
+                        // The mapping stays valid after the channel is closed, until it's garbage collected.
+                        try (var channel = FileChannel.open(key.toPath(), StandardOpenOption.READ)) {
+                            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
                         }
-                        return baos.toByteArray();
                     }
                 });
     }
 
-    public FileCache(int maxSize) {
-        this(maxSize, 10);
+    public FileCache(long maxBytes) {
+        this(maxBytes, 10);
     }
 
-    private byte[] get(File file) {
+    private ByteBuffer get(File file) {
         try {
             return cache.get(file);
         } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+
             throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+
+            throw e;
         }
     }
 
+    /**
+     * Opens a file, mapping it if it isn't already.
+     *
+     * @param file The file.
+     * @return A stream over the mapped contents.
+     * @throws UncheckedIOException If the file couldn't be read. The cause is a {@link NoSuchFileException} if it doesn't exist.
+     */
     public InputStream input(File file) {
-        return new ByteArrayInputStream(get(file));
+        return new BufferInputStream(get(file).duplicate());
+    }
+
+    public boolean isCached(File file) {
+        return cache.getIfPresent(file) != null;
+    }
+
+    public void invalidate(File file) {
+        cache.invalidate(file);
+    }
+
+    // Reads from its own copy of the position, the contents are shared.
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            var skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
     }
 }
@@ -14,88 +14,120 @@
  * along with Mantaro. If not, see http://www.gnu.org/licenses/
  *
  */
-
 package net.kodehawa.mantarobot.utils.cache;
 
 import com.google.common.base.Preconditions;
-import net.kodehawa.mantarobot.utils.Utils;
-import okhttp3.Request;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * Caches files downloaded from urls in two tiers: a {@link DiskCache} bounded by size, and a {@link FileCache}
+ * that keeps the most used ones memory-mapped. Each cache gets its own directory under the cache dir, by name,
+ * and there must only be one per name.
+ * <p>
+ * Requests are counted on url_cache_requests as a memory hit, a disk hit or a miss (a download).
+ */
 public class URLCache {
+    private static final Logger log = LoggerFactory.getLogger(URLCache.class);
     public static final File DEFAULT_CACHE_DIR = new File("urlcache_files");
-    private static final Map<String, File> saved = new ConcurrentHashMap<>();
-    private final FileCache cache;
-    private final File cacheDir;
+    private static final long DEFAULT_DISK_BYTES = 256L * 1024 * 1024;
+    private static final long DEFAULT_MEMORY_BYTES = 32L * 1024 * 1024;
+
+    private final String name;
+    private final FileCache memory;
+    private final DiskCache disk;
 
-    public URLCache(File cacheDir, int cacheSize) {
-        this.cacheDir = cacheDir;
+    public URLCache(File cacheDir, String name, long maxDiskBytes, long maxMemoryBytes) {
+        this.name = name;
         var path = cacheDir.toPath();
 
-        if (Files.exists(path) && !Files.isDirectory(path)) {
-            try {
+        try {
+            if (Files.exists(path) && !Files.isDirectory(path)) {
                 Files.delete(path);
-                Files.createDirectories(path);
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
             }
+
+            Files.createDirectories(path);
+            deleteLegacyFiles(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
-        cache = new FileCache(cacheSize);
+        this.memory = new FileCache(maxMemoryBytes);
+        this.disk = new DiskCache(name, path.resolve(name), maxDiskBytes, file -> memory.invalidate(file.toFile()));
     }
 
-    public URLCache(int cacheSize) {
-        this(DEFAULT_CACHE_DIR, cacheSize);
+    public URLCache(String name) {
+        this(DEFAULT_CACHE_DIR, name, DEFAULT_DISK_BYTES, DEFAULT_MEMORY_BYTES);
     }
 
     public File getFile(String url) {
-        var cachedFile = saved.get(Preconditions.checkNotNull(url, "url"));
-        if (cachedFile != null) {
-            return cachedFile;
+        try {
+            return get(Preconditions.checkNotNull(url, "url")).path().toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't get " + url, e);
         }
+    }
 
-        File file = null;
-
+    public InputStream getInput(String url) {
+        Preconditions.checkNotNull(url, "url");
         try {
-            file = new File(cacheDir, url.replace('/', '_').replace(':', '_'));
-            var r = new Request.Builder()
-                    .url(url)
-                    .build();
-
-            try (var response = Utils.httpClient.newCall(r).execute(); var fos = new FileOutputStream(file)) {
-                var body = response.body();
-
-                if (body == null) {
-                    throw new IllegalStateException("Null response body! Code: " + response.code() + " " + response.message());
+            try {
+                return input(url);
+            } catch (UncheckedIOException e) {
+                // The file can get evicted between finding it and mapping it. It gets downloaded again if so.
+                if (!(e.getCause() instanceof NoSuchFileException)) {
+                    throw e;
                 }
 
-                body.byteStream().transferTo(fos);
-                saved.put(url, file);
-                return file;
-            }
-        } catch (Exception e) {
-            if (file != null) {
-                try {
-                    Files.delete(file.toPath());
-                } catch (IOException e2) {
-                    e.addSuppressed(e2);
-                }
+                return input(url);
             }
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't get " + url, e);
+        }
+    }
 
-            e.printStackTrace();
-            throw new IllegalStateException();
+    private InputStream input(String url) throws IOException {
+        var result = get(url);
+        var file = result.path().toFile();
+        if (!result.downloaded()) {
+            Metrics.URL_CACHE_REQUESTS.labels(name, memory.isCached(file) ? "memory" : "disk").inc();
         }
+
+        var input = memory.input(file);
+        Metrics.URL_CACHE_BYTES.labels(name, "served").inc(input.available());
+        return input;
     }
 
-    public InputStream getInput(String url) {
-        return cache.input(getFile(url));
+    private DiskCache.Result get(String url) throws IOException {
+        var result = disk.get(url);
+        if (result.downloaded()) {
+            Metrics.URL_CACHE_REQUESTS.labels(name, "miss").inc();
+        }
+
+        return result;
+    }
+
+    // Files used to be saved straight into the cache dir, named after the url, and never removed.
+    private static void deleteLegacyFiles(Path cacheDir) throws IOException {
+        try (var files = Files.list(cacheDir)) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                if (Files.isRegularFile(file)) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException e) {
+                        log.warn("Couldn't delete old cached file {}", file, e);
+                    }
+                }
+            }
+        }
     }
 }
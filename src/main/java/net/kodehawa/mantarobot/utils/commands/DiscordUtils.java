@@ -42,6 +42,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 
 @SuppressWarnings("UnusedReturnValue")
 public class DiscordUtils {
@@ -199,13 +200,30 @@ public class DiscordUtils {
         }
 
         List<MessageEmbed> embeds = buildSplitEmbed(supplier, length, parts);
-        if (embeds.size() == 1) {
-            ctx.send(embeds.get(0));
+        listButtons(ctx, timeoutSeconds, embeds.size(), embeds::get);
+    }
+
+    /**
+     * Same as the other listButtons, but each page is only built when it's shown, instead of all of them up front.
+     * Meant for lists that can be looked up by position, so only the page on screen has to be formatted.
+     *
+     * @param ctx The context.
+     * @param timeoutSeconds How long the buttons work for.
+     * @param pages How many pages there are.
+     * @param page Builds the page on the given index (from 0).
+     */
+    public static void listButtons(UtilsContext ctx, int timeoutSeconds, int pages, IntFunction<MessageEmbed> page) {
+        if (pages == 0) {
+            return;
+        }
+
+        if (pages == 1) {
+            ctx.send(page.apply(0));
             return;
         }
 
         var index = new AtomicInteger();
-        var message = ctx.send(embeds.get(0));
+        var message = ctx.send(page.apply(0));
         ButtonOperations.create(message, timeoutSeconds, new ButtonOperation() {
             @Override
             public int click(ButtonInteractionEvent e) {
@@ -220,12 +238,12 @@ public class DiscordUtils {
                 switch (button.getId()) {
                     case "button_first" -> {
                         index.set(0);
-                        hook.editOriginalEmbeds(embeds.get(0)).queue();
+                        hook.editOriginalEmbeds(page.apply(0)).queue();
                         hook.editOriginalComponents(ActionRow.of(DEFAULT_COMPONENTS_FIRST)).queue();
                     }
                     case "button_last" -> {
-                        index.set(embeds.size() - 1);
-                        hook.editOriginalEmbeds(embeds.get(embeds.size() - 1)).queue();
+                        index.set(pages - 1);
+                        hook.editOriginalEmbeds(page.apply(pages - 1)).queue();
                         hook.editOriginalComponents(ActionRow.of(DEFAULT_COMPONENTS_LAST)).queue();
                     }
 
@@ -240,21 +258,21 @@ public class DiscordUtils {
                             hook.editOriginalComponents(ActionRow.of(DEFAULT_COMPONENTS_ALL)).queue();
                         }
 
-                        hook.editOriginalEmbeds(embeds.get(index.decrementAndGet())).queue();
+                        hook.editOriginalEmbeds(page.apply(index.decrementAndGet())).queue();
                     }
 
                     case "button_left" -> {
-                        if (index.get() + 1 >= embeds.size()) {
+                        if (index.get() + 1 >= pages) {
                             break;
                         }
 
-                        if (index.get() == embeds.size() - 1) {
+                        if (index.get() == pages - 1) {
                             hook.editOriginalComponents(ActionRow.of(DEFAULT_COMPONENTS_LAST)).queue();
                         } else {
                             hook.editOriginalComponents(ActionRow.of(DEFAULT_COMPONENTS_ALL)).queue();
                         }
 
-                        hook.editOriginalEmbeds(embeds.get(index.incrementAndGet())).queue();
+                        hook.editOriginalEmbeds(page.apply(index.incrementAndGet())).queue();
                     }
                     default -> {
                         return Operation.IGNORED;
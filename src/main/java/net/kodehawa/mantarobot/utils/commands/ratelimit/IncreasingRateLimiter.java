@@ -17,9 +17,12 @@
 
 package net.kodehawa.mantarobot.utils.commands.ratelimit;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.Config;
 import net.kodehawa.mantarobot.data.MantaroData;
+import net.kodehawa.mantarobot.utils.exporters.Metrics;
 import org.apache.commons.io.IOUtils;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
@@ -41,6 +44,9 @@ import java.util.concurrent.TimeUnit;
  * <p>When the ratelimit gets reset, if the user tries to use the command again it will start all over again.</p>
  * <p>This is a distributed (shared between all nodes) and increasing (higher the more you hit it) ratelimiter</p>
  * <p>This class normally does the work of making abusable commands not-so abusable, like ~>loot. Also sorts daily or timely timeouts for other commands like daily and rep.*</p>
+ * <p>If {@link Config#isRatelimitNearCache()} is enabled, every node also remembers the last reset time Redis gave it for each key,
+ * and answers "still on cooldown" locally until then, only going to Redis once the user might be allowed again.
+ * Hits answered locally still count as spam attempts here, but don't increase the cooldown on Redis.</p>
  *
  * @author natanbc
  */
@@ -71,6 +77,8 @@ public class IncreasingRateLimiter {
     private final boolean randomIncrement;
     private final boolean premiumAware;
     private final int incrementDivider;
+    // Key -> last state we got from Redis. Null if the near-cache is disabled.
+    private final Cache<String, LocalState> nearCache;
 
     private IncreasingRateLimiter(JedisPool pool, String prefix, int limit, int cooldown,
                                   int spamBeforeCooldownIncrease, int cooldownIncrease, int maxCooldown,
@@ -85,6 +93,27 @@ public class IncreasingRateLimiter {
         this.randomIncrement = randomIncrement;
         this.premiumAware = premiumAware;
         this.incrementDivider = incrementDivider;
+        this.nearCache = config.isRatelimitNearCache() ? CacheBuilder.newBuilder()
+                .concurrencyLevel(10)
+                .maximumSize(50_000)
+                .expireAfterWrite(Math.max(cooldown, maxCooldown), TimeUnit.MILLISECONDS)
+                .build() : null;
+    }
+
+    private RateLimit limitLocally(String key) {
+        if (nearCache == null) {
+            return null;
+        }
+
+        var state = nearCache.getIfPresent(key);
+        var now = System.currentTimeMillis();
+        if (state == null || !state.limited || state.reset <= now) {
+            return null;
+        }
+
+        var spam = state.spam + 1;
+        nearCache.put(key, new LocalState(state.reset, true, spam));
+        return new RateLimit(now, 0, state.reset - now, spam);
     }
 
     @SuppressWarnings("unchecked")
@@ -116,22 +145,43 @@ public class IncreasingRateLimiter {
                 return limit0(key);
             }
 
-            return new RateLimit(
-                    start,
-                    (int) (limit - result.get(0)),
-                    result.get(1) - start,
-                    result.get(2).intValue()
-            );
+            var count = result.get(0);
+            var reset = result.get(1);
+            var spam = result.get(2).intValue();
+            if (nearCache != null) {
+                // We got limited, or this was the last try: either way, the next call is limited until reset.
+                nearCache.put(key, new LocalState(reset, count + 1 >= limit, spam));
+            }
+
+            var triesLeft = (int) (limit - count);
+            Metrics.RATELIMIT_DECISIONS.labels("remote", triesLeft < 1 ? "limited" : "allowed").inc();
+            return new RateLimit(start, triesLeft, reset - start, spam);
         }
     }
 
     public RateLimit limit(String key) {
-        return limit0(prefix + key);
+        var fullKey = prefix + key;
+        var local = limitLocally(fullKey);
+        if (local != null) {
+            Metrics.RATELIMIT_DECISIONS.labels("local", "limited").inc();
+            return local;
+        }
+
+        return limit0(fullKey);
     }
 
     public long getRemaniningCooldown(User user) {
+        var key = prefix + user.getId();
+        if (nearCache != null) {
+            var state = nearCache.getIfPresent(key);
+            var now = System.currentTimeMillis();
+            if (state != null && state.reset > now) {
+                return state.reset - now;
+            }
+        }
+
         try (Jedis j = pool.getResource()) {
-            String resetAt = j.hget(prefix + user.getId(), "reset");
+            String resetAt = j.hget(key, "reset");
             if (resetAt == null) {
                 return 0;
             }
@@ -140,6 +190,18 @@ public class IncreasingRateLimiter {
         }
     }
 
+    private static class LocalState {
+        private final long reset;
+        private final boolean limited;
+        private final int spam;
+
+        private LocalState(long reset, boolean limited, int spam) {
+            this.reset = reset;
+            this.limited = limited;
+            this.spam = spam;
+        }
+    }
+
     public static class Builder {
         private JedisPool pool;
         private String prefix = "";
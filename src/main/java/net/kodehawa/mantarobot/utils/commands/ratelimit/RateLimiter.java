@@ -20,34 +20,28 @@ package net.kodehawa.mantarobot.utils.commands.ratelimit;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.User;
 import net.kodehawa.mantarobot.data.MantaroData;
-import net.kodehawa.mantarobot.utils.exporters.Metrics;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>This class defines the x ratelimit that will be taken into account when x user inputs a command.
  * <p>The user will be not able to use the command until the ratelimit gets lifted, and instead it will send a message saying how much time is left (usually managed in
  * Currency commands themselves).</p>
  * <p>When the ratelimit gets reset, if the user tries to use the command again it will start all over again.</p>
+ * <p>This is a token bucket (GCRA): every key is a single long, the time at which its bucket is full again, and tokens
+ * are refilled lazily when the key is checked. Nothing gets scheduled per call, and keys whose bucket is full again
+ * are swept from the map as it's used.</p>
  *
  * @author natanbc, modified by Kodehawa.
  * @since 01-06-2017
  */
 @SuppressWarnings("unused") // mostly unused class now, could prolly be removed at some point
 public class RateLimiter {
-    private static final ScheduledExecutorService ses = Executors.newScheduledThreadPool(1);
-
-    static {
-        Metrics.THREAD_POOL_COLLECTOR.add("rate-limiter", ses);
-    }
+    private static final int STRIPES = 16;
 
     private final long max;
     private final long timeout;
-    private final ConcurrentHashMap<String, Pair<AtomicInteger, Long>> usersRateLimited = new ConcurrentHashMap<>();
+    private final Stripe[] stripes = new Stripe[STRIPES];
     private boolean isPremiumAware = false;
 
     /**
@@ -56,8 +50,7 @@ public class RateLimiter {
      * @param timeout How much time until the ratelimit gets lifted
      */
     public RateLimiter(TimeUnit timeUnit, int timeout) {
-        this.max = 1;
-        this.timeout = timeUnit.toMillis(timeout);
+        this(timeUnit, 1, timeout);
     }
 
     /**
@@ -67,9 +60,8 @@ public class RateLimiter {
      * @param timeout How much time until the ratelimit gets lifted
      */
     public RateLimiter(TimeUnit timeUnit, int timeout, boolean isPremiumAware) {
-        this.max = 1;
+        this(timeUnit, 1, timeout);
         this.isPremiumAware = isPremiumAware;
-        this.timeout = timeUnit.toMillis(timeout);
     }
 
     /**
@@ -78,68 +70,185 @@ public class RateLimiter {
      * @param timeout  How much time until the ratelimit gets lifted.
      */
     public RateLimiter(TimeUnit timeUnit, int max, int timeout) {
-        this.max = max;
+        this.max = Math.max(1, max);
         this.timeout = timeUnit.toMillis(timeout);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(Math.max(this.timeout, TimeUnit.MINUTES.toMillis(1)));
+        }
     }
 
     //Basically where you get b1nzy'd.
     public boolean process(String key) {
-        boolean isPremium = isPremiumAware && MantaroData.db().getUser(key).isPremium();
-        Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
-
-        // Put the user on the RL map if they aren't here already, but we already let them pass.
-        if (p == null) {
-            usersRateLimited.put(key, p = new Pair<>());
-            p.first = new AtomicInteger();
-        }
-
-        AtomicInteger a = p.first;
-        long i = a.get();
-        if (i >= max) return false;
-
-        a.incrementAndGet();
-        long now = System.currentTimeMillis();
+        boolean isPremium = isPremiumAware && MantaroData.db().isUserPremium(key);
+        return process(toLong(key), isPremium);
+    }
 
-        Long tryAgain = p.second;
-        if (tryAgain == null || tryAgain < now) {
-            p.second = now + (isPremium ? (long) (timeout * 0.75) : timeout);
+    public boolean process(long key, boolean isPremium) {
+        var window = isPremium ? (long) (timeout * 0.75) : timeout;
+        // Time between tokens, and how far ahead of now the bucket can go before it's empty.
+        var interval = window / max;
+        var tolerance = window - interval;
+        var now = System.currentTimeMillis();
+
+        var stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.sweep(now);
+            var full = stripe.get(key);
+            if (full - now > tolerance) {
+                return false;
+            }
+
+            stripe.put(key, Math.max(full, now) + interval);
+            return true;
         }
-
-        ses.schedule(a::decrementAndGet, isPremium ? (long) (timeout * 0.75) : timeout, TimeUnit.MILLISECONDS);
-        return true;
     }
 
     //Method overload.
     public long tryAgainIn(String key) {
-        Pair<AtomicInteger, Long> p = usersRateLimited.get(key);
-        if (p == null || p.second == null)
-            return 0;
+        return tryAgainIn(toLong(key));
+    }
 
-        return Math.max(p.second - System.currentTimeMillis(), 0);
+    public long tryAgainIn(long key) {
+        var stripe = stripe(key);
+        long full;
+        synchronized (stripe) {
+            full = stripe.get(key);
+        }
+
+        // The next token is free one interval before the bucket is full again.
+        var interval = timeout / max;
+        return Math.max(full - (timeout - interval) - System.currentTimeMillis(), 0);
     }
 
     public long tryAgainIn(Member key) {
-        return tryAgainIn(key.getUser().getId());
+        return tryAgainIn(key.getUser().getIdLong());
     }
 
     public long tryAgainIn(User key) {
-        return tryAgainIn(key.getId());
+        return tryAgainIn(key.getIdLong());
     }
 
     public boolean process(User user) {
-        return process(user.getId());
+        boolean isPremium = isPremiumAware && MantaroData.db().isUserPremium(user.getId());
+        return process(user.getIdLong(), isPremium);
     }
 
     public boolean process(Member member) {
         return process(member.getUser());
     }
 
-    public ConcurrentHashMap<String, Pair<AtomicInteger, Long>> getUsersRateLimited() {
-        return this.usersRateLimited;
+    private Stripe stripe(long key) {
+        var h = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h >>> 60)];
+    }
+
+    // Keys are pretty much always snowflakes. Anything else just gets hashed, a collision only means sharing a bucket.
+    private static long toLong(String key) {
+        try {
+            return Long.parseLong(key);
+        } catch (NumberFormatException e) {
+            return key.hashCode();
+        }
     }
 
-    public static class Pair<F, S> {
-        F first;
-        S second;
+    // Open-addressed long -> long map, guarded by its own monitor.
+    private static final class Stripe {
+        private final long sweepInterval;
+        private long[] keys = new long[16];
+        private long[] values = new long[16];
+        private boolean hasZero;
+        private long zeroValue;
+        private int size;
+        private long nextSweep;
+
+        private Stripe(long sweepInterval) {
+            this.sweepInterval = sweepInterval;
+        }
+
+        long get(long key) {
+            if (key == 0) {
+                return hasZero ? zeroValue : 0;
+            }
+
+            var mask = keys.length - 1;
+            var slot = mix(key) & mask;
+            long current;
+            while ((current = keys[slot]) != 0) {
+                if (current == key) {
+                    return values[slot];
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            return 0;
+        }
+
+        void put(long key, long value) {
+            if (key == 0) {
+                hasZero = true;
+                zeroValue = value;
+                return;
+            }
+
+            if ((size + 1) * 2 > keys.length) {
+                rehash(keys.length * 2, Long.MIN_VALUE);
+            }
+
+            insert(key, value);
+        }
+
+        // Drops every key whose bucket is full again, as it's the same as not having an entry at all.
+        void sweep(long now) {
+            if (now < nextSweep) {
+                return;
+            }
+
+            nextSweep = now + sweepInterval;
+            if (hasZero && zeroValue <= now) {
+                hasZero = false;
+            }
+
+            var capacity = 16;
+            while (capacity < size * 4) {
+                capacity <<= 1;
+            }
+
+            rehash(capacity, now);
+        }
+
+        private void rehash(int capacity, long expiredBefore) {
+            var oldKeys = keys;
+            var oldValues = values;
+            keys = new long[capacity];
+            values = new long[capacity];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0 && oldValues[i] > expiredBefore) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private void insert(long key, long value) {
+            var mask = keys.length - 1;
+            var slot = mix(key) & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            if (keys[slot] == 0) {
+                size++;
+            }
+
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private static int mix(long value) {
+            var h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
     }
 }
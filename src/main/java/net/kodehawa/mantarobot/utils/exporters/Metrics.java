@@ -28,6 +28,17 @@ public class Metrics {
             .help("Music Track Events (failed/loaded/searched)")
             .labelNames("type")
             .register();
+    public static final Counter TRACK_CACHE_REQUESTS = Counter.build()
+            .name("track_cache_requests")
+            .help("Track loads, by whether they came from the track cache (hit), joined one already going (shared) or went to the source (miss)")
+            .labelNames("result")
+            .register();
+    public static final Histogram TRACK_LOAD_LATENCY = Histogram.build()
+            .name("track_load_latency")
+            .help("Time taken to load tracks, by cache result (hit/shared/miss)")
+            .labelNames("result")
+            .buckets(0.001, 0.01, 0.1, 0.5, 1, 2.5, 5, 10)
+            .register();
     public static final Counter BIRTHDAY_COUNTER = Counter.build()
             .name("birthdays_logged")
             .help("Logged birthdays")
@@ -91,5 +102,76 @@ public class Metrics {
             .help("HTTP Requests per-route (to discord)")
             .labelNames("route")
             .register();
+    public static final Counter ENTITY_CACHE = Counter.build()
+            .name("entity_cache")
+            .help("Database entity cache lookups (hit/miss/eviction)")
+            .labelNames("type", "result")
+            .register();
+    public static final Counter ENTITY_UPDATES = Counter.build()
+            .name("entity_updates")
+            .help("Entity field updates deferred to the end of a command (queued) and updates actually sent (written)")
+            .labelNames("type")
+            .register();
+    public static final Counter TRANSFERS = Counter.build()
+            .name("transfers")
+            .help("Two-party counter transfers, by outcome (success/insufficient/overflow/refunded/refund_failed/stuck)")
+            .labelNames("result")
+            .register();
+    public static final Counter COMMAND_REJECTIONS = Counter.build()
+            .name("command_rejections")
+            .help("Commands dropped by the bounded executor, by the limit that was hit (global/guild/user/queue/resolve)")
+            .labelNames("reason")
+            .register();
+    public static final Counter RATELIMIT_DECISIONS = Counter.build()
+            .name("ratelimit_decisions")
+            .help("Increasing ratelimiter decisions, by where they were made (local/remote) and the outcome (allowed/limited)")
+            .labelNames("source", "result")
+            .register();
+    public static final Gauge COMMANDS_IN_FLIGHT = Gauge.build()
+            .name("commands_in_flight")
+            .help("Commands queued or running on the bounded executor")
+            .register();
+    public static final Histogram CCV3_OPERATION_LATENCY = Histogram.build()
+            .name("ccv3_operation_latency")
+            .help("Time spent in each custom command (v3) operation, including the arguments it evaluated")
+            .labelNames("operation")
+            .buckets(0.00001, 0.0001, 0.001, 0.01, 0.1, 1)
+            .register();
+    public static final Counter CCV3_ABORTS = Counter.build()
+            .name("ccv3_aborts")
+            .help("Custom command (v3) scripts stopped for going over their budget (steps/output/time)")
+            .labelNames("reason")
+            .register();
+    public static final Histogram BIRTHDAY_STAGE_LATENCY = Histogram.build()
+            .name("birthday_stage_latency")
+            .help("Time taken by each stage of a shard's birthday run (select/resolve/build/send)")
+            .labelNames("stage")
+            .buckets(0.1, 1, 10, 60, 300, 1800)
+            .register();
+    public static final Counter BIRTHDAY_STAGE_ITEMS = Counter.build()
+            .name("birthday_stage_items")
+            .help("Things handled by each stage of the birthday run (guilds, members, messages, roles), by outcome")
+            .labelNames("stage", "result")
+            .register();
+    public static final Histogram REMINDER_DELAY = Histogram.build()
+            .name("reminder_delay")
+            .help("How late reminders are picked up for delivery, after the time they were set for")
+            .buckets(0.1, 0.5, 1, 2, 5, 15, 60, 300)
+            .register();
+    public static final Counter URL_CACHE_REQUESTS = Counter.build()
+            .name("url_cache_requests")
+            .help("URL cache lookups, by cache and where they were found (memory/disk/miss)")
+            .labelNames("cache", "result")
+            .register();
+    public static final Counter URL_CACHE_BYTES = Counter.build()
+            .name("url_cache_bytes")
+            .help("Bytes downloaded into and served out of the URL caches")
+            .labelNames("cache", "type")
+            .register();
+    public static final Gauge URL_CACHE_SIZE = Gauge.build()
+            .name("url_cache_size")
+            .help("Bytes on disk used by each URL cache")
+            .labelNames("cache")
+            .register();
 
 }
@@ -0,0 +1,23 @@
+--[[
+KEYS[1] - reminder schedule (redis sorted set, id -> time to fire at)
+KEYS[2] - reminder data (redis hash, id -> reminder json)
+
+ARGV[1] - current time
+ARGV[2] - maximum number of reminders to claim
+
+Takes the reminders that are due off the schedule, and returns them as id, data pairs (data is empty if the
+reminder is gone). Only one caller ever gets a given reminder, so more than one node can run this at once.
+The data is left alone: it's removed when the reminder is delivered or cancelled.
+]]
+
+local due = redis.call("ZRANGEBYSCORE", KEYS[1], "-inf", ARGV[1], "LIMIT", 0, tonumber(ARGV[2]))
+local claimed = {}
+
+for _, id in ipairs(due) do
+    redis.call("ZREM", KEYS[1], id)
+    claimed[#claimed + 1] = id
+    -- Can't be nil, or the rest of the table would get cut off.
+    claimed[#claimed + 1] = redis.call("HGET", KEYS[2], id) or ""
+end
+
+return claimed
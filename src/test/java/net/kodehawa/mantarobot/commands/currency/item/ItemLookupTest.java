@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.currency.item;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+class ItemLookupTest {
+    private static final ItemLookup LOOKUP = ItemLookup.build();
+
+    @Test
+    void testSearchRanking() {
+        Item[] items = {
+                ItemReference.FISH_BOWL, ItemReference.BLOWFISH, ItemReference.TROPICAL_FISH,
+                ItemReference.FISH, ItemReference.FISHING_BAIT, ItemReference.DIAMOND
+        };
+
+        // Exact, then prefixes (in the order they were given), then word prefixes, then anything containing it.
+        Assertions.assertEquals(
+                List.of(ItemReference.FISH, ItemReference.FISH_BOWL, ItemReference.FISHING_BAIT,
+                        ItemReference.TROPICAL_FISH, ItemReference.BLOWFISH),
+                LOOKUP.search(items, "Fish", "en_US", 25)
+        );
+
+        Assertions.assertEquals(List.of(ItemReference.FISH, ItemReference.FISH_BOWL), LOOKUP.search(items, "fish ", "en_US", 2));
+        Assertions.assertEquals(List.of(), LOOKUP.search(items, "pickaxe", "en_US", 25));
+    }
+
+    @Test
+    void testPartialName() {
+        // Same result as going through every item, whether the search is long enough to use trigrams or not.
+        for (String search : new String[] { "ickax", "ax", "fragment", "broken moon", "zzzz", "e" }) {
+            Assertions.assertEquals(scan(search), LOOKUP.fromPartialName(search, "en_US"), search);
+        }
+    }
+
+    @Test
+    void testExactLookups() {
+        Assertions.assertEquals(Optional.of(ItemReference.DIAMOND), LOOKUP.fromName("  DIAMOND ", "en_US"));
+        // Unknown languages fall back to English.
+        Assertions.assertEquals(Optional.of(ItemReference.DIAMOND), LOOKUP.fromName("diamond", "xx_XX"));
+        Assertions.assertEquals(Optional.empty(), LOOKUP.fromName("diamon", "en_US"));
+
+        // Some clients add a variation selector to emojis.
+        Optional<Item> emoji = LOOKUP.fromEmoji(ItemReference.DIAMOND.getEmoji() + "\ufe0f");
+        Assertions.assertTrue(emoji.isPresent());
+        Assertions.assertEquals(ItemReference.DIAMOND.getEmoji(), emoji.get().getEmoji());
+    }
+
+    @Test
+    void testFind() {
+        Assertions.assertEquals(Optional.of(ItemReference.DIAMOND_PICKAXE), LOOKUP.find("diamond pickaxe", "en_US"));
+        // Falls back to a partial name.
+        Assertions.assertEquals(scan("iamond pick"), LOOKUP.find("iamond pick", "en_US"));
+        Assertions.assertEquals(Optional.empty(), LOOKUP.find("not an item at all", "en_US"));
+    }
+
+    private static Optional<Item> scan(String search) {
+        String lookup = search.toLowerCase().trim();
+        for (Item item : ItemReference.ALL) {
+            if (item.getName().toLowerCase().contains(lookup)) {
+                return Optional.of(item);
+            }
+        }
+
+        return Optional.empty();
+    }
+}
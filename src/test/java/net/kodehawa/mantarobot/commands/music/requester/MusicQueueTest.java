@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.commands.music.requester;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+class MusicQueueTest {
+    @Test
+    void testCounts() {
+        MusicQueue queue = new MusicQueue();
+        AudioTrack a = track("a", 1000, false);
+        AudioTrack b = track("b", 2000, false);
+        AudioTrack stream = track("a", 5000, true);
+
+        queue.addLast(a);
+        queue.addLast(b);
+        queue.addFirst(stream);
+        Assertions.assertEquals(3, queue.size());
+        Assertions.assertEquals(2, queue.countUri("a"));
+        Assertions.assertEquals(1, queue.countUri("b"));
+        // Streams don't count towards the length.
+        Assertions.assertEquals(3000, queue.getLength());
+
+        Assertions.assertSame(stream, queue.poll());
+        Assertions.assertSame(a, queue.poll());
+        Assertions.assertEquals(0, queue.countUri("a"));
+        Assertions.assertEquals(2000, queue.getLength());
+
+        queue.clear();
+        Assertions.assertTrue(queue.isEmpty());
+        Assertions.assertNull(queue.poll());
+        Assertions.assertEquals(0, queue.countUri("b"));
+        Assertions.assertEquals(0, queue.getLength());
+    }
+
+    @Test
+    void testWrapAndGrow() {
+        // Adding to the front moves the head back around the buffer, and growing has to unwrap it.
+        MusicQueue queue = new MusicQueue();
+        List<AudioTrack> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            AudioTrack track = track("t" + i, 10, false);
+            if (i % 3 == 0) {
+                queue.addFirst(track);
+                expected.add(0, track);
+            } else {
+                queue.addLast(track);
+                expected.add(track);
+            }
+        }
+
+        Assertions.assertEquals(expected, queue.toList());
+        Assertions.assertEquals(400, queue.getLength());
+        for (int from = 0; from < expected.size(); from += 7) {
+            Assertions.assertEquals(expected.subList(from, Math.min(from + 7, expected.size())), queue.page(from, 7));
+        }
+
+        Assertions.assertEquals(expected.subList(35, 40), queue.page(35, 10));
+        Assertions.assertEquals(List.of(), queue.page(50, 10));
+    }
+
+    @Test
+    void testRemoveAll() {
+        MusicQueue queue = new MusicQueue();
+        List<AudioTrack> tracks = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            tracks.add(track("t" + i, 100, false));
+        }
+
+        // Start somewhere other than the beginning of the buffer.
+        queue.addLast(track("x", 1, false));
+        tracks.forEach(queue::addLast);
+        queue.poll();
+
+        // Positions are all from before removing anything. Repeated and missing ones are skipped.
+        Assertions.assertEquals(3, queue.removeAll(Set.of(0, 2, 3, 10, -1)));
+        Assertions.assertEquals(List.of(tracks.get(1), tracks.get(4), tracks.get(5)), queue.toList());
+        Assertions.assertEquals(0, queue.countUri("t0"));
+        Assertions.assertEquals(1, queue.countUri("t1"));
+        Assertions.assertEquals(1, queue.countRequestedBy("0"));
+        Assertions.assertEquals(300, queue.getLength());
+
+        Assertions.assertEquals(0, queue.removeAll(List.of()));
+        Assertions.assertEquals(3, queue.size());
+    }
+
+    @Test
+    void testShuffle() {
+        MusicQueue queue = new MusicQueue();
+        List<AudioTrack> tracks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            AudioTrack track = track("t" + i, 100, false);
+            tracks.add(track);
+            queue.addLast(track);
+        }
+
+        // Shuffling doesn't change what's on it.
+        queue.shuffle(new Random(42));
+        Assertions.assertEquals(5, queue.size());
+        Assertions.assertEquals(Set.copyOf(tracks), Set.copyOf(queue.toList()));
+        Assertions.assertEquals(1, queue.countUri("t3"));
+        Assertions.assertEquals(500, queue.getLength());
+    }
+
+    // Only the info and the duration are ever read from queued tracks.
+    private static AudioTrack track(String uri, long length, boolean stream) {
+        AudioTrackInfo info = new AudioTrackInfo(uri, "author", length, uri, stream, uri);
+        return (AudioTrack) Proxy.newProxyInstance(AudioTrack.class.getClassLoader(), new Class<?>[] { AudioTrack.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getInfo" -> info;
+                    case "getDuration" -> stream ? Long.MAX_VALUE : length;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "Track:" + uri;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.db;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+// No database: every test drains what it queued before closing, so close() has nothing to write.
+class UnitOfWorkTest {
+    private static final String TABLE = "players";
+    private static final String ID = "155867458203287552:g";
+
+    @Test
+    void testCoalesce() {
+        try (UnitOfWork unit = UnitOfWork.begin(null)) {
+            unit.enqueue(TABLE, ID, Map.of("newMoney", 10L));
+            unit.enqueue(TABLE, ID, Map.of("reputation", 2L));
+            unit.enqueue(TABLE, ID, Map.of("newMoney", 25L));
+
+            List<Map<String, Object>> segments = unit.drain(TABLE, ID);
+            Assertions.assertNotNull(segments);
+            Assertions.assertEquals(1, segments.size());
+            Assertions.assertEquals(Map.of("newMoney", 25L, "reputation", 2L), segments.get(0));
+        }
+    }
+
+    @Test
+    void testConflictingPaths() {
+        try (UnitOfWork unit = UnitOfWork.begin(null)) {
+            // A field and one nested in it can't go on the same update.
+            unit.enqueue(TABLE, ID, Map.of("pet", "whole pet"));
+            unit.enqueue(TABLE, ID, Map.of("pet.health", 5));
+            // Siblings can, and so can a field that only shares a prefix without the dot.
+            unit.enqueue(TABLE, ID, Map.of("pet.hunger", 3));
+            unit.enqueue(TABLE, ID, Map.of("petChoice", "dog"));
+            // Going back up to the parent conflicts again.
+            unit.enqueue(TABLE, ID, Map.of("pet", "new pet"));
+
+            List<Map<String, Object>> segments = unit.drain(TABLE, ID);
+            Assertions.assertNotNull(segments);
+            Assertions.assertEquals(3, segments.size());
+            Assertions.assertEquals(Map.of("pet", "whole pet"), segments.get(0));
+            Assertions.assertEquals(Map.of("pet.health", 5, "pet.hunger", 3, "petChoice", "dog"), segments.get(1));
+            Assertions.assertEquals(Map.of("pet", "new pet"), segments.get(2));
+        }
+    }
+
+    @Test
+    void testDrain() {
+        try (UnitOfWork unit = UnitOfWork.begin(null)) {
+            Assertions.assertNull(unit.drain(TABLE, ID));
+
+            unit.enqueue(TABLE, ID, Map.of("newMoney", 10L));
+            unit.enqueue(TABLE, "213466096718708737:g", Map.of("newMoney", 20L));
+            Assertions.assertNull(unit.drain("users", ID));
+
+            Assertions.assertEquals(List.of(Map.of("newMoney", 10L)), unit.drain(TABLE, ID));
+            // Drained documents are gone, the rest stay queued.
+            Assertions.assertNull(unit.drain(TABLE, ID));
+            Assertions.assertEquals(List.of(Map.of("newMoney", 20L)), unit.drain(TABLE, "213466096718708737:g"));
+        }
+    }
+
+    @Test
+    void testNesting() {
+        UnitOfWork outer = UnitOfWork.begin(null);
+        try {
+            Assertions.assertSame(outer, UnitOfWork.current());
+            try (UnitOfWork inner = UnitOfWork.begin(null)) {
+                Assertions.assertSame(outer, inner);
+                inner.enqueue(TABLE, ID, Map.of("newMoney", 10L));
+            }
+
+            // Only the outermost one writes, so it's all still queued.
+            Assertions.assertSame(outer, UnitOfWork.current());
+            Assertions.assertEquals(List.of(Map.of("newMoney", 10L)), outer.drain(TABLE, ID));
+        } finally {
+            outer.close();
+        }
+
+        Assertions.assertNull(UnitOfWork.current());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class ImmutableLongMapTest {
+    @Test
+    void testOfSnowflakes() {
+        Map<String, String> source = new HashMap<>();
+        source.put("155867458203287552", "a");
+        source.put("213466096718708737", "b");
+        source.put("not a snowflake", "c");
+        source.put("0", "d");
+        source.put("1", null);
+
+        ImmutableLongMap<String> map = ImmutableLongMap.ofSnowflakes(source);
+        Assertions.assertEquals(2, map.size());
+        Assertions.assertEquals("a", map.get(155867458203287552L));
+        Assertions.assertEquals("b", map.get(213466096718708737L));
+        Assertions.assertNull(map.get(0L));
+        Assertions.assertNull(map.get(1L));
+        Assertions.assertNull(map.get(2L));
+    }
+
+    @Test
+    void testOf() {
+        long[] keys = { 10L, 20L, 10L, 30L };
+        String[] values = { "a", "b", "c", "ignored" };
+
+        // The last value for a repeated key wins, and only the first count entries are used.
+        ImmutableLongMap<String> map = ImmutableLongMap.of(keys, values, 3);
+        Assertions.assertEquals(2, map.size());
+        Assertions.assertEquals("c", map.get(10L));
+        Assertions.assertEquals("b", map.get(20L));
+        Assertions.assertNull(map.get(30L));
+    }
+
+    @Test
+    void testManyValues() {
+        long[] keys = new long[10_000];
+        Integer[] values = new Integer[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 100_000_000_000_000_000L + i * 4096L;
+            values[i] = i;
+        }
+
+        ImmutableLongMap<Integer> map = ImmutableLongMap.of(keys, values, keys.length);
+        Assertions.assertEquals(keys.length, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            Assertions.assertEquals(i, map.get(keys[i]));
+            Assertions.assertNull(map.get(keys[i] + 1));
+        }
+    }
+
+    @Test
+    void testEmpty() {
+        Assertions.assertTrue(ImmutableLongMap.ofSnowflakes(null).isEmpty());
+        Assertions.assertTrue(ImmutableLongMap.ofSnowflakes(Map.of()).isEmpty());
+        Assertions.assertTrue(ImmutableLongMap.of(new long[0], new String[0], 0).isEmpty());
+        Assertions.assertNull(ImmutableLongMap.<String>empty().get(1L));
+    }
+}
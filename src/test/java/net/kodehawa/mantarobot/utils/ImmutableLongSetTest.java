@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class ImmutableLongSetTest {
+    @Test
+    void testContains() {
+        ImmutableLongSet set = ImmutableLongSet.of(155867458203287552L, 213466096718708737L, 1L);
+        Assertions.assertEquals(3, set.size());
+        Assertions.assertTrue(set.contains(155867458203287552L));
+        Assertions.assertTrue(set.contains(213466096718708737L));
+        Assertions.assertTrue(set.contains(1L));
+        Assertions.assertFalse(set.contains(2L));
+        Assertions.assertFalse(set.contains(0L));
+    }
+
+    @Test
+    void testZeroAndDuplicates() {
+        ImmutableLongSet set = ImmutableLongSet.of(0L, 5L, 5L, 0L);
+        Assertions.assertEquals(2, set.size());
+        Assertions.assertTrue(set.contains(0L));
+        Assertions.assertTrue(set.contains(5L));
+    }
+
+    @Test
+    void testManyValues() {
+        // Enough to wrap around the table plenty of times while probing.
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 100_000_000_000_000_000L + i * 4096L;
+        }
+
+        ImmutableLongSet set = ImmutableLongSet.of(values);
+        Assertions.assertEquals(values.length, set.size());
+        for (long value : values) {
+            Assertions.assertTrue(set.contains(value));
+            Assertions.assertFalse(set.contains(value + 1));
+        }
+    }
+
+    @Test
+    void testOfSnowflakes() {
+        List<String> ids = new ArrayList<>(List.of("155867458203287552", "not a snowflake", "", "213466096718708737"));
+        ImmutableLongSet set = ImmutableLongSet.ofSnowflakes(ids);
+        Assertions.assertEquals(2, set.size());
+        Assertions.assertTrue(set.contains(155867458203287552L));
+        Assertions.assertTrue(set.contains(213466096718708737L));
+
+        Assertions.assertSame(ImmutableLongSet.EMPTY, ImmutableLongSet.ofSnowflakes(null));
+        Assertions.assertSame(ImmutableLongSet.EMPTY, ImmutableLongSet.ofSnowflakes(List.of()));
+        Assertions.assertTrue(ImmutableLongSet.EMPTY.isEmpty());
+        Assertions.assertFalse(ImmutableLongSet.EMPTY.contains(1L));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016-2020 David Rubio Escares / Kodehawa
+ *  
+ *  Mantaro is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version. 
+ *  Mantaro is distributed in the hope that it will be useful, 
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Mantaro.  If not, see http://www.gnu.org/licenses/
+ */
+
+package net.kodehawa.mantarobot.utils.commands.ratelimit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class RateLimiterTest {
+    private static final long USER = 155867458203287552L;
+
+    @Test
+    void testBurst() {
+        RateLimiter limiter = new RateLimiter(TimeUnit.HOURS, 3, 1);
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertFalse(limiter.process(USER, false));
+
+        // Buckets are per key.
+        Assertions.assertTrue(limiter.process(USER + 1, false));
+    }
+
+    @Test
+    void testTryAgainIn() {
+        RateLimiter limiter = new RateLimiter(TimeUnit.SECONDS, 4, 400);
+        Assertions.assertEquals(0, limiter.tryAgainIn(USER));
+
+        // There's still tokens left, so it can go again right away.
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertEquals(0, limiter.tryAgainIn(USER));
+
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertFalse(limiter.process(USER, false));
+
+        // Empty: the next token comes one interval (timeout / max) after the first one was taken.
+        long wait = limiter.tryAgainIn(USER);
+        Assertions.assertTrue(wait > TimeUnit.SECONDS.toMillis(99) && wait <= TimeUnit.SECONDS.toMillis(100), "Waits for " + wait);
+    }
+
+    @Test
+    void testRefill() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(TimeUnit.MILLISECONDS, 1, 100);
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertFalse(limiter.process(USER, false));
+
+        Thread.sleep(limiter.tryAgainIn(USER) + 20);
+        Assertions.assertTrue(limiter.process(USER, false));
+        Assertions.assertFalse(limiter.process(USER, false));
+    }
+
+    @Test
+    void testPremiumWindow() throws InterruptedException {
+        // Premium users wait 75% of the timeout.
+        RateLimiter limiter = new RateLimiter(TimeUnit.MILLISECONDS, 1, 1000);
+        Assertions.assertTrue(limiter.process(USER, true));
+        Assertions.assertTrue(limiter.process(USER + 1, false));
+
+        Thread.sleep(800);
+        Assertions.assertTrue(limiter.process(USER, true));
+        Assertions.assertFalse(limiter.process(USER + 1, false));
+    }
+
+    @Test
+    void testManyKeys() {
+        // Enough to make every stripe grow a few times.
+        RateLimiter limiter = new RateLimiter(TimeUnit.HOURS, 1);
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertTrue(limiter.process(USER + i, false));
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            Assertions.assertFalse(limiter.process(USER + i, false));
+        }
+    }
+
+    @Test
+    void testZeroAndStringKeys() {
+        RateLimiter limiter = new RateLimiter(TimeUnit.HOURS, 1);
+        Assertions.assertTrue(limiter.process(0, false));
+        Assertions.assertFalse(limiter.process(0, false));
+
+        // Strings are parsed as snowflakes when they're one, so they share the bucket of the long.
+        Assertions.assertTrue(limiter.process(String.valueOf(USER)));
+        Assertions.assertFalse(limiter.process(USER, false));
+        Assertions.assertTrue(limiter.process("not a snowflake"));
+        Assertions.assertFalse(limiter.process("not a snowflake"));
+    }
+}